@@ -0,0 +1,43 @@
+package com.example.messenger.bench;
+
+import com.example.messenger.security.JwtService;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/** Cost of minting and verifying access tokens; {@code parse} runs on every authenticated request. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtServiceBenchmark {
+    // 0 disables the verified-token cache, so parse() checks the signature every time.
+    @Param({"0", "10000"})
+    public int cacheEntries;
+
+    private JwtService jwtService;
+    private UUID userId;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService(cacheEntries, new SimpleMeterRegistry());
+        userId = UUID.randomUUID();
+        token = jwtService.generateAccessToken(userId, "alice");
+    }
+
+    @Benchmark
+    public Claims parse() {
+        return jwtService.parse(token);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtService.generateAccessToken(userId, "alice");
+    }
+}
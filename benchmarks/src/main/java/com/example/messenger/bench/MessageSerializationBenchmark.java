@@ -0,0 +1,39 @@
+package com.example.messenger.bench;
+
+import com.example.messenger.api.dto.MessageDtos;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/** JSON encoding of a {@code MessageResponse}, paid once per REST reply and per STOMP publish. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSerializationBenchmark {
+    @Param({"64", "4000"})
+    public int contentLength;
+
+    private ObjectMapper objectMapper;
+    private MessageDtos.MessageResponse response;
+
+    @Setup
+    public void setUp() {
+        // Same defaults as the Boot-configured mapper: java.time support, ISO dates.
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        response = new MessageDtos.MessageResponse(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                "x".repeat(contentLength), Instant.now());
+    }
+
+    @Benchmark
+    public byte[] writeMessageResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.messenger.bench;
+
+import com.example.messenger.MessengerApplication;
+import com.example.messenger.api.dto.MessageDtos;
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.MessageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code MessageService.send} and {@code history} against the full application context on embedded H2
+ * (profile {@code bench}). {@code tailSize=0} disables the history tail cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageServiceBenchmark {
+    private static final int SEEDED_MESSAGES = 10_000;
+    private static final int PAGE = 50;
+
+    @Param({"0", "50"})
+    public int tailSize;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private UUID conversationId;
+    private UUID senderId;
+    private String deepCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(MessengerApplication.class)
+                .profiles("bench")
+                .properties("messenger.history.cache.tail-size=" + tailSize)
+                .run();
+        messageService = context.getBean(MessageService.class);
+        conversationId = UUID.randomUUID();
+        senderId = UUID.randomUUID();
+        for (int i = 0; i < SEEDED_MESSAGES; i++) {
+            messageService.send(conversationId, senderId, "seed message " + i);
+        }
+        // A cursor half-way back through the conversation.
+        MessageDtos.MessagePage page = messageService.history(conversationId, null, null, 200);
+        for (int i = 0; i < SEEDED_MESSAGES / 400; i++) {
+            page = messageService.history(conversationId, page.nextCursor(), null, 200);
+        }
+        deepCursor = page.nextCursor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Message send() {
+        return messageService.send(conversationId, senderId, "hello from the benchmark");
+    }
+
+    @Benchmark
+    public MessageDtos.MessagePage historyNewest() {
+        return messageService.history(conversationId, null, null, PAGE);
+    }
+
+    @Benchmark
+    public MessageDtos.MessagePage historyDeepPage() {
+        return messageService.history(conversationId, deepCursor, null, PAGE);
+    }
+}
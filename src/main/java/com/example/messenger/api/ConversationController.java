@@ -3,15 +3,22 @@ package com.example.messenger.api;
 
 import com.example.messenger.api.dto.ConversationDtos;
 import com.example.messenger.domain.Conversation;
-import com.example.messenger.repo.UserRepository;
+import com.example.messenger.security.AuthUser;
 import com.example.messenger.service.ConversationService;
+import com.example.messenger.service.UnreadCounterService;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,39 +27,67 @@ import java.util.UUID;
 @RequestMapping("/api/v1/conversations")
 public class ConversationController {
     private final ConversationService conversationService;
-    private final UserRepository userRepository;
+    private final UnreadCounterService unreadCounters;
 
-    public ConversationController(ConversationService conversationService, UserRepository userRepository) {
+    public ConversationController(ConversationService conversationService, UnreadCounterService unreadCounters) {
         this.conversationService = conversationService;
-        this.userRepository = userRepository;
+        this.unreadCounters = unreadCounters;
     }
 
     @PostMapping
     public ConversationDtos.ConversationResponse create(@Valid @RequestBody ConversationDtos.CreateConversationRequest req,
-                                                        @AuthenticationPrincipal User principal) {
+                                                        @AuthenticationPrincipal AuthUser me) {
 
         log.debug("creating conversation with members: {}", req.memberIds());
-        var me = userRepository.findByUsername(principal.getUsername()).orElseThrow();
         log.debug("current user: {}", me);
         List<UUID> members = req.memberIds();
-        if (!members.contains(me.getId())) {
+        if (!members.contains(me.id())) {
             members = new ArrayList<>(members);
-            members.add(me.getId());
+            members.add(me.id());
         }
         log.debug("members: {}", members);
         Conversation c = conversationService.create(req.direct(), members);
         return new ConversationDtos.ConversationResponse(c.getId(), c.isDirect());
     }
 
+    /** Adds members in chunks of up to 10,000 ids; call repeatedly to build up a large group. */
+    @PostMapping(value = "/{id}/members", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ConversationDtos.AddMembersResponse addMembers(@PathVariable("id") UUID conversationId,
+                                                          @Valid @RequestBody ConversationDtos.AddMembersRequest req,
+                                                          @AuthenticationPrincipal AuthUser me) {
+        int added = conversationService.addMembers(conversationId, me.id(), req.userIds().iterator());
+        return new ConversationDtos.AddMembersResponse(added);
+    }
+
+    /** Streaming variant: one user id per line, read and inserted chunk by chunk without buffering the body. */
+    @PostMapping(value = "/{id}/members", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public ConversationDtos.AddMembersResponse addMembersStream(@PathVariable("id") UUID conversationId, InputStream body,
+                                                                @AuthenticationPrincipal AuthUser me) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.US_ASCII))) {
+            Iterator<UUID> userIds = reader.lines()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty())
+                    .map(UUID::fromString)
+                    .iterator();
+            return new ConversationDtos.AddMembersResponse(conversationService.addMembers(conversationId, me.id(), userIds));
+        }
+    }
+
+    @PostMapping("/{id}/read")
+    public ConversationDtos.UnreadResponse markRead(@PathVariable("id") UUID conversationId,
+                                                    @Valid @RequestBody ConversationDtos.MarkReadRequest req,
+                                                    @AuthenticationPrincipal AuthUser me) {
+        int unread = unreadCounters.markRead(conversationId, me.id(), req.messageId());
+        return new ConversationDtos.UnreadResponse(conversationId, unread);
+    }
+
     @GetMapping
-    public List<?> myConversations(@AuthenticationPrincipal User principal) {
-        var me = userRepository.findByUsername(principal.getUsername()).orElseThrow();
-        return conversationService.listMemberships(me.getId());
+    public List<?> myConversations(@AuthenticationPrincipal AuthUser me) {
+        return conversationService.listMemberships(me.id());
     }
 
     @DeleteMapping("/{id}")
-    public void delete(@PathVariable("id") UUID conversationId, @AuthenticationPrincipal User principal) {
-        var me = userRepository.findByUsername(principal.getUsername()).orElseThrow();
+    public void delete(@PathVariable("id") UUID conversationId) {
         conversationService.delete(conversationId);
     }
 }
@@ -0,0 +1,30 @@
+package com.example.messenger.api;
+
+import com.example.messenger.api.dto.InboxDtos;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.InboxService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+@Tag(name = "Inbox", description = "Conversation list APIs")
+@RestController
+@RequestMapping("/api/v1/inbox")
+public class InboxController {
+    private final InboxService inboxService;
+
+    public InboxController(InboxService inboxService) {
+        this.inboxService = inboxService;
+    }
+
+    @Operation(summary = "Inbox",
+            description = "Returns the caller's conversations by last activity, newest first, with last message preview, "
+                    + "unread count and member summary. Pass nextCursor as 'before' for the next page.")
+    @GetMapping
+    public InboxDtos.InboxPage inbox(@RequestParam(value = "before", required = false) String before,
+                                     @RequestParam(value = "limit", defaultValue = "20") int limit,
+                                     @AuthenticationPrincipal AuthUser me) {
+        return inboxService.page(me.id(), before, Math.min(100, Math.max(1, limit)));
+    }
+}
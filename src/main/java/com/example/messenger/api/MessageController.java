@@ -2,39 +2,55 @@
 package com.example.messenger.api;
 
 import com.example.messenger.api.dto.MessageDtos;
-import com.example.messenger.domain.Message;
-import com.example.messenger.repo.UserRepository;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.ExportService;
+import com.example.messenger.service.MessageCursor;
 import com.example.messenger.service.MessageService;
+import com.example.messenger.ws.BrokerBridge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.time.Instant;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 @Tag(name = "Messages", description = "Message management APIs")
 @RestController
 @RequestMapping("/api/v1")
 public class MessageController {
     private final MessageService messageService;
-    private final UserRepository userRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final BrokerBridge brokerBridge;
+    private final ExportService exportService;
+    private final Timer fanOutTimer;
 
-    public MessageController(MessageService messageService, UserRepository userRepository, SimpMessagingTemplate messagingTemplate) {
+    public MessageController(MessageService messageService, BrokerBridge brokerBridge, ExportService exportService,
+                             MeterRegistry registry) {
         this.messageService = messageService;
-        this.userRepository = userRepository;
-        this.messagingTemplate = messagingTemplate;
+        this.brokerBridge = brokerBridge;
+        this.exportService = exportService;
+        this.fanOutTimer = Timer.builder("messenger.send.fanout").tag("transport", "rest").register(registry);
     }
 
     @Operation(summary = "Send a message",
-            description = "Sends a message to a conversation")
+            description = "Sends a message to a conversation. Fallback for clients without a STOMP connection; "
+                    + "connected clients SEND to /app/conversations/{id}/messages and get a receipt on /user/queue/receipts. "
+                    + "Set clientMessageId to make retries safe: a repeated id returns the original message.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Message sent successfully"),
             @ApiResponse(responseCode = "404", description = "Conversation not found")
@@ -42,18 +58,56 @@ public class MessageController {
     @PostMapping("/conversations/{id}/messages")
     public MessageDtos.MessageResponse send(@Parameter(description = "Conversation ID") @PathVariable("id") UUID conversationId,
                                             @Valid @RequestBody MessageDtos.SendMessageRequest req,
-                                            @AuthenticationPrincipal User principal) {
-        var me = userRepository.findByUsername(principal.getUsername()).orElseThrow();
-        Message m = messageService.send(conversationId, me.getId(), req.content());
-        var resp = new MessageDtos.MessageResponse(m.getId(), m.getConversationId(), m.getSenderId(), m.getContent(), m.getCreatedAt());
-        messagingTemplate.convertAndSend("/topic/chat." + conversationId, resp);
+                                            @AuthenticationPrincipal AuthUser me) {
+        MessageService.Sent sent = messageService.send(conversationId, me.id(), req.content(), req.clientMessageId());
+        var resp = sent.message();
+        // A retry of a send that already went through gets the original back and is not published again.
+        if (!sent.duplicate()) fanOutTimer.record(() -> brokerBridge.publish("/topic/chat." + conversationId, resp));
         return resp;
     }
 
+    @Operation(summary = "Message history",
+            description = "Returns one page of a conversation's messages, newest first. Pass nextCursor as 'before' to page "
+                    + "back in time, or prevCursor as 'after' to fetch newer messages.")
     @GetMapping("/conversations/{id}/messages")
-    public List<MessageDtos.MessageResponse> history(@PathVariable("id") UUID conversationId, @RequestParam(value = "limit", defaultValue = "50") int limit) {
-        return messageService.history(conversationId, Math.min(200, Math.max(1, limit)))
-                .stream().map(m -> new MessageDtos.MessageResponse(m.getId(), m.getConversationId(), m.getSenderId(), m.getContent(), m.getCreatedAt()))
-                .toList();
+    public MessageDtos.MessagePage history(@PathVariable("id") UUID conversationId,
+                                           @RequestParam(value = "before", required = false) String before,
+                                           @RequestParam(value = "after", required = false) String after,
+                                           @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return messageService.history(conversationId, before, after, Math.min(200, Math.max(1, limit)));
+    }
+
+    @Operation(summary = "Export conversation history",
+            description = "Streams every message of the conversation as NDJSON (one message per line), oldest first. "
+                    + "Long exports are cut off after a time limit; pass the last line's createdAt and id as "
+                    + "afterCreatedAt/afterId to continue, until a response comes back empty.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Export stream"),
+            @ApiResponse(responseCode = "403", description = "Not a member of the conversation"),
+            @ApiResponse(responseCode = "429", description = "Export quota exceeded; see Retry-After"),
+            @ApiResponse(responseCode = "503", description = "Too many exports in progress")
+    })
+    @GetMapping("/conversations/{id}/export")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable("id") UUID conversationId,
+                                                        @RequestParam(value = "afterCreatedAt", required = false) Instant afterCreatedAt,
+                                                        @RequestParam(value = "afterId", required = false) UUID afterId,
+                                                        @AuthenticationPrincipal AuthUser me,
+                                                        HttpServletRequest request) {
+        if ((afterCreatedAt == null) != (afterId == null)) {
+            throw new IllegalArgumentException("afterCreatedAt and afterId must be given together");
+        }
+        MessageCursor from = afterId == null ? null : new MessageCursor(afterCreatedAt, afterId);
+        ExportService.Export export = exportService.open(conversationId, me.id(), from);
+        // Covers requests that time out or fail before the body is written.
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor("export", new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                export.release();
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"conversation-" + conversationId + ".ndjson\"")
+                .body(export::writeTo);
     }
 }
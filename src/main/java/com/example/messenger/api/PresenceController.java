@@ -0,0 +1,32 @@
+package com.example.messenger.api;
+
+import com.example.messenger.api.dto.PresenceDtos;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.PresenceService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@Tag(name = "Presence", description = "Online status APIs")
+@RestController
+@RequestMapping("/api/v1")
+public class PresenceController {
+    private final PresenceService presenceService;
+
+    public PresenceController(PresenceService presenceService) {
+        this.presenceService = presenceService;
+    }
+
+    @Operation(summary = "Conversation presence",
+            description = "Returns whether each member of the conversation is online and when that last changed. "
+                    + "Subscribe to /user/queue/presence first, then apply pushed changes on top of this snapshot.")
+    @GetMapping("/conversations/{id}/presence")
+    public List<PresenceDtos.UserPresence> presence(@PathVariable("id") UUID conversationId,
+                                                    @AuthenticationPrincipal AuthUser me) {
+        return presenceService.snapshot(conversationId, me.id());
+    }
+}
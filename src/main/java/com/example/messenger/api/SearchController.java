@@ -0,0 +1,31 @@
+package com.example.messenger.api;
+
+import com.example.messenger.api.dto.SearchDtos;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.SearchService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+@Tag(name = "Search", description = "Message search APIs")
+@RestController
+@RequestMapping("/api/v1/search")
+public class SearchController {
+    private final SearchService searchService;
+
+    public SearchController(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    @Operation(summary = "Search messages",
+            description = "Full-text search over messages in the caller's conversations. All words must match; "
+                    + "results are ranked by relevance, then recency.")
+    @GetMapping
+    public SearchDtos.SearchPage search(@RequestParam("q") String query,
+                                        @RequestParam(value = "page", defaultValue = "0") int page,
+                                        @RequestParam(value = "size", defaultValue = "20") int size,
+                                        @AuthenticationPrincipal AuthUser me) {
+        return searchService.search(me.id(), query, page, Math.min(100, Math.max(1, size)));
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.messenger.api;
+
+import com.example.messenger.api.dto.SyncDtos;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.SyncService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+@Tag(name = "Sync", description = "Reconnect catch-up APIs")
+@RestController
+@RequestMapping("/api/v1/sync")
+public class SyncController {
+    private final SyncService syncService;
+
+    public SyncController(SyncService syncService) {
+        this.syncService = syncService;
+    }
+
+    @Operation(summary = "Changes since",
+            description = "Returns the caller's new messages, added memberships and deleted conversations after 'since', "
+                    + "oldest first. Pass 'next' as 'since' for the next page. When resyncRequired is set, reload the inbox "
+                    + "and histories, then sync from 'next'.")
+    @GetMapping
+    public SyncDtos.SyncPage sync(@RequestParam(value = "since", required = false) Long since,
+                                  @RequestParam(value = "limit", defaultValue = "500") int limit,
+                                  @AuthenticationPrincipal AuthUser me) {
+        return syncService.sync(me.id(), since, Math.min(1000, Math.max(1, limit)));
+    }
+}
@@ -1,12 +1,17 @@
-
 package com.example.messenger.api;
 
 import com.example.messenger.api.dto.UserDtos;
 import com.example.messenger.repo.UserRepository;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.UserDirectoryService;
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -15,19 +20,43 @@ import java.util.List;
 @RequestMapping("/api/v1/users")
 public class UserController {
     private final UserRepository userRepository;
+    private final UserDirectoryService directoryService;
+    private final int allUsersLimit;
 
-    public UserController(UserRepository userRepository) { this.userRepository = userRepository; }
+    public UserController(UserRepository userRepository,
+                          UserDirectoryService directoryService,
+                          @Value("${messenger.users.all-users-limit:500}") int allUsersLimit) {
+        this.userRepository = userRepository;
+        this.directoryService = directoryService;
+        this.allUsersLimit = allUsersLimit;
+    }
 
     @GetMapping("/me")
-    public UserDtos.userResponse me(@AuthenticationPrincipal User principal) {
-        var u = userRepository.findByUsername(principal.getUsername()).orElseThrow();
-        return new UserDtos.userResponse(u.getId(), u.getUsername(), u.getDisplayName(), u.getAvatarUrl());
+    public UserDtos.userResponse me(@AuthenticationPrincipal AuthUser me) {
+        var u = userRepository.findById(me.id()).orElseThrow();
+        return UserDtos.userResponse.of(u);
+    }
+
+    @Operation(summary = "User directory",
+            description = "Returns users in username order. With 'q', only users whose username or display name "
+                    + "starts with it (case-insensitive). Pass nextCursor as 'after' for the next page.")
+    @GetMapping
+    public UserDtos.UserPage directory(@RequestParam(value = "q", required = false) String query,
+                                       @RequestParam(value = "after", required = false) String after,
+                                       @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return directoryService.page(query, after, Math.min(200, Math.max(1, limit)));
     }
 
+    /** Replaced by {@link #directory}; returns only the first {@code messenger.users.all-users-limit} users. */
+    @Deprecated
+    @Operation(summary = "All users (deprecated)", deprecated = true,
+            description = "Returns at most the first messenger.users.all-users-limit users by username. "
+                    + "Use GET /api/v1/users instead.")
     @GetMapping("/allUsers")
-    public List<UserDtos.userResponse> getAllUsers() {
-        return userRepository.findAll().stream()
-                .map(u -> new UserDtos.userResponse(u.getId(), u.getUsername(), u.getDisplayName(), u.getAvatarUrl()))
-                .toList();
+    public ResponseEntity<List<UserDtos.userResponse>> getAllUsers() {
+        return ResponseEntity.ok()
+                .header("Deprecation", "true")
+                .header(HttpHeaders.LINK, "</api/v1/users>; rel=\"successor-version\"")
+                .body(directoryService.page(null, null, allUsersLimit).users());
     }
 }
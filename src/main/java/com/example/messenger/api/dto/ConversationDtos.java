@@ -2,10 +2,15 @@
 package com.example.messenger.api.dto;
 
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import java.util.List;
 import java.util.UUID;
 
 public class ConversationDtos {
     public record CreateConversationRequest(boolean direct, List<UUID> memberIds) {}
     public record ConversationResponse(UUID id, boolean direct) {}
+    public record AddMembersRequest(@NotNull @Size(max = 10000) List<UUID> userIds) {}
+    public record AddMembersResponse(int added) {}
+    public record MarkReadRequest(@NotNull UUID messageId) {}
+    public record UnreadResponse(UUID conversationId, int unreadCount) {}
 }
@@ -0,0 +1,14 @@
+package com.example.messenger.api.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public class InboxDtos {
+    public record LastMessage(UUID id, UUID senderId, String preview, Instant createdAt) {}
+    /** Member count plus a few other members' ids, enough to title a direct or small group chat. */
+    public record MemberSummary(int count, List<UUID> sample) {}
+    public record InboxEntry(UUID conversationId, boolean direct, MemberSummary members, LastMessage lastMessage,
+                             int unreadCount, Instant lastActivityAt) {}
+    public record InboxPage(List<InboxEntry> conversations, String nextCursor) {}
+}
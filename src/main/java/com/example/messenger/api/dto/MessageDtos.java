@@ -1,12 +1,25 @@
 
 package com.example.messenger.api.dto;
 
+import com.example.messenger.domain.Message;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
 public class MessageDtos {
-    public record SendMessageRequest(@NotBlank String content) {}
-    public record MessageResponse(UUID id, UUID conversationId, UUID senderId, String content, Instant createdAt) {}
+    /** {@code clientMessageId}, generated once per message by the client, makes retries of the send idempotent. */
+    public record SendMessageRequest(@NotBlank String content, UUID clientMessageId) {}
+    public record MessageResponse(UUID id, UUID conversationId, UUID senderId, String content, Instant createdAt) {
+        public static MessageResponse of(Message m) {
+            return new MessageResponse(m.getId(), m.getConversationId(), m.getSenderId(), m.getContent(), m.getCreatedAt());
+        }
+    }
+    /** Newest-first page; {@code nextCursor} pages towards older messages, {@code prevCursor} towards newer ones. */
+    public record MessagePage(List<MessageResponse> messages, String nextCursor, String prevCursor) {}
+    /** Reply to a WebSocket send on {@code /user/queue/receipts}; {@code receipt} echoes the frame's receipt header. */
+    public record SendReceipt(String receipt, UUID id, Instant createdAt) {}
+    /** A WebSocket send that was rejected, on {@code /user/queue/errors}. */
+    public record SendError(String receipt, String error) {}
 }
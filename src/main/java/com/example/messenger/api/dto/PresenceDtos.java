@@ -0,0 +1,13 @@
+package com.example.messenger.api.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public class PresenceDtos {
+    /** What clients see, both in snapshots and on {@code /user/queue/presence}; {@code lastSeenAt} is the last change. */
+    public record UserPresence(UUID userId, boolean online, Instant lastSeenAt) {}
+    public record PresenceChange(UUID userId, boolean online, Instant at) {}
+    /** One node's coalesced changes, or periodically all its online users; any batch tells other nodes the sender is alive. */
+    public record PresenceBatch(String nodeId, List<PresenceChange> changes) {}
+}
@@ -0,0 +1,8 @@
+package com.example.messenger.api.dto;
+
+import java.util.List;
+
+public class SearchDtos {
+    public record SearchHit(MessageDtos.MessageResponse message, double score) {}
+    public record SearchPage(List<SearchHit> hits, int page, boolean hasMore) {}
+}
@@ -0,0 +1,17 @@
+package com.example.messenger.api.dto;
+
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+
+import java.util.List;
+import java.util.UUID;
+
+public class SyncDtos {
+    /** {@code message} is set for {@code MESSAGE} changes, unless the message has since been archived or deleted. */
+    public record Change(long seq, String kind, UUID conversationId, MessageResponse message) {}
+    /**
+     * Changes after the requested sequence, oldest first. Pass {@code next} as {@code since} on the following
+     * call. With {@code resyncRequired} the list is empty and the client reloads its conversations, then syncs
+     * from {@code next}.
+     */
+    public record SyncPage(List<Change> changes, long next, boolean hasMore, boolean resyncRequired) {}
+}
@@ -0,0 +1,14 @@
+package com.example.messenger.api.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public class TypingDtos {
+    /**
+     * Relayed on {@code /topic/chat.{id}} next to messages, told apart by {@code type}. Never stored; clients
+     * drop the indicator at {@code expiresAt} unless a newer event or the user's message arrives first.
+     */
+    public record TypingEvent(String type, UUID conversationId, UUID userId, Instant expiresAt) {
+        public static final String TYPE = "typing";
+    }
+}
@@ -1,8 +1,16 @@
-
 package com.example.messenger.api.dto;
 
+import com.example.messenger.domain.User;
+
+import java.util.List;
 import java.util.UUID;
 
 public class UserDtos {
-    public record userResponse(UUID id, String username, String displayName, String avatarUrl) {}
+    public record userResponse(UUID id, String username, String displayName, String avatarUrl) {
+        public static userResponse of(User u) {
+            return new userResponse(u.getId(), u.getUsername(), u.getDisplayName(), u.getAvatarUrl());
+        }
+    }
+    /** Page of the directory in username order; pass {@code nextCursor} as {@code after} for the next one. */
+    public record UserPage(List<userResponse> users, String nextCursor) {}
 }
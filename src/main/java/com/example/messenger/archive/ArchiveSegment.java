@@ -0,0 +1,153 @@
+package com.example.messenger.archive;
+
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.MessageCursor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only, memory-mapped view of a segment written by {@link ArchiveSegmentWriter}. Only the blocks a read
+ * touches are inflated. Safe for concurrent readers.
+ */
+final class ArchiveSegment {
+    private final Path path;
+    private final UUID conversationId;
+    private final MappedByteBuffer buf;
+    private final int count;
+    private final int blockCount;
+    private final int indexOffset;
+    private final MessageCursor last;
+
+    private ArchiveSegment(Path path, UUID conversationId, MappedByteBuffer buf) throws IOException {
+        this.path = path;
+        this.conversationId = conversationId;
+        this.buf = buf;
+        if (buf.capacity() < ArchiveSegmentWriter.HEADER_BYTES || buf.getInt(0) != ArchiveSegmentWriter.MAGIC
+                || buf.getInt(4) != ArchiveSegmentWriter.VERSION) {
+            throw new IOException("not an archive segment: " + path);
+        }
+        this.count = buf.getInt(8);
+        this.blockCount = buf.getInt(12);
+        this.indexOffset = Math.toIntExact(buf.getLong(16));
+        this.last = new MessageCursor(instant(buf.getLong(24)), new UUID(buf.getLong(32), buf.getLong(40)));
+    }
+
+    static ArchiveSegment open(Path path, UUID conversationId) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ArchiveSegment(path, conversationId, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    Path path() { return path; }
+
+    int count() { return count; }
+
+    long bytes() { return buf.capacity(); }
+
+    MessageCursor first() { return firstKey(0); }
+
+    MessageCursor last() { return last; }
+
+    /** Appends up to {@code n - out.size()} messages older than {@code cursor} (all if null), newest first. */
+    void before(MessageCursor cursor, int n, List<Message> out) {
+        int b = cursor == null ? blockCount - 1 : block(cursor);
+        for (; b >= 0 && out.size() < n; b--) {
+            List<Message> block = decode(b);
+            for (int i = block.size() - 1; i >= 0 && out.size() < n; i--) {
+                Message m = block.get(i);
+                if (cursor == null || MessageCursor.of(m).compareTo(cursor, false) < 0) out.add(m);
+            }
+        }
+    }
+
+    /** Appends up to {@code n - out.size()} messages newer than {@code cursor} (all if null), oldest first. */
+    void after(MessageCursor cursor, int n, List<Message> out) {
+        for (int b = cursor == null ? 0 : Math.max(0, block(cursor)); b < blockCount && out.size() < n; b++) {
+            for (Message m : decode(b)) {
+                if (out.size() == n) break;
+                if (cursor == null || MessageCursor.of(m).compareTo(cursor, false) > 0) out.add(m);
+            }
+        }
+    }
+
+    Message get(MessageCursor key) {
+        int b = block(key);
+        if (b < 0) return null;
+        for (Message m : decode(b)) {
+            if (m.getId().equals(key.id())) return m;
+        }
+        return null;
+    }
+
+    /** The last block whose first key is at or before {@code key}, or -1. */
+    private int block(MessageCursor key) {
+        int lo = 0;
+        int hi = blockCount - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (firstKey(mid).compareTo(key, false) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private MessageCursor firstKey(int b) {
+        int at = indexOffset + b * ArchiveSegmentWriter.INDEX_ENTRY_BYTES;
+        return new MessageCursor(instant(buf.getLong(at)), new UUID(buf.getLong(at + 8), buf.getLong(at + 16)));
+    }
+
+    private List<Message> decode(int b) {
+        int at = indexOffset + b * ArchiveSegmentWriter.INDEX_ENTRY_BYTES;
+        int offset = Math.toIntExact(buf.getLong(at + 24));
+        int compressed = buf.getInt(at + 32);
+        byte[] raw = new byte[buf.getInt(at + 36)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buf.slice(offset, compressed));
+            if (inflater.inflate(raw) != raw.length) throw new DataFormatException("short block");
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("corrupt block " + b + " in " + path, e));
+        } finally {
+            inflater.end();
+        }
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        List<Message> messages = new ArrayList<>();
+        while (in.hasRemaining()) {
+            Message m = new Message();
+            m.setConversationId(conversationId);
+            m.setId(new UUID(in.getLong(), in.getLong()));
+            m.setSenderId(new UUID(in.getLong(), in.getLong()));
+            m.setCreatedAt(instant(in.getLong()));
+            long edited = in.getLong();
+            m.setEditedAt(edited == ArchiveSegmentWriter.NOT_EDITED ? null : instant(edited));
+            byte[] content = new byte[in.getInt()];
+            in.get(content);
+            m.setContent(new String(content, StandardCharsets.UTF_8));
+            messages.add(m);
+        }
+        return messages;
+    }
+
+    private static Instant instant(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+}
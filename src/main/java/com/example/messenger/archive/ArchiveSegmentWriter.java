@@ -0,0 +1,161 @@
+package com.example.messenger.archive;
+
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.MessageCursor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Streams one archive segment: messages of a single conversation in ascending {@code (created_at, id)} order,
+ * packed into deflate-compressed blocks with a sparse index of each block's first key. Layout (big-endian):
+ * <pre>
+ * header  int magic, int version, int count, int blockCount, long indexOffset, long lastMicros, long lastMsb, long lastLsb
+ * blocks  deflated records: long idMsb, long idLsb, long senderMsb, long senderLsb, long createdAtMicros,
+ *         long editedAtMicros (Long.MIN_VALUE if never edited), int contentLength, UTF-8 content
+ * index   blockCount x (long firstMicros, long firstMsb, long firstLsb, long offset, int compressedLength, int rawLength)
+ * </pre>
+ * The file is written under a temporary name and renamed into place by {@link #finish}, which also syncs the
+ * directories involved so the rename survives a power loss.
+ */
+final class ArchiveSegmentWriter implements AutoCloseable {
+    static final int MAGIC = 0x4d534741; // "MSGA"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 48;
+    static final int INDEX_ENTRY_BYTES = 40;
+    static final long NOT_EDITED = Long.MIN_VALUE;
+    // Uncompressed block size: small enough that a page read inflates little, large enough to compress well.
+    static final int BLOCK_BYTES = 32 * 1024;
+
+    private final Path tmp;
+    private final Path target;
+    // Directories this writer created, deepest first; their entries in their parents must be synced too.
+    private final List<Path> createdDirectories = new ArrayList<>();
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_BYTES + 16 * 1024);
+    private final DataOutputStream records = new DataOutputStream(raw);
+    private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    private final DataOutputStream index = new DataOutputStream(indexBytes);
+    private final Deflater deflater = new Deflater();
+    private final byte[] chunk = new byte[8192];
+    private long position;
+    private int count;
+    private int blockCount;
+    private MessageCursor blockFirst;
+    private MessageCursor last;
+
+    ArchiveSegmentWriter(Path target) throws IOException {
+        this.target = target;
+        this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        for (Path dir = target.getParent(); dir != null && !Files.isDirectory(dir); dir = dir.getParent()) {
+            createdDirectories.add(dir);
+        }
+        Files.createDirectories(target.getParent());
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+        out.write(new byte[HEADER_BYTES]);
+        position = HEADER_BYTES;
+    }
+
+    void add(Message m) throws IOException {
+        MessageCursor key = MessageCursor.of(m);
+        if (last != null && last.compareTo(key, false) >= 0) throw new IllegalStateException("messages must be ascending");
+        if (raw.size() == 0) blockFirst = key;
+        byte[] content = m.getContent().getBytes(StandardCharsets.UTF_8);
+        records.writeLong(m.getId().getMostSignificantBits());
+        records.writeLong(m.getId().getLeastSignificantBits());
+        records.writeLong(m.getSenderId().getMostSignificantBits());
+        records.writeLong(m.getSenderId().getLeastSignificantBits());
+        records.writeLong(micros(m.getCreatedAt()));
+        records.writeLong(m.getEditedAt() == null ? NOT_EDITED : micros(m.getEditedAt()));
+        records.writeInt(content.length);
+        records.write(content);
+        last = key;
+        count++;
+        if (raw.size() >= BLOCK_BYTES) writeBlock();
+    }
+
+    int count() { return count; }
+
+    /** Bytes written so far, compressed. */
+    long size() { return position + indexBytes.size(); }
+
+    /**
+     * Writes the pending block, the index and the header, syncs, and atomically moves the segment into place;
+     * once this returns, the segment is durable under its final name.
+     */
+    Path finish() throws IOException {
+        if (count == 0) throw new IllegalStateException("empty segment");
+        if (raw.size() > 0) writeBlock();
+        long indexOffset = position;
+        indexBytes.writeTo(out);
+        out.close();
+        if (indexOffset + indexBytes.size() > Integer.MAX_VALUE) throw new IOException("segment exceeds 2 GiB");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC).putInt(VERSION).putInt(count).putInt(blockCount)
+                    .putLong(indexOffset)
+                    .putLong(micros(last.createdAt()))
+                    .putLong(last.id().getMostSignificantBits()).putLong(last.id().getLeastSignificantBits())
+                    .flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Path moved = Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        sync(target.getParent());
+        for (Path dir : createdDirectories) sync(dir.getParent());
+        return moved;
+    }
+
+    /** Makes a directory's entries (a rename, a new subdirectory) durable. */
+    private static void sync(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        out.close();
+        Files.deleteIfExists(tmp);
+    }
+
+    private void writeBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(raw.toByteArray());
+        deflater.finish();
+        int compressed = 0;
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+            compressed += n;
+        }
+        index.writeLong(micros(blockFirst.createdAt()));
+        index.writeLong(blockFirst.id().getMostSignificantBits());
+        index.writeLong(blockFirst.id().getLeastSignificantBits());
+        index.writeLong(position);
+        index.writeInt(compressed);
+        index.writeInt(raw.size());
+        position += compressed;
+        blockCount++;
+        raw.reset();
+    }
+
+    static long micros(Instant t) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, t);
+    }
+}
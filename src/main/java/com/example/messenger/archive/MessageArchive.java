@@ -0,0 +1,219 @@
+package com.example.messenger.archive;
+
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.MessageCursor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Cold history moved out of {@code messages} by {@link MessageArchiver}. Each conversation has a directory
+ * {@code <dir>/<first two id chars>/<id>/} of append-only segments named {@code seg-<generation>}; segments of a
+ * conversation never overlap, ascend with their generation, and are all older than the conversation's rows still
+ * in the database. Segment lists of recently read conversations are cached and re-listed when the directory
+ * changes, so a shared directory also works across nodes.
+ */
+@Slf4j
+@Component
+public class MessageArchive {
+    private final Path dir;
+    private final int maxConversations;
+    private final Map<UUID, Listing> listings;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong segments = new AtomicLong();
+    private final Timer readTimer;
+
+    private record Listing(FileTime modified, List<ArchiveSegment> segments) {}
+
+    public MessageArchive(@Value("${messenger.archive.dir:data/archive}") Path dir,
+                          @Value("${messenger.archive.cache.max-conversations:1000}") int maxConversations,
+                          MeterRegistry registry) {
+        this.dir = dir;
+        this.maxConversations = maxConversations;
+        this.listings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Listing> eldest) {
+                return size() > MessageArchive.this.maxConversations;
+            }
+        };
+        this.readTimer = Timer.builder("messenger.archive.read").register(registry);
+        Gauge.builder("messenger.archive.bytes", bytes, AtomicLong::get).baseUnit("bytes").register(registry);
+        Gauge.builder("messenger.archive.segments", segments, AtomicLong::get).register(registry);
+    }
+
+    /** Up to {@code n} archived messages older than {@code cursor} (the newest ones if null), newest first. */
+    public List<Message> before(UUID conversationId, MessageCursor cursor, int n) {
+        return readTimer.record(() -> {
+            List<ArchiveSegment> list = segments(conversationId);
+            List<Message> out = new ArrayList<>(Math.min(n, 256));
+            for (int s = list.size() - 1; s >= 0 && out.size() < n; s--) list.get(s).before(cursor, n, out);
+            return out;
+        });
+    }
+
+    /** Up to {@code n} archived messages newer than {@code cursor} (the oldest ones if null), oldest first. */
+    public List<Message> after(UUID conversationId, MessageCursor cursor, int n) {
+        return readTimer.record(() -> {
+            List<ArchiveSegment> list = segments(conversationId);
+            List<Message> out = new ArrayList<>(Math.min(n, 256));
+            for (ArchiveSegment segment : list) {
+                if (out.size() == n) break;
+                if (cursor == null || segment.last().compareTo(cursor, false) > 0) segment.after(cursor, n, out);
+            }
+            return out;
+        });
+    }
+
+    public Optional<Message> find(UUID conversationId, MessageCursor key) {
+        return readTimer.record(() -> {
+            for (ArchiveSegment segment : segments(conversationId)) {
+                if (segment.last().compareTo(key, false) >= 0) return Optional.ofNullable(segment.get(key));
+            }
+            return Optional.<Message>empty();
+        });
+    }
+
+    /** The newest archived position of the conversation, or null; every message at or before it is archived. */
+    public MessageCursor archivedUntil(UUID conversationId) {
+        List<ArchiveSegment> list = segments(conversationId);
+        return list.isEmpty() ? null : list.get(list.size() - 1).last();
+    }
+
+    /** Whether {@code cursor} lies inside the archived part of the conversation's history. */
+    public boolean covers(UUID conversationId, MessageCursor cursor) {
+        MessageCursor until = archivedUntil(conversationId);
+        return until != null && cursor.compareTo(until, false) <= 0;
+    }
+
+    public long bytes() { return bytes.get(); }
+
+    /** Starts the next segment of a conversation; it becomes visible when the writer finishes. */
+    ArchiveSegmentWriter newSegment(UUID conversationId) throws IOException {
+        List<Path> files = files(conversationDir(conversationId));
+        long next = files.isEmpty() ? 0 : generation(files.get(files.size() - 1)) + 1;
+        return new ArchiveSegmentWriter(conversationDir(conversationId).resolve("seg-%08d".formatted(next)));
+    }
+
+    void added(UUID conversationId, Path segment) throws IOException {
+        bytes.addAndGet(Files.size(segment));
+        segments.incrementAndGet();
+        synchronized (listings) {
+            listings.remove(conversationId);
+        }
+    }
+
+    /** Removes a conversation's archive, e.g. once the conversation itself is deleted. */
+    void delete(UUID conversationId) throws IOException {
+        synchronized (listings) {
+            listings.remove(conversationId);
+        }
+        Path conversationDir = conversationDir(conversationId);
+        for (Path file : files(conversationDir)) {
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                bytes.addAndGet(-size);
+                segments.decrementAndGet();
+            }
+        }
+        Files.deleteIfExists(conversationDir);
+    }
+
+    /** Every conversation with an archive directory. */
+    List<UUID> conversations() throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        List<UUID> ids = new ArrayList<>();
+        try (Stream<Path> shards = Files.list(dir)) {
+            for (Path shard : shards.filter(Files::isDirectory).toList()) {
+                try (Stream<Path> conversations = Files.list(shard)) {
+                    conversations.forEach(p -> ids.add(UUID.fromString(p.getFileName().toString())));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Recomputes the size gauges and removes temporary files left by an interrupted archiver. */
+    void rescan() throws IOException {
+        long totalBytes = 0;
+        long totalSegments = 0;
+        for (UUID conversationId : conversations()) {
+            Path conversationDir = conversationDir(conversationId);
+            try (DirectoryStream<Path> tmp = Files.newDirectoryStream(conversationDir, "*.tmp")) {
+                for (Path file : tmp) Files.delete(file);
+            }
+            for (Path file : files(conversationDir)) {
+                totalBytes += Files.size(file);
+                totalSegments++;
+            }
+        }
+        bytes.set(totalBytes);
+        segments.set(totalSegments);
+        log.info("message archive: {} segments, {} bytes in {}", totalSegments, totalBytes, dir);
+    }
+
+    private List<ArchiveSegment> segments(UUID conversationId) {
+        Path conversationDir = conversationDir(conversationId);
+        try {
+            FileTime modified;
+            try {
+                modified = Files.getLastModifiedTime(conversationDir);
+            } catch (NoSuchFileException e) {
+                return List.of();
+            }
+            Listing cached;
+            synchronized (listings) {
+                cached = listings.get(conversationId);
+            }
+            if (cached != null && cached.modified().equals(modified)) return cached.segments();
+            List<ArchiveSegment> opened = new ArrayList<>();
+            for (Path file : files(conversationDir)) opened.add(ArchiveSegment.open(file, conversationId));
+            synchronized (listings) {
+                listings.put(conversationId, new Listing(modified, List.copyOf(opened)));
+            }
+            return opened;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path conversationDir(UUID conversationId) {
+        String id = conversationId.toString();
+        return dir.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    private static List<Path> files(Path conversationDir) throws IOException {
+        if (!Files.isDirectory(conversationDir)) return List.of();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(conversationDir, "seg-*")) {
+            for (Path file : stream) {
+                if (!file.toString().endsWith(".tmp")) files.add(file);
+            }
+        }
+        files.sort(Comparator.comparingLong(MessageArchive::generation));
+        return files;
+    }
+
+    private static long generation(Path file) {
+        return Long.parseLong(file.getFileName().toString().substring("seg-".length()));
+    }
+}
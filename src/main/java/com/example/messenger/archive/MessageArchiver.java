@@ -0,0 +1,203 @@
+package com.example.messenger.archive;
+
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.MessageCursor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves messages older than {@code messenger.archive.after} from {@code messages} into {@link MessageArchive},
+ * every {@code messenger.archive.interval}; disabled while {@code after} is zero. Per conversation, each pass
+ * appends one segment (more for very long histories) and only then deletes the archived rows, bounded by the
+ * segment's last key. A pass interrupted in between leaves rows that are both archived and in the table; the
+ * next pass deletes them first. On Postgres, nodes take turns through an advisory lock; the archive directory
+ * must be shared by every node that serves history.
+ */
+@Slf4j
+@Component
+public class MessageArchiver {
+    static final int SEGMENT_MESSAGES = 100_000;
+    private static final long LOCK_KEY = 0x6d73675f61726368L;
+    private static final int ORPHAN_CHUNK = 500;
+    static final String CANDIDATES_SQL = "SELECT DISTINCT conversation_id FROM messages WHERE created_at < ?";
+    // Same redundant-bound keyset form as MessageRepository.findPageAfter.
+    static final String PAGE_SQL = "SELECT id, sender_id, content, created_at, edited_at FROM messages"
+            + " WHERE conversation_id = ? AND created_at < ? AND created_at >= ? AND (created_at > ? OR id > ?)"
+            + " ORDER BY created_at, id LIMIT ?";
+    static final String DELETE_SQL = "DELETE FROM messages WHERE conversation_id = ?"
+            + " AND created_at <= ? AND (created_at < ? OR id <= ?)";
+
+    private final MessageArchive archive;
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration after;
+    private final Duration interval;
+    private final int pageSize;
+    private final Counter archived;
+    private ScheduledExecutorService scheduler;
+
+    public MessageArchiver(MessageArchive archive,
+                           JdbcTemplate jdbcTemplate,
+                           @Value("${messenger.archive.after:0s}") Duration after,
+                           @Value("${messenger.archive.interval:1d}") Duration interval,
+                           @Value("${messenger.archive.page-size:5000}") int pageSize,
+                           MeterRegistry registry) {
+        this.archive = archive;
+        this.jdbcTemplate = jdbcTemplate;
+        this.after = after;
+        this.interval = interval;
+        this.pageSize = pageSize;
+        this.archived = Counter.builder("messenger.archive.archived").register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.execute(() -> {
+            try {
+                archive.rescan();
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("message archive scan failed", e);
+            }
+        });
+        if (after.isZero()) return;
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::runQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    /** One archiving pass; returns the number of messages moved. */
+    public long run() {
+        Instant cutoff = Instant.now().minus(after);
+        Long moved = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            // Everything runs on this connection so a session-level advisory lock covers the whole pass.
+            JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(con, true));
+            boolean locked = con.isWrapperFor(PGConnection.class);
+            if (locked && !Boolean.TRUE.equals(jdbc.queryForObject("SELECT pg_try_advisory_lock(?)", Boolean.class, LOCK_KEY))) {
+                return 0L;
+            }
+            try {
+                long total = 0;
+                for (UUID conversationId : jdbc.queryForList(CANDIDATES_SQL, UUID.class, at(cutoff))) {
+                    total += archive(jdbc, conversationId, cutoff);
+                }
+                deleteOrphans(jdbc);
+                return total;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (locked) jdbc.queryForObject("SELECT pg_advisory_unlock(?)", Boolean.class, LOCK_KEY);
+            }
+        });
+        if (moved != null && moved > 0) log.info("archived {} messages older than {}", moved, cutoff);
+        return moved == null ? 0 : moved;
+    }
+
+    private void runQuietly() {
+        try {
+            run();
+        } catch (DataAccessException | UncheckedIOException e) {
+            log.warn("message archiver failed; will retry", e);
+        }
+    }
+
+    private long archive(JdbcTemplate jdbc, UUID conversationId, Instant cutoff) throws IOException {
+        MessageCursor from = archive.archivedUntil(conversationId);
+        if (from != null) delete(jdbc, conversationId, from);
+        long total = 0;
+        while (true) {
+            int written;
+            try (ArchiveSegmentWriter writer = archive.newSegment(conversationId)) {
+                while (writer.count() < SEGMENT_MESSAGES) {
+                    List<Message> page = page(jdbc, conversationId, cutoff, from,
+                            Math.min(pageSize, SEGMENT_MESSAGES - writer.count()));
+                    for (Message m : page) writer.add(m);
+                    if (!page.isEmpty()) from = MessageCursor.of(page.get(page.size() - 1));
+                    if (page.size() < pageSize) break;
+                }
+                written = writer.count();
+                if (written == 0) return total;
+                Path segment = writer.finish();
+                archive.added(conversationId, segment);
+            }
+            // The segment and its directory entries are synced; only now do the rows go.
+            delete(jdbc, conversationId, from);
+            archived.increment(written);
+            total += written;
+            if (written < SEGMENT_MESSAGES) return total;
+        }
+    }
+
+    private List<Message> page(JdbcTemplate jdbc, UUID conversationId, Instant cutoff, MessageCursor from, int limit) {
+        // With nothing archived yet, start strictly before any message so the id tiebreak cannot skip one.
+        Instant fromAt = from == null ? Instant.EPOCH.minusSeconds(1) : from.createdAt();
+        UUID fromId = from == null ? new UUID(0, 0) : from.id();
+        RowMapper<Message> mapper = (rs, n) -> {
+            Message m = new Message();
+            m.setId(rs.getObject(1, UUID.class));
+            m.setConversationId(conversationId);
+            m.setSenderId(rs.getObject(2, UUID.class));
+            m.setContent(rs.getString(3));
+            m.setCreatedAt(rs.getObject(4, OffsetDateTime.class).toInstant());
+            OffsetDateTime edited = rs.getObject(5, OffsetDateTime.class);
+            m.setEditedAt(edited == null ? null : edited.toInstant());
+            return m;
+        };
+        return jdbc.query(PAGE_SQL, mapper, conversationId, at(cutoff), at(fromAt), at(fromAt), fromId, limit);
+    }
+
+    private static void delete(JdbcTemplate jdbc, UUID conversationId, MessageCursor until) {
+        jdbc.update(DELETE_SQL, conversationId, at(until.createdAt()), at(until.createdAt()), until.id());
+    }
+
+    private void deleteOrphans(JdbcTemplate jdbc) throws IOException {
+        List<UUID> archivedConversations = archive.conversations();
+        for (int i = 0; i < archivedConversations.size(); i += ORPHAN_CHUNK) {
+            List<UUID> chunk = archivedConversations.subList(i, Math.min(i + ORPHAN_CHUNK, archivedConversations.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            Set<UUID> live = new HashSet<>(jdbc.queryForList(
+                    "SELECT id FROM conversations WHERE id IN (" + placeholders + ")", UUID.class, chunk.toArray()));
+            for (UUID conversationId : chunk) {
+                if (!live.contains(conversationId)) archive.delete(conversationId);
+            }
+        }
+    }
+
+    private static OffsetDateTime at(Instant t) {
+        return t.atOffset(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.messenger.configs;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Execution model. {@code spring.threads.virtual.enabled} switches Tomcat's request threads and Spring's
+ * application task executor (async MVC such as streamed exports, {@code @Async}) to virtual threads, and
+ * {@link com.example.messenger.ws.WebSocketConfig} does the same for the STOMP channels. Virtual threads remove
+ * the request pool that used to cap how many callers wait on JDBC, so in that mode the Hikari pool is wrapped
+ * in a {@link ConcurrencyLimitedDataSource} sized to it.
+ */
+@Configuration
+public class ExecutionConfig {
+
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    static BeanPostProcessor jdbcConcurrencyLimit() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikari) {
+                    return new ConcurrencyLimitedDataSource(hikari, hikari.getMaximumPoolSize(),
+                            Duration.ofMillis(hikari.getConnectionTimeout()));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    MeterBinder jdbcConcurrencyMetrics(DataSource dataSource) {
+        return registry -> {
+            if (!(dataSource instanceof ConcurrencyLimitedDataSource limited)) return;
+            Gauge.builder("messenger.jdbc.waiting", limited, ConcurrencyLimitedDataSource::waiting).register(registry);
+            Gauge.builder("messenger.jdbc.in-use", limited, ConcurrencyLimitedDataSource::inUse).register(registry);
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.messenger.configs;
+
+import com.example.messenger.domain.IdGenerator;
+import com.example.messenger.domain.Ids;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Installs the entity id generator. Declare an {@link IdGenerator} bean to plug in a custom one,
+ * otherwise {@code messenger.ids.generator} selects {@code time-ordered} (default) or {@code random}.
+ */
+@Configuration
+public class IdGeneratorConfig {
+    public IdGeneratorConfig(ObjectProvider<IdGenerator> custom,
+                             @Value("${messenger.ids.generator:time-ordered}") String strategy) {
+        Ids.use(custom.getIfAvailable(() -> switch (strategy) {
+            case "time-ordered" -> IdGenerator.TIME_ORDERED;
+            case "random" -> IdGenerator.RANDOM;
+            default -> throw new IllegalArgumentException("unknown messenger.ids.generator: " + strategy);
+        }));
+    }
+}
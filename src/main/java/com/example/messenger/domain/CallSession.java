@@ -28,7 +28,7 @@ public class CallSession {
 
     @PrePersist
     public void pre() {
-        if (id == null) id = UUID.randomUUID();
+        if (id == null) id = Ids.next();
         if (startedAt == null) startedAt = Instant.now();
         if (status == null) status = "INITIATED";
     }
@@ -0,0 +1,44 @@
+package com.example.messenger.domain;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
+import java.time.Instant;
+import java.util.UUID;
+
+/** One row of the sync feed; written in batches over JDBC by {@code SyncService}, mapped here for the schema. */
+@Entity
+@Table(name = "change_log", indexes = { @Index(columnList = "conversationId,seq"), @Index(columnList = "userId,seq"),
+        @Index(columnList = "createdAt") })
+public class ChangeLogEntry {
+    public enum Kind { MESSAGE, MEMBER_ADDED, CONVERSATION_DELETED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long seq;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private Kind kind;
+
+    @Column(nullable = false)
+    private UUID conversationId;
+
+    private UUID userId;
+    private UUID messageId;
+
+    @ColumnDefault("CURRENT_TIMESTAMP")
+    @Column(nullable = false, insertable = false, updatable = false)
+    private Instant createdAt;
+
+    public Long getSeq() { return seq; }
+    public Kind getKind() { return kind; }
+    public void setKind(Kind kind) { this.kind = kind; }
+    public UUID getConversationId() { return conversationId; }
+    public void setConversationId(UUID conversationId) { this.conversationId = conversationId; }
+    public UUID getUserId() { return userId; }
+    public void setUserId(UUID userId) { this.userId = userId; }
+    public UUID getMessageId() { return messageId; }
+    public void setMessageId(UUID messageId) { this.messageId = messageId; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,19 @@
+package com.example.messenger.domain;
+
+import jakarta.persistence.*;
+
+/** The single row below which {@code change_log} has been trimmed; written over JDBC by {@code SyncService}. */
+@Entity
+@Table(name = "change_log_floor")
+public class ChangeLogFloor {
+    @Id
+    private Integer id;
+
+    @Column(nullable = false)
+    private Long seq;
+
+    public Integer getId() { return id; }
+    public void setId(Integer id) { this.id = id; }
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
+}
@@ -15,9 +15,18 @@ public class Conversation {
     @Column(nullable = false)
     private Instant createdAt;
 
+    // Inbox projection, written by InboxService and ConversationMemberWriter.
+    private UUID lastMessageId;
+    private UUID lastMessageSenderId;
+    @Column(length = 200)
+    private String lastMessagePreview;
+    private Instant lastMessageAt;
+    @Column(nullable = false)
+    private int memberCount;
+
     @PrePersist
     public void pre() {
-        if (id == null) id = UUID.randomUUID();
+        if (id == null) id = Ids.next();
         if (createdAt == null) createdAt = Instant.now();
     }
 
@@ -27,4 +36,14 @@ public class Conversation {
     public void setDirect(boolean direct) { isDirect = direct; }
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public UUID getLastMessageId() { return lastMessageId; }
+    public void setLastMessageId(UUID lastMessageId) { this.lastMessageId = lastMessageId; }
+    public UUID getLastMessageSenderId() { return lastMessageSenderId; }
+    public void setLastMessageSenderId(UUID lastMessageSenderId) { this.lastMessageSenderId = lastMessageSenderId; }
+    public String getLastMessagePreview() { return lastMessagePreview; }
+    public void setLastMessagePreview(String lastMessagePreview) { this.lastMessagePreview = lastMessagePreview; }
+    public Instant getLastMessageAt() { return lastMessageAt; }
+    public void setLastMessageAt(Instant lastMessageAt) { this.lastMessageAt = lastMessageAt; }
+    public int getMemberCount() { return memberCount; }
+    public void setMemberCount(int memberCount) { this.memberCount = memberCount; }
 }
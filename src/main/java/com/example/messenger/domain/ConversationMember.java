@@ -6,7 +6,10 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "conversation_members")
+@Table(name = "conversation_members", indexes = {
+        @Index(columnList = "conversationId,userId", unique = true),
+        @Index(columnList = "userId,lastActivityAt,conversationId")
+})
 public class ConversationMember {
     @Id
     private UUID id;
@@ -19,11 +22,22 @@ public class ConversationMember {
 
     private Instant joinedAt;
     private UUID lastReadMessageId;
+    private Instant lastReadAt;
+
+    // Maintained by UnreadCounterService; may lag the newest messages by one flush interval.
+    @Column(nullable = false)
+    private int unreadCount;
+    private Instant countedThroughAt;
+
+    // Inbox sort key: the conversation's newest message, or joinedAt before there is one.
+    @Column(nullable = false)
+    private Instant lastActivityAt;
 
     @PrePersist
     public void pre() {
-        if (id == null) id = UUID.randomUUID();
+        if (id == null) id = Ids.next();
         if (joinedAt == null) joinedAt = Instant.now();
+        if (lastActivityAt == null) lastActivityAt = joinedAt;
     }
 
     public UUID getId() { return id; }
@@ -36,4 +50,12 @@ public class ConversationMember {
     public void setJoinedAt(Instant joinedAt) { this.joinedAt = joinedAt; }
     public UUID getLastReadMessageId() { return lastReadMessageId; }
     public void setLastReadMessageId(UUID lastReadMessageId) { this.lastReadMessageId = lastReadMessageId; }
+    public Instant getLastReadAt() { return lastReadAt; }
+    public void setLastReadAt(Instant lastReadAt) { this.lastReadAt = lastReadAt; }
+    public int getUnreadCount() { return unreadCount; }
+    public void setUnreadCount(int unreadCount) { this.unreadCount = unreadCount; }
+    public Instant getCountedThroughAt() { return countedThroughAt; }
+    public void setCountedThroughAt(Instant countedThroughAt) { this.countedThroughAt = countedThroughAt; }
+    public Instant getLastActivityAt() { return lastActivityAt; }
+    public void setLastActivityAt(Instant lastActivityAt) { this.lastActivityAt = lastActivityAt; }
 }
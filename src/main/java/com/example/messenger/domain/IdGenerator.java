@@ -0,0 +1,17 @@
+package com.example.messenger.domain;
+
+import com.github.f4b6a3.uuid.UuidCreator;
+
+import java.util.UUID;
+
+/** Source of primary keys for all entities; see {@link Ids}. */
+@FunctionalInterface
+public interface IdGenerator {
+    UUID next();
+
+    /** UUIDv7: millisecond timestamp prefix, random tail incremented by one within the same millisecond. */
+    IdGenerator TIME_ORDERED = UuidCreator::getTimeOrderedEpochPlus1;
+
+    /** UUIDv4, the previous behaviour. */
+    IdGenerator RANDOM = UUID::randomUUID;
+}
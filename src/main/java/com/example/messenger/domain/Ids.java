@@ -0,0 +1,18 @@
+package com.example.messenger.domain;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Static access point used by the entities' {@code @PrePersist} hooks, which are not Spring beans.
+ * Defaults to time-ordered ids so new rows append to the right edge of the primary-key B-tree.
+ */
+public final class Ids {
+    private static volatile IdGenerator generator = IdGenerator.TIME_ORDERED;
+
+    private Ids() { }
+
+    public static UUID next() { return generator.next(); }
+
+    public static void use(IdGenerator idGenerator) { generator = Objects.requireNonNull(idGenerator); }
+}
@@ -3,10 +3,12 @@ package com.example.messenger.domain;
 
 import jakarta.persistence.*;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.UUID;
 
 @Entity
-@Table(name = "messages", indexes = { @Index(columnList = "conversationId,createdAt") })
+@Table(name = "messages", indexes = { @Index(columnList = "conversationId,createdAt,id"), @Index(columnList = "conversationId,id"),
+        @Index(columnList = "createdAt,id") })
 public class Message {
     @Id
     private UUID id;
@@ -25,8 +27,9 @@ public class Message {
 
     @PrePersist
     public void pre() {
-        if (id == null) id = UUID.randomUUID();
-        if (createdAt == null) createdAt = Instant.now();
+        if (id == null) id = Ids.next();
+        // Postgres keeps microseconds; truncating here keeps cursors built from this instance exact.
+        if (createdAt == null) createdAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
     }
 
     public UUID getId() { return id; }
@@ -0,0 +1,39 @@
+package com.example.messenger.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+/** A client-generated id claimed by a send; written over JDBC by {@code SendDeduplicator}, mapped here for the schema. */
+@Entity
+@Table(name = "message_client_ids", indexes = {
+        @Index(columnList = "conversationId,senderId,clientMessageId", unique = true),
+        @Index(columnList = "createdAt")
+})
+public class MessageClientId {
+    @Id
+    private UUID messageId;
+
+    @Column(nullable = false)
+    private UUID conversationId;
+
+    @Column(nullable = false)
+    private UUID senderId;
+
+    @Column(nullable = false)
+    private UUID clientMessageId;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public UUID getMessageId() { return messageId; }
+    public void setMessageId(UUID messageId) { this.messageId = messageId; }
+    public UUID getConversationId() { return conversationId; }
+    public void setConversationId(UUID conversationId) { this.conversationId = conversationId; }
+    public UUID getSenderId() { return senderId; }
+    public void setSenderId(UUID senderId) { this.senderId = senderId; }
+    public UUID getClientMessageId() { return clientMessageId; }
+    public void setClientMessageId(UUID clientMessageId) { this.clientMessageId = clientMessageId; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
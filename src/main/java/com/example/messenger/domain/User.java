@@ -22,7 +22,7 @@ public class User {
 
     @PrePersist
     public void pre() {
-        if (id == null) id = UUID.randomUUID();
+        if (id == null) id = Ids.next();
         if (createdAt == null) createdAt = Instant.now();
     }
 
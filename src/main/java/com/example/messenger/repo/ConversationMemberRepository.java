@@ -5,12 +5,15 @@ import com.example.messenger.domain.ConversationMember;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 public interface ConversationMemberRepository extends JpaRepository<ConversationMember, UUID> {
     List<ConversationMember> findByUserId(UUID userId);
+    List<ConversationMember> findByUserIdIn(Collection<UUID> userIds);
     List<ConversationMember> findByConversationId(UUID conversationId);
+    boolean existsByConversationIdAndUserId(UUID conversationId, UUID userId);
     @Modifying
     void deleteByConversationId(UUID conversationId);
 }
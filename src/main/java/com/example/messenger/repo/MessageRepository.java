@@ -1,13 +1,51 @@
-
 package com.example.messenger.repo;
 
 import com.example.messenger.domain.Message;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
 public interface MessageRepository extends JpaRepository<Message, UUID> {
-    List<Message> findByConversationIdOrderByCreatedAtDesc(UUID conversationId, Pageable pageable);
+    // The first history read older than a point carries a "createdAt >= :from" bound as well, so on the partitioned
+    // table (V10) it is pruned to the recent months; when that comes up short MessageService falls back to
+    // findPageUntil, one unbounded read that Postgres answers with an ordered Append over the older partitions.
+    @Query("select m from Message m where m.conversationId = :conversationId and m.createdAt >= :from"
+            + " order by m.createdAt desc, m.id desc")
+    List<Message> findNewest(@Param("conversationId") UUID conversationId,
+                             @Param("from") Instant from,
+                             Pageable pageable);
+
+    // The redundant "createdAt <=" bound keeps the row-value comparison sargable on idx_messages_conv_created_id.
+    @Query("select m from Message m where m.conversationId = :conversationId and m.createdAt >= :from"
+            + " and m.createdAt <= :createdAt and (m.createdAt < :createdAt or m.id < :id)"
+            + " order by m.createdAt desc, m.id desc")
+    List<Message> findPageBefore(@Param("conversationId") UUID conversationId,
+                                 @Param("from") Instant from,
+                                 @Param("createdAt") Instant createdAt,
+                                 @Param("id") UUID id,
+                                 Pageable pageable);
+
+    @Query("select m from Message m where m.conversationId = :conversationId and m.createdAt < :until"
+            + " order by m.createdAt desc, m.id desc")
+    List<Message> findPageUntil(@Param("conversationId") UUID conversationId,
+                                @Param("until") Instant until,
+                                Pageable pageable);
+
+    @Query("select m from Message m where m.conversationId = :conversationId"
+            + " and m.createdAt >= :createdAt and (m.createdAt > :createdAt or m.id > :id)"
+            + " order by m.createdAt asc, m.id asc")
+    List<Message> findPageAfter(@Param("conversationId") UUID conversationId,
+                                @Param("createdAt") Instant createdAt,
+                                @Param("id") UUID id,
+                                Pageable pageable);
+
+    // Id-only keyset, valid once message ids are time-ordered (see IdGenerator.TIME_ORDERED).
+    List<Message> findByConversationIdOrderByIdDesc(UUID conversationId, Pageable pageable);
+    List<Message> findByConversationIdAndIdLessThanOrderByIdDesc(UUID conversationId, UUID id, Pageable pageable);
+    List<Message> findByConversationIdAndIdGreaterThanOrderByIdAsc(UUID conversationId, UUID id, Pageable pageable);
 }
@@ -1,12 +1,33 @@
-
 package com.example.messenger.repo;
 
 import com.example.messenger.domain.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface UserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByUsername(String username);
+
+    List<User> findByUsernameGreaterThanOrderByUsernameAsc(String after, Pageable pageable);
+
+    // [lo, hi) is a lower-cased prefix as a range (see V16), served by idx_users_username_lower.
+    @Query("select u from User u where lower(u.username) >= :lo and lower(u.username) < :hi"
+            + " and u.username > :after order by u.username asc")
+    List<User> findPageByUsernamePrefix(@Param("lo") String lo,
+                                        @Param("hi") String hi,
+                                        @Param("after") String after,
+                                        Pageable pageable);
+
+    // Same range on the display name, served by idx_users_display_name_lower.
+    @Query("select u from User u where lower(u.displayName) >= :lo and lower(u.displayName) < :hi"
+            + " and u.username > :after order by u.username asc")
+    List<User> findPageByDisplayNamePrefix(@Param("lo") String lo,
+                                           @Param("hi") String hi,
+                                           @Param("after") String after,
+                                           Pageable pageable);
 }
@@ -0,0 +1,67 @@
+package com.example.messenger.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/** Mutable in-memory postings for documents not yet written to a segment. Callers synchronize. */
+final class IndexBuffer implements Searchable {
+    private long[] docs = new long[3 * 256]; // idMsb, idLsb, createdAtMicros per document
+    private int docCount;
+    private final Map<TermKey, Postings> postings = new HashMap<>();
+
+    private static final class Postings implements PostingList {
+        int[] data = new int[8];
+        int size;
+
+        void add(int ord, int tf) {
+            if (2 * size == data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[2 * size] = ord;
+            data[2 * size + 1] = tf;
+            size++;
+        }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public int ord(int i) { return data[2 * i]; }
+
+        @Override
+        public int tf(int i) { return data[2 * i + 1]; }
+    }
+
+    void add(UUID messageId, UUID conversationId, long createdAtMicros, Map<String, Integer> terms) {
+        if (3 * docCount == docs.length) docs = Arrays.copyOf(docs, docs.length * 2);
+        int ord = docCount++;
+        docs[3 * ord] = messageId.getMostSignificantBits();
+        docs[3 * ord + 1] = messageId.getLeastSignificantBits();
+        docs[3 * ord + 2] = createdAtMicros;
+        terms.forEach((term, tf) -> postings.computeIfAbsent(TermKey.of(conversationId, term), k -> new Postings()).add(ord, tf));
+    }
+
+    @Override
+    public int docCount() { return docCount; }
+
+    @Override
+    public PostingList postings(UUID conversationId, byte[] term) {
+        return postings.get(new TermKey(conversationId.getMostSignificantBits(), conversationId.getLeastSignificantBits(), term));
+    }
+
+    @Override
+    public UUID messageId(int ord) { return new UUID(docs[3 * ord], docs[3 * ord + 1]); }
+
+    @Override
+    public long createdAtMicros(int ord) { return docs[3 * ord + 2]; }
+
+    void writeTo(SegmentWriter writer) throws IOException {
+        for (int i = 0; i < docCount; i++) writer.addDoc(docs[3 * i], docs[3 * i + 1], docs[3 * i + 2]);
+        List<TermKey> keys = new ArrayList<>(postings.keySet());
+        keys.sort(null);
+        for (TermKey key : keys) writer.addKey(key, postings.get(key), 0);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.messenger.search;
+
+/** Documents containing one term of one conversation, as (ordinal, term frequency) pairs sorted by ordinal. */
+interface PostingList {
+    int size();
+
+    int ord(int i);
+
+    int tf(int i);
+
+    /** Index of {@code ord} in this list, or -1. */
+    default int find(int ord) {
+        int lo = 0;
+        int hi = size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = ord(mid);
+            if (v < ord) lo = mid + 1;
+            else if (v > ord) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+}
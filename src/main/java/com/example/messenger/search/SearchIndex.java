@@ -0,0 +1,374 @@
+package com.example.messenger.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Embedded inverted index over message content. New messages go into an in-memory buffer that is written out
+ * as an immutable, memory-mapped segment every {@code flush-docs} messages or {@code flush-interval}; a
+ * background task merges the smallest segments once there are more than {@code merge-factor} of them.
+ * Postings are keyed by (conversation, term), so a query only touches the caller's conversations.
+ * <p>
+ * The buffer is not durable: on startup everything newer than the newest indexed message (less a safety
+ * margin) is re-read from {@code messages}, which also builds the index from scratch on an empty directory.
+ * Overlap from that margin is removed at query time.
+ */
+@Slf4j
+@Component
+public class SearchIndex {
+    static final int MAX_QUERY_TERMS = 8;
+    private static final int CATCH_UP_PAGE = 1000;
+    // Messages committed slightly out of created_at order around the last flush are re-read, not lost.
+    private static final Duration CATCH_UP_MARGIN = Duration.ofMinutes(1);
+    private static final double K1 = 1.2;
+
+    private final Path dir;
+    private final int flushDocs;
+    private final Duration flushInterval;
+    private final int mergeFactor;
+    private final int maxSegmentDocs;
+    private final JdbcTemplate jdbcTemplate;
+    private final Object lock = new Object();
+    private final Object segmentsLock = new Object();
+    private IndexBuffer active = new IndexBuffer();
+    private volatile IndexBuffer flushing;
+    private volatile List<Segment> segments = List.of();
+    private long nextSegment;
+    private ScheduledExecutorService indexer;
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final Counter indexed;
+    private final Timer queryTimer;
+    private final Timer flushTimer;
+    private final Timer mergeTimer;
+
+    public record Hit(UUID messageId, UUID conversationId, double score, Instant createdAt) {}
+
+    public SearchIndex(@Value("${messenger.search.dir:data/search}") Path dir,
+                       @Value("${messenger.search.flush-docs:10000}") int flushDocs,
+                       @Value("${messenger.search.flush-interval:30s}") Duration flushInterval,
+                       @Value("${messenger.search.merge-factor:10}") int mergeFactor,
+                       @Value("${messenger.search.max-segment-docs:5000000}") int maxSegmentDocs,
+                       JdbcTemplate jdbcTemplate,
+                       MeterRegistry registry) {
+        this.dir = dir;
+        this.flushDocs = flushDocs;
+        this.flushInterval = flushInterval;
+        this.mergeFactor = Math.max(2, mergeFactor);
+        this.maxSegmentDocs = maxSegmentDocs;
+        this.jdbcTemplate = jdbcTemplate;
+        this.indexed = Counter.builder("messenger.search.indexed").register(registry);
+        this.queryTimer = Timer.builder("messenger.search.query").register(registry);
+        this.flushTimer = Timer.builder("messenger.search.flush").register(registry);
+        this.mergeTimer = Timer.builder("messenger.search.merge").register(registry);
+        Gauge.builder("messenger.search.segments", this, s -> s.segments.size()).register(registry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(dir);
+        List<Segment> opened = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*")) {
+            List<Path> sorted = new ArrayList<>();
+            for (Path file : files) {
+                if (file.toString().endsWith(".tmp")) Files.delete(file);
+                else sorted.add(file);
+            }
+            sorted.sort(null);
+            for (Path file : sorted) {
+                opened.add(Segment.open(file));
+                nextSegment = Math.max(nextSegment, generation(file) + 1);
+            }
+        }
+        segments = List.copyOf(opened);
+        long checkpoint = opened.stream().mapToLong(Segment::maxCreatedAtMicros).max().orElse(Long.MIN_VALUE);
+        log.info("search index: {} segments in {}", opened.size(), dir);
+
+        indexer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "search-indexer");
+            t.setDaemon(true);
+            return t;
+        });
+        Instant from = checkpoint == Long.MIN_VALUE ? Instant.EPOCH
+                : Instant.EPOCH.plus(checkpoint, ChronoUnit.MICROS).minus(CATCH_UP_MARGIN);
+        indexer.execute(() -> catchUp(from));
+        long millis = flushInterval.toMillis();
+        indexer.scheduleWithFixedDelay(this::flushQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (indexer != null) {
+            indexer.shutdownNow();
+            indexer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        flushQuietly();
+    }
+
+    /** Adds one message; cheap enough for the send path. */
+    public void add(UUID messageId, UUID conversationId, String content, Instant createdAt) {
+        Map<String, Integer> terms = Tokenizer.terms(content);
+        if (terms.isEmpty()) return;
+        long micros = ChronoUnit.MICROS.between(Instant.EPOCH, createdAt);
+        boolean full;
+        synchronized (lock) {
+            active.add(messageId, conversationId, micros, terms);
+            full = active.docCount() >= flushDocs;
+        }
+        indexed.increment();
+        if (full && indexer != null && flushQueued.compareAndSet(false, true)) {
+            try {
+                indexer.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flushQueued.set(false); // shutting down; stop() flushes
+            }
+        }
+    }
+
+    /**
+     * The best {@code limit} messages in {@code conversationIds} containing every term of {@code query}, by
+     * BM25-style score and then recency.
+     */
+    public List<Hit> search(String query, Collection<UUID> conversationIds, int limit) {
+        List<byte[]> terms = Tokenizer.terms(query).keySet().stream()
+                .limit(MAX_QUERY_TERMS)
+                .map(t -> t.getBytes(StandardCharsets.UTF_8))
+                .toList();
+        if (terms.isEmpty() || conversationIds.isEmpty() || limit <= 0) return List.of();
+        return queryTimer.record(() -> {
+            Comparator<Hit> worstFirst = Comparator.comparingDouble(Hit::score).thenComparing(Hit::createdAt);
+            PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, worstFirst);
+            Set<UUID> seen = new HashSet<>();
+            // Newest first: a buffer may be published as a segment while we read, which only yields duplicates
+            // (dropped via "seen"), whereas reading the segments first could miss it altogether.
+            IndexBuffer beingFlushed;
+            synchronized (lock) {
+                beingFlushed = flushing;
+                collect(active, terms, conversationIds, limit, top, seen);
+            }
+            if (beingFlushed != null) collect(beingFlushed, terms, conversationIds, limit, top, seen);
+            for (Segment segment : segments) collect(segment, terms, conversationIds, limit, top, seen);
+            List<Hit> hits = new ArrayList<>(top);
+            hits.sort(worstFirst.reversed());
+            return hits;
+        });
+    }
+
+    /** Writes the buffer out as a new segment, then merges if there are too many segments. */
+    public void flush() throws IOException {
+        flushQueued.set(false);
+        synchronized (segmentsLock) {
+            // A buffer whose write failed stays in "flushing" (and searchable) until a later flush succeeds.
+            if (flushing == null) {
+                synchronized (lock) {
+                    if (active.docCount() == 0) return;
+                    flushing = active;
+                    active = new IndexBuffer();
+                }
+            }
+            long start = System.nanoTime();
+            try (SegmentWriter writer = new SegmentWriter(nextPath())) {
+                flushing.writeTo(writer);
+                Segment written = Segment.open(writer.finish());
+                List<Segment> next = new ArrayList<>(segments);
+                next.add(written);
+                segments = List.copyOf(next);
+                flushing = null;
+            } finally {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            mergeIfNeeded();
+        }
+    }
+
+    public int segmentCount() { return segments.size(); }
+
+    public int bufferedDocs() {
+        synchronized (lock) {
+            return active.docCount();
+        }
+    }
+
+    private void collect(Searchable source, List<byte[]> terms, Collection<UUID> conversationIds, int limit,
+                         PriorityQueue<Hit> top, Set<UUID> seen) {
+        int n = source.docCount();
+        if (n == 0) return;
+        PostingList[] lists = new PostingList[terms.size()];
+        for (UUID conversationId : conversationIds) {
+            boolean all = true;
+            for (int t = 0; t < lists.length && all; t++) {
+                lists[t] = source.postings(conversationId, terms.get(t));
+                all = lists[t] != null;
+            }
+            if (!all) continue;
+            // Drive the intersection from the rarest term.
+            Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+            for (int i = 0; i < lists[0].size(); i++) {
+                int ord = lists[0].ord(i);
+                double score = weight(lists[0].tf(i), lists[0].size(), n);
+                for (int t = 1; t < lists.length && score > 0; t++) {
+                    int at = lists[t].find(ord);
+                    score = at < 0 ? 0 : score + weight(lists[t].tf(at), lists[t].size(), n);
+                }
+                if (score <= 0) continue;
+                Hit hit = new Hit(source.messageId(ord), conversationId, score,
+                        Instant.EPOCH.plus(source.createdAtMicros(ord), ChronoUnit.MICROS));
+                if (!seen.add(hit.messageId())) continue;
+                top.offer(hit);
+                if (top.size() > limit) top.poll();
+            }
+        }
+    }
+
+    private static double weight(int tf, int df, int docCount) {
+        double idf = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+        return idf * tf * (K1 + 1) / (tf + K1);
+    }
+
+    private void mergeIfNeeded() throws IOException {
+        while (segments.size() > mergeFactor) {
+            List<Segment> candidates = new ArrayList<>(segments);
+            candidates.sort(Comparator.comparingInt(Segment::docCount));
+            List<Segment> picked = new ArrayList<>();
+            long docs = 0;
+            for (Segment s : candidates) {
+                if (picked.size() == mergeFactor || docs + s.docCount() > maxSegmentDocs) break;
+                picked.add(s);
+                docs += s.docCount();
+            }
+            if (picked.size() < 2) return;
+            merge(picked);
+        }
+    }
+
+    private void merge(List<Segment> picked) throws IOException {
+        long start = System.nanoTime();
+        int[] bases = new int[picked.size()];
+        Segment merged;
+        try (SegmentWriter writer = new SegmentWriter(nextPath())) {
+            int base = 0;
+            for (int s = 0; s < picked.size(); s++) {
+                Segment segment = picked.get(s);
+                bases[s] = base;
+                for (int ord = 0; ord < segment.docCount(); ord++) {
+                    UUID id = segment.messageId(ord);
+                    writer.addDoc(id.getMostSignificantBits(), id.getLeastSignificantBits(), segment.createdAtMicros(ord));
+                }
+                base += segment.docCount();
+            }
+            // k-way merge of the sorted key dictionaries; equal keys are concatenated in segment order.
+            record Head(int segment, int index, TermKey key) {}
+            PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(Head::key).thenComparingInt(Head::segment));
+            for (int s = 0; s < picked.size(); s++) {
+                if (picked.get(s).termCount() > 0) heads.add(new Head(s, 0, picked.get(s).key(0)));
+            }
+            List<Head> same = new ArrayList<>();
+            while (!heads.isEmpty()) {
+                same.clear();
+                TermKey key = heads.peek().key();
+                while (!heads.isEmpty() && heads.peek().key().equals(key)) same.add(heads.poll());
+                PostingList[] lists = new PostingList[same.size()];
+                int[] ordBases = new int[same.size()];
+                for (int i = 0; i < same.size(); i++) {
+                    Head h = same.get(i);
+                    lists[i] = picked.get(h.segment()).postings(h.index());
+                    ordBases[i] = bases[h.segment()];
+                    Segment segment = picked.get(h.segment());
+                    if (h.index() + 1 < segment.termCount()) {
+                        heads.add(new Head(h.segment(), h.index() + 1, segment.key(h.index() + 1)));
+                    }
+                }
+                writer.addKey(key, lists, ordBases);
+            }
+            merged = Segment.open(writer.finish());
+        }
+        List<Segment> next = new ArrayList<>(segments);
+        next.removeAll(picked);
+        next.add(merged);
+        segments = List.copyOf(next);
+        // Readers still holding the old mappings keep working; the pages are released once they are unreachable.
+        for (Segment s : picked) Files.deleteIfExists(s.path());
+        mergeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.debug("merged {} segments into {} ({} docs)", picked.size(), merged.path().getFileName(), merged.docCount());
+    }
+
+    private void catchUp(Instant from) {
+        Instant ts = from;
+        UUID id = new UUID(0, 0);
+        long total = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                OffsetDateTime at = ts.atOffset(ZoneOffset.UTC);
+                List<Object[]> rows = jdbcTemplate.query(
+                        "SELECT id, conversation_id, content, created_at FROM messages"
+                                + " WHERE created_at >= ? AND (created_at > ? OR id > ?)"
+                                + " ORDER BY created_at, id LIMIT " + CATCH_UP_PAGE,
+                        (rs, n) -> new Object[] {rs.getObject(1, UUID.class), rs.getObject(2, UUID.class),
+                                rs.getString(3), rs.getObject(4, OffsetDateTime.class).toInstant()},
+                        at, at, id);
+                for (Object[] row : rows) {
+                    add((UUID) row[0], (UUID) row[1], (String) row[2], (Instant) row[3]);
+                }
+                total += rows.size();
+                // This runs on the indexer thread, so queued flushes would wait for the whole catch-up.
+                if (bufferedDocs() >= flushDocs) flush();
+                if (rows.size() < CATCH_UP_PAGE) break;
+                Object[] last = rows.get(rows.size() - 1);
+                id = (UUID) last[0];
+                ts = (Instant) last[3];
+            }
+            if (total > 0) log.info("search index caught up on {} messages since {}", total, from);
+        } catch (IOException | RuntimeException e) {
+            log.error("search index catch-up failed after {} messages", total, e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.warn("search index flush failed; will retry", e);
+        }
+    }
+
+    private Path nextPath() {
+        return dir.resolve("seg-%012d".formatted(nextSegment++));
+    }
+
+    private static long generation(Path file) {
+        return Long.parseLong(file.getFileName().toString().substring("seg-".length()));
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.messenger.search;
+
+import java.util.UUID;
+
+/** What a query needs from a segment or the in-memory buffer. */
+interface Searchable {
+    int docCount();
+
+    /** Postings of {@code term} in {@code conversationId}, or null. */
+    PostingList postings(UUID conversationId, byte[] term);
+
+    UUID messageId(int ord);
+
+    long createdAtMicros(int ord);
+}
@@ -0,0 +1,109 @@
+package com.example.messenger.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/** Read-only, memory-mapped view of a segment written by {@link SegmentWriter}. Safe for concurrent readers. */
+final class Segment implements Searchable {
+    private final Path path;
+    private final MappedByteBuffer buf;
+    private final int docCount;
+    private final int termCount;
+    private final int termIndexOffset;
+    private final long maxCreatedAtMicros;
+
+    private Segment(Path path, MappedByteBuffer buf) throws IOException {
+        this.path = path;
+        this.buf = buf;
+        if (buf.getInt(0) != SegmentWriter.MAGIC || buf.getInt(4) != SegmentWriter.VERSION) {
+            throw new IOException("not a search segment: " + path);
+        }
+        this.docCount = buf.getInt(8);
+        this.termCount = buf.getInt(12);
+        this.termIndexOffset = Math.toIntExact(buf.getLong(24));
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < docCount; i++) max = Math.max(max, createdAtMicros(i));
+        this.maxCreatedAtMicros = max;
+    }
+
+    static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    Path path() { return path; }
+
+    @Override
+    public int docCount() { return docCount; }
+
+    int termCount() { return termCount; }
+
+    long maxCreatedAtMicros() { return maxCreatedAtMicros; }
+
+    @Override
+    public UUID messageId(int ord) {
+        int at = SegmentWriter.HEADER_BYTES + ord * SegmentWriter.DOC_BYTES;
+        return new UUID(buf.getLong(at), buf.getLong(at + 8));
+    }
+
+    @Override
+    public long createdAtMicros(int ord) {
+        return buf.getLong(SegmentWriter.HEADER_BYTES + ord * SegmentWriter.DOC_BYTES + 16);
+    }
+
+    @Override
+    public PostingList postings(UUID conversationId, byte[] term) {
+        long msb = conversationId.getMostSignificantBits();
+        long lsb = conversationId.getLeastSignificantBits();
+        int lo = 0;
+        int hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = entryOffset(mid);
+            int c = TermKey.compare(buf.getLong(entry), buf.getLong(entry + 8), termAt(entry), msb, lsb, term);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return postingsAt(entry);
+        }
+        return null;
+    }
+
+    /** The {@code i}-th key in ascending order; used when merging. */
+    TermKey key(int i) {
+        int entry = entryOffset(i);
+        return new TermKey(buf.getLong(entry), buf.getLong(entry + 8), termAt(entry));
+    }
+
+    PostingList postings(int i) {
+        return postingsAt(entryOffset(i));
+    }
+
+    private int entryOffset(int i) {
+        return Math.toIntExact(buf.getLong(termIndexOffset + 8 * i));
+    }
+
+    private byte[] termAt(int entry) {
+        byte[] term = new byte[buf.getShort(entry + 16)];
+        buf.get(entry + 18, term);
+        return term;
+    }
+
+    private PostingList postingsAt(int entry) {
+        int dfAt = entry + 18 + buf.getShort(entry + 16);
+        return new Mapped(buf, dfAt + 4, buf.getInt(dfAt));
+    }
+
+    private record Mapped(ByteBuffer buf, int base, int size) implements PostingList {
+        @Override
+        public int ord(int i) { return buf.getInt(base + 8 * i); }
+
+        @Override
+        public int tf(int i) { return buf.getInt(base + 8 * i + 4); }
+    }
+}
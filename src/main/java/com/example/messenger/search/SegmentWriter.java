@@ -0,0 +1,107 @@
+package com.example.messenger.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streams one immutable segment file. All documents are added first, then the keys in ascending order.
+ * Layout (big-endian):
+ * <pre>
+ * header   int magic, int version, int docCount, int termCount, long reserved, long termIndexOffset
+ * docs     docCount x (long idMsb, long idLsb, long createdAtMicros)
+ * entries  per key: long convMsb, long convLsb, short termLength, term bytes, int df, df x (int ord, int tf)
+ * index    termCount x long entry offset
+ * </pre>
+ * The file is written under a temporary name and renamed into place by {@link #finish}.
+ */
+final class SegmentWriter implements AutoCloseable {
+    static final int MAGIC = 0x4d534731; // "MSG1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int DOC_BYTES = 24;
+
+    private final Path tmp;
+    private final Path target;
+    private final DataOutputStream out;
+    private long position;
+    private int docCount;
+    private int termCount;
+    private long[] entryOffsets = new long[1024];
+    private TermKey lastKey;
+
+    SegmentWriter(Path target) throws IOException {
+        this.target = target;
+        this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+        out.write(new byte[HEADER_BYTES]);
+        position = HEADER_BYTES;
+    }
+
+    void addDoc(long idMsb, long idLsb, long createdAtMicros) throws IOException {
+        if (termCount > 0) throw new IllegalStateException("documents must precede keys");
+        out.writeLong(idMsb);
+        out.writeLong(idLsb);
+        out.writeLong(createdAtMicros);
+        position += DOC_BYTES;
+        docCount++;
+    }
+
+    /** Appends {@code key}'s postings, with every ordinal shifted by {@code ordBase}. Keys must ascend. */
+    void addKey(TermKey key, PostingList postings, int ordBase) throws IOException {
+        addKey(key, new PostingList[] {postings}, new int[] {ordBase});
+    }
+
+    /** Appends the concatenation of several posting lists for one key; lists must be in ascending ordinal order. */
+    void addKey(TermKey key, PostingList[] lists, int[] ordBases) throws IOException {
+        if (lastKey != null && lastKey.compareTo(key) >= 0) throw new IllegalStateException("keys must be ascending");
+        lastKey = key;
+        if (termCount == entryOffsets.length) entryOffsets = Arrays.copyOf(entryOffsets, termCount * 2);
+        entryOffsets[termCount++] = position;
+        int df = 0;
+        for (PostingList list : lists) df += list.size();
+        out.writeLong(key.msb);
+        out.writeLong(key.lsb);
+        out.writeShort(key.term.length);
+        out.write(key.term);
+        out.writeInt(df);
+        for (int l = 0; l < lists.length; l++) {
+            PostingList list = lists[l];
+            for (int i = 0; i < list.size(); i++) {
+                out.writeInt(list.ord(i) + ordBases[l]);
+                out.writeInt(list.tf(i));
+            }
+        }
+        position += 16 + 2 + key.term.length + 4 + 8L * df;
+        if (position > Integer.MAX_VALUE - 8L * termCount) throw new IOException("segment exceeds 2 GiB");
+    }
+
+    /** Writes the key index and header, syncs, and atomically moves the segment to its final name. */
+    Path finish() throws IOException {
+        long termIndexOffset = position;
+        for (int i = 0; i < termCount; i++) out.writeLong(entryOffsets[i]);
+        out.close();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC).putInt(VERSION).putInt(docCount).putInt(termCount)
+                    .putLong(0).putLong(termIndexOffset)
+                    .flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        return Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        Files.deleteIfExists(tmp);
+    }
+}
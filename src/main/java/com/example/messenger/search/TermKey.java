@@ -0,0 +1,47 @@
+package com.example.messenger.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Index key: a term scoped to one conversation, so a search only ever reads postings of the caller's
+ * conversations. Ordered by conversation id (unsigned) and then by the term's UTF-8 bytes.
+ */
+final class TermKey implements Comparable<TermKey> {
+    final long msb;
+    final long lsb;
+    final byte[] term;
+
+    TermKey(long msb, long lsb, byte[] term) {
+        this.msb = msb;
+        this.lsb = lsb;
+        this.term = term;
+    }
+
+    static TermKey of(UUID conversationId, String term) {
+        return new TermKey(conversationId.getMostSignificantBits(), conversationId.getLeastSignificantBits(),
+                term.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int compare(long msb, long lsb, byte[] term, long otherMsb, long otherLsb, byte[] otherTerm) {
+        int c = Long.compareUnsigned(msb, otherMsb);
+        if (c == 0) c = Long.compareUnsigned(lsb, otherLsb);
+        return c != 0 ? c : Arrays.compareUnsigned(term, otherTerm);
+    }
+
+    @Override
+    public int compareTo(TermKey o) {
+        return compare(msb, lsb, term, o.msb, o.lsb, o.term);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TermKey k && msb == k.msb && lsb == k.lsb && Arrays.equals(term, k.term);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Long.hashCode(msb) + Long.hashCode(lsb)) + Arrays.hashCode(term);
+    }
+}
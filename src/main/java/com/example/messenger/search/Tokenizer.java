@@ -0,0 +1,31 @@
+package com.example.messenger.search;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/** Splits text into lower-cased, NFKC-normalized runs of letters and digits. Used for documents and queries alike. */
+public final class Tokenizer {
+    static final int MAX_TERM_LENGTH = 64;
+
+    private Tokenizer() {}
+
+    /** Term frequencies of {@code text}, in order of first occurrence. */
+    public static Map<String, Integer> terms(String text) {
+        Map<String, Integer> terms = new LinkedHashMap<>();
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); ) {
+            int cp = i < normalized.length() ? normalized.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(cp)) {
+                if (start < 0) start = i;
+            } else if (start >= 0) {
+                if (i - start <= MAX_TERM_LENGTH) terms.merge(normalized.substring(start, i), 1, Integer::sum);
+                start = -1;
+            }
+            i += i < normalized.length() ? Character.charCount(cp) : 1;
+        }
+        return terms;
+    }
+}
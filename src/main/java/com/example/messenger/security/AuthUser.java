@@ -0,0 +1,25 @@
+package com.example.messenger.security;
+
+import io.jsonwebtoken.Claims;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Authenticated caller built purely from verified token claims ({@code sub} is the user id), so resolving
+ * "who am I" never touches the database. Inject with {@code @AuthenticationPrincipal AuthUser me}.
+ */
+public record AuthUser(UUID id, String username) implements AuthenticatedPrincipal {
+    public static final List<GrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+    public static AuthUser from(Claims claims) {
+        return new AuthUser(UUID.fromString(claims.getSubject()), claims.get("username", String.class));
+    }
+
+    /** The user id, which is also what STOMP user destinations resolve against. */
+    @Override
+    public String getName() { return id.toString(); }
+}
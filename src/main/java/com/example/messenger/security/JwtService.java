@@ -1,23 +1,51 @@
-
 package com.example.messenger.security;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.security.Key;
 import java.time.Instant;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class JwtService {
     // 256-bit base64 secret for HS256. Replace in prod.
     private static final String SECRET_B64 = "bWVzc2VuZ2VyLXNlY3JldC1rZXktMzItYnl0ZXMtbG9uZy1iYXNlNjQ=";
-    private Key key() { return Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET_B64)); }
+
+    private final Key key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET_B64));
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(key).build();
+
+    // Claims of tokens that already passed verification, keyed by the token. Lookups take no lock; once the map
+    // outgrows max-entries, arbitrary entries are dropped, since a 15-minute token set turns over on its own.
+    private final int maxEntries;
+    private final Map<String, Verified> verified = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer verifyTimer;
+
+    private record Verified(Claims claims, long expiresAtMillis) {}
+
+    public JwtService(@Value("${messenger.jwt.cache.max-entries:10000}") int maxEntries, MeterRegistry registry) {
+        this.maxEntries = maxEntries;
+        this.hits = Counter.builder("messenger.jwt.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("messenger.jwt.cache.requests").tag("result", "miss").register(registry);
+        this.verifyTimer = Timer.builder("messenger.jwt.verify").register(registry);
+        Gauge.builder("messenger.jwt.cache.size", this, JwtService::cachedTokens).register(registry);
+    }
 
     public String generateAccessToken(UUID userId, String username) {
         Instant now = Instant.now();
@@ -26,7 +54,7 @@ public class JwtService {
                 .addClaims(Map.of("username", username, "typ", "access"))
                 .setIssuedAt(Date.from(now))
                 .setExpiration(Date.from(now.plusSeconds(900))) // 15m
-                .signWith(key(), SignatureAlgorithm.HS256)
+                .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
@@ -37,11 +65,43 @@ public class JwtService {
                 .addClaims(Map.of("username", username, "typ", "refresh"))
                 .setIssuedAt(Date.from(now))
                 .setExpiration(Date.from(now.plusSeconds(60L*60*24*7))) // 7d
-                .signWith(key(), SignatureAlgorithm.HS256)
+                .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    public io.jsonwebtoken.Claims parse(String token) {
-        return Jwts.parserBuilder().setSigningKey(key()).build().parseClaimsJws(token).getBody();
+    /** Verified claims of {@code token}; the returned instance may be shared between callers and must not be modified. */
+    public Claims parse(String token) {
+        if (maxEntries <= 0) return verify(token);
+        Verified v = verified.get(token);
+        // The parser accepts a token up to and including its exp instant; so does the cache.
+        if (v != null && System.currentTimeMillis() <= v.expiresAtMillis()) {
+            hits.increment();
+            return v.claims();
+        }
+        if (v != null) verified.remove(token, v);
+        misses.increment();
+        Claims claims = verify(token);
+        Date exp = claims.getExpiration();
+        if (exp != null) {
+            verified.put(token, new Verified(claims, exp.getTime()));
+            if (verified.size() > maxEntries) evict();
+        }
+        return claims;
+    }
+
+    public int cachedTokens() {
+        return verified.size();
+    }
+
+    private void evict() {
+        Iterator<String> it = verified.keySet().iterator();
+        for (int excess = verified.size() - maxEntries; excess > 0 && it.hasNext(); excess--) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private Claims verify(String token) {
+        return verifyTimer.record(() -> parser.parseClaimsJws(token).getBody());
     }
 }
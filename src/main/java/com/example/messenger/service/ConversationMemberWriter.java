@@ -0,0 +1,128 @@
+package com.example.messenger.service;
+
+import com.example.messenger.domain.Ids;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Bulk insertion of {@code conversation_members} rows. Member ids are consumed in chunks of
+ * {@code messenger.members.insert.chunk-size}, so memory stays bounded however long the input is; each chunk
+ * drops ids that are already members and is written with {@code COPY} on Postgres or one JDBC batch elsewhere.
+ * Also keeps {@code conversations.member_count} in step. Runs in the caller's transaction.
+ */
+@Component
+public class ConversationMemberWriter {
+    static final String INSERT_SQL =
+            "INSERT INTO conversation_members (id, conversation_id, user_id, joined_at, last_activity_at) VALUES (?, ?, ?, ?, ?)";
+    static final String COPY_SQL =
+            "COPY conversation_members (id, conversation_id, user_id, joined_at, last_activity_at) FROM STDIN";
+    static final String MEMBER_COUNT_SQL = "UPDATE conversations SET member_count = member_count + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+    private final boolean copy;
+
+    public ConversationMemberWriter(JdbcTemplate jdbcTemplate,
+                                    @Value("${messenger.members.insert.chunk-size:1000}") int chunkSize,
+                                    @Value("${messenger.members.insert.copy:true}") boolean copy) {
+        if (chunkSize < 1) throw new IllegalArgumentException("messenger.members.insert.chunk-size must be positive");
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkSize = chunkSize;
+        this.copy = copy;
+    }
+
+    /** Adds every user in {@code userIds} that is not yet a member; returns the number of rows inserted. */
+    public int insert(UUID conversationId, Iterator<UUID> userIds) {
+        return insert(conversationId, userIds, userId -> {});
+    }
+
+    /** Same, also handing each user actually inserted to {@code inserted} once its chunk is written. */
+    public int insert(UUID conversationId, Iterator<UUID> userIds, Consumer<UUID> inserted) {
+        int count = 0;
+        Set<UUID> chunk = new LinkedHashSet<>();
+        while (userIds.hasNext()) {
+            UUID userId = userIds.next();
+            if (userId == null) throw new IllegalArgumentException("member id must not be null");
+            chunk.add(userId);
+            if (chunk.size() == chunkSize) {
+                count += flush(conversationId, chunk, inserted);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) count += flush(conversationId, chunk, inserted);
+        if (count > 0) jdbcTemplate.update(MEMBER_COUNT_SQL, count, conversationId);
+        return count;
+    }
+
+    private int flush(UUID conversationId, Set<UUID> chunk, Consumer<UUID> inserted) {
+        // Earlier chunks are already written in this transaction, so this also catches repeats across chunks.
+        chunk.removeAll(existing(conversationId, chunk));
+        if (chunk.isEmpty()) return 0;
+        int written = write(conversationId, chunk);
+        chunk.forEach(inserted);
+        return written;
+    }
+
+    private int write(UUID conversationId, Set<UUID> chunk) {
+        OffsetDateTime joinedAt = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MICROS);
+        List<UUID> userIds = new ArrayList<>(chunk);
+        if (copy) {
+            Integer copied = jdbcTemplate.execute((ConnectionCallback<Integer>) con -> con.isWrapperFor(PGConnection.class)
+                    ? copy(con.unwrap(PGConnection.class), conversationId, userIds, joinedAt) : null);
+            if (copied != null) return copied;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, userIds, userIds.size(), (ps, userId) -> {
+            ps.setObject(1, Ids.next());
+            ps.setObject(2, conversationId);
+            ps.setObject(3, userId);
+            ps.setObject(4, joinedAt);
+            ps.setObject(5, joinedAt);
+        });
+        return userIds.size();
+    }
+
+    private List<UUID> existing(UUID conversationId, Set<UUID> userIds) {
+        String placeholders = String.join(",", Collections.nCopies(userIds.size(), "?"));
+        List<Object> args = new ArrayList<>(userIds.size() + 1);
+        args.add(conversationId);
+        args.addAll(userIds);
+        return jdbcTemplate.queryForList(
+                "SELECT user_id FROM conversation_members WHERE conversation_id = ? AND user_id IN (" + placeholders + ")",
+                UUID.class, args.toArray());
+    }
+
+    private static int copy(PGConnection con, UUID conversationId, List<UUID> userIds, OffsetDateTime joinedAt)
+            throws SQLException {
+        StringBuilder rows = new StringBuilder(userIds.size() * 128);
+        for (UUID userId : userIds) {
+            rows.append(Ids.next()).append('\t')
+                    .append(conversationId).append('\t')
+                    .append(userId).append('\t')
+                    .append(joinedAt).append('\t')
+                    .append(joinedAt).append('\n');
+        }
+        try {
+            return (int) con.getCopyAPI().copyIn(COPY_SQL, new StringReader(rows.toString()));
+        } catch (IOException e) {
+            throw new SQLException("COPY into conversation_members failed", e);
+        }
+    }
+}
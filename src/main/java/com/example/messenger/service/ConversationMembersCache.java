@@ -0,0 +1,89 @@
+package com.example.messenger.service;
+
+import com.example.messenger.domain.ConversationMember;
+import com.example.messenger.repo.ConversationMemberRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Member ids per conversation for server-side fan-out, so delivering a message does not query
+ * {@code conversation_members}. LRU-bounded; {@link ConversationService} invalidates on membership changes
+ * once they commit, on every node through the broker bridge. Entries also expire after
+ * {@code messenger.members.cache.ttl}, which bounds staleness should an invalidation be lost. The LRU map needs
+ * a lock even to read, so cached entries are mirrored in a {@link ConcurrentHashMap} that {@link #peek} reads
+ * without one, for hot paths that would rather skip an event than wait or query.
+ */
+@Component
+public class ConversationMembersCache {
+    private final ConversationMemberRepository memberRepository;
+    private final long ttlNanos;
+    private final Map<UUID, Entry> members;
+    // Same entries as members, written under its lock; read lock-free by peek.
+    private final Map<UUID, Entry> snapshot = new ConcurrentHashMap<>();
+    // Bumped on every invalidation so a load that raced with one is not cached.
+    private final AtomicLong generation = new AtomicLong();
+
+    private record Entry(List<UUID> members, long loadedAt) {}
+
+    public ConversationMembersCache(ConversationMemberRepository memberRepository,
+                                    @Value("${messenger.members.cache.max-conversations:10000}") int maxConversations,
+                                    @Value("${messenger.members.cache.ttl:5m}") Duration ttl) {
+        this.memberRepository = memberRepository;
+        this.ttlNanos = ttl.toNanos();
+        this.members = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                if (size() <= maxConversations) return false;
+                snapshot.remove(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    public List<UUID> members(UUID conversationId) {
+        synchronized (members) {
+            Entry cached = members.get(conversationId);
+            if (cached != null && System.nanoTime() - cached.loadedAt() < ttlNanos) return cached.members();
+        }
+        long seen = generation.get();
+        List<UUID> loaded = memberRepository.findByConversationId(conversationId).stream()
+                .map(ConversationMember::getUserId)
+                .toList();
+        synchronized (members) {
+            if (generation.get() == seen) {
+                Entry entry = new Entry(loaded, System.nanoTime());
+                members.put(conversationId, entry);
+                snapshot.put(conversationId, entry);
+            }
+        }
+        return loaded;
+    }
+
+    public void invalidate(UUID conversationId) {
+        synchronized (members) {
+            generation.incrementAndGet();
+            members.remove(conversationId);
+            snapshot.remove(conversationId);
+        }
+    }
+
+    /** The cached members, or null when they are not cached (or expired); never locks or queries. */
+    public List<UUID> peek(UUID conversationId) {
+        Entry cached = snapshot.get(conversationId);
+        return cached != null && System.nanoTime() - cached.loadedAt() < ttlNanos ? cached.members() : null;
+    }
+
+    public int size() {
+        synchronized (members) {
+            return members.size();
+        }
+    }
+}
@@ -6,44 +6,133 @@ import com.example.messenger.domain.Conversation;
 import com.example.messenger.domain.ConversationMember;
 import com.example.messenger.repo.ConversationMemberRepository;
 import com.example.messenger.repo.ConversationRepository;
+import com.example.messenger.ws.BrokerBridge;
+import com.example.messenger.ws.LocalDelivery;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
 @Service
 public class ConversationService {
+    private static final int INBOX_INVALIDATION_CHUNK = 1000;
+
     private final ConversationRepository conversationRepository;
     private final ConversationMemberRepository memberRepository;
+    private final MessageTailCache tailCache;
+    private final ConversationMembersCache membersCache;
+    private final ConversationMemberWriter memberWriter;
+    private final SyncService syncService;
+    private final BrokerBridge brokerBridge;
+    private final Counter created;
+    private final Counter deleted;
+    private final Counter membersAdded;
 
-    public ConversationService(ConversationRepository conversationRepository, ConversationMemberRepository memberRepository) {
+    public ConversationService(ConversationRepository conversationRepository, ConversationMemberRepository memberRepository,
+                               MessageTailCache tailCache, ConversationMembersCache membersCache,
+                               ConversationMemberWriter memberWriter, SyncService syncService, BrokerBridge brokerBridge, MeterRegistry registry) {
         this.conversationRepository = conversationRepository;
         this.memberRepository = memberRepository;
+        this.tailCache = tailCache;
+        this.membersCache = membersCache;
+        this.memberWriter = memberWriter;
+        this.syncService = syncService;
+        this.brokerBridge = brokerBridge;
+        this.created = Counter.builder("messenger.conversations.created").register(registry);
+        this.deleted = Counter.builder("messenger.conversations.deleted").register(registry);
+        this.membersAdded = Counter.builder("messenger.conversations.members.added").register(registry);
     }
 
     @Transactional
     public Conversation create(boolean direct, List<UUID> memberIds) {
         Conversation c = new Conversation();
         c.setDirect(direct);
-        conversationRepository.save(c);
-        for (UUID uid : memberIds) {
-            ConversationMember m = new ConversationMember();
-            m.setConversationId(c.getId());
-            m.setUserId(uid);
-            memberRepository.save(m);
-        }
+        // Flushed now: the member rows are written over JDBC and reference this row.
+        c = conversationRepository.saveAndFlush(c);
+        UUID conversationId = c.getId();
+        List<UUID> inserted = new ArrayList<>();
+        memberWriter.insert(conversationId, memberIds.iterator(), inserted::add);
+        invalidateMembers(conversationId);
+        invalidateInboxes(memberIds);
+        afterCommit(() -> inserted.forEach(userId -> syncService.recordMemberAdded(conversationId, userId)));
+        created.increment();
+        membersAdded.increment(inserted.size());
         return c;
     }
 
+    /**
+     * Adds {@code userIds} to an existing conversation on behalf of one of its members. The ids are consumed
+     * lazily, so callers can stream arbitrarily long lists; users that are already members are skipped.
+     */
+    @Transactional
+    public int addMembers(UUID conversationId, UUID actingUserId, Iterator<UUID> userIds) {
+        if (!memberRepository.existsByConversationIdAndUserId(conversationId, actingUserId)) {
+            throw new AccessDeniedException("not a member of conversation " + conversationId);
+        }
+        List<UUID> inserted = new ArrayList<>();
+        int added = memberWriter.insert(conversationId, userIds, inserted::add);
+        afterCommit(() -> inserted.forEach(userId -> syncService.recordMemberAdded(conversationId, userId)));
+        invalidateMembers(conversationId);
+        invalidateInboxes(inserted);
+        membersAdded.increment(added);
+        return added;
+    }
+
     public List<ConversationMember> listMemberships(UUID userId) {
         return memberRepository.findByUserId(userId);
     }
 
     @Transactional
     public void delete(UUID conversationId) {
+        List<UUID> members = membersCache.members(conversationId);
         memberRepository.deleteByConversationId(conversationId);
         conversationRepository.deleteById(conversationId);
+        tailCache.invalidate(conversationId);
+        invalidateMembers(conversationId);
+        invalidateInboxes(members);
+        afterCommit(() -> syncService.recordDeleted(conversationId, members));
+        deleted.increment();
+    }
+
+    /** Drops the conversation's cached members on every node once the change is visible to their reloads. */
+    private void invalidateMembers(UUID conversationId) {
+        afterCommit(() -> brokerBridge.publish(LocalDelivery.MEMBERS_DESTINATION, conversationId));
+    }
+
+    /**
+     * Drops the users' cached inboxes on every node once the change is committed, so a reload racing the
+     * transaction cannot cache what it saw before.
+     */
+    private void invalidateInboxes(List<UUID> userIds) {
+        if (userIds.isEmpty()) return;
+        afterCommit(() -> {
+            for (int from = 0; from < userIds.size(); from += INBOX_INVALIDATION_CHUNK) {
+                List<UUID> chunk = userIds.subList(from, Math.min(userIds.size(), from + INBOX_INVALIDATION_CHUNK));
+                brokerBridge.publish(LocalDelivery.INBOXES_DESTINATION, List.copyOf(chunk));
+            }
+        });
+    }
+
+    /** Runs {@code action} once the current transaction commits, or right away outside one. */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
 }
@@ -0,0 +1,258 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+import com.example.messenger.archive.MessageArchive;
+import com.example.messenger.domain.Message;
+import com.example.messenger.repo.ConversationMemberRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams a conversation's whole history as NDJSON, oldest first: the archived part in chunks, then the table
+ * through one forward-only cursor reading {@code messenger.export.fetch-size} rows at a time. Each row is
+ * written as soon as it is read, so heap use does not grow with the conversation, and a slow client simply
+ * holds the cursor back through the blocking socket write. To bound how long that can pin a connection, an
+ * export is cut off after {@code messenger.export.max-duration}; clients resume from the last line they got.
+ * Each user gets one export at a time and {@code messenger.export.per-user-per-hour} per hour; at most
+ * {@code messenger.export.max-concurrent} run at once across all users.
+ */
+@Slf4j
+@Service
+public class ExportService {
+    static final String EXPORT_SQL = "SELECT id, sender_id, content, created_at FROM messages"
+            + " WHERE conversation_id = ? AND created_at >= ? AND (created_at > ? OR id > ?) ORDER BY created_at, id";
+    private static final int ARCHIVE_CHUNK = 1000;
+    private static final int MAX_TRACKED_USERS = 10_000;
+
+    private final ConversationMemberRepository memberRepository;
+    private final MessageArchive archive;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate cursorJdbc;
+    private final TransactionTemplate readOnly;
+    private final Semaphore running;
+    private final int perUserPerHour;
+    private final Duration maxDuration;
+    private final Map<UUID, Quota> quotas = new ConcurrentHashMap<>();
+    private final Counter exported;
+    private final Counter cutOff;
+
+    /** One user's token bucket, refilled continuously; guarded by the map's compute. */
+    private static final class Quota {
+        double tokens;
+        long refilledAt;
+        boolean active;
+
+        Quota(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+    }
+
+    /**
+     * An admitted export, holding its user's slot and a node-wide permit until {@link #writeTo} finishes or
+     * {@link #release} is called, whichever comes first.
+     */
+    public interface Export {
+        void writeTo(OutputStream out) throws IOException;
+
+        /** Gives back the slot and permit; for requests that end without writing. Safe to call more than once. */
+        void release();
+    }
+
+    private final class Admitted implements Export {
+        private final UUID conversationId;
+        private final UUID userId;
+        private final MessageCursor from;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Admitted(UUID conversationId, UUID userId, MessageCursor from) {
+            this.conversationId = conversationId;
+            this.userId = userId;
+            this.from = from;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            if (released.get()) throw new IllegalStateException("export already released");
+            try {
+                write(conversationId, from, out);
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                running.release();
+                ExportService.this.release(userId);
+            }
+        }
+    }
+
+    public ExportService(ConversationMemberRepository memberRepository,
+                         MessageArchive archive,
+                         ObjectMapper objectMapper,
+                         JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${messenger.export.fetch-size:500}") int fetchSize,
+                         @Value("${messenger.export.max-concurrent:4}") int maxConcurrent,
+                         @Value("${messenger.export.per-user-per-hour:10}") int perUserPerHour,
+                         @Value("${messenger.export.max-duration:10m}") Duration maxDuration,
+                         MeterRegistry registry) {
+        this.memberRepository = memberRepository;
+        this.archive = archive;
+        this.objectMapper = objectMapper;
+        // Postgres only streams with a fetch size inside a transaction; otherwise it materializes the result.
+        this.cursorJdbc = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorJdbc.setFetchSize(fetchSize);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.running = new Semaphore(maxConcurrent);
+        this.perUserPerHour = perUserPerHour;
+        this.maxDuration = maxDuration;
+        this.exported = Counter.builder("messenger.export.messages").register(registry);
+        this.cutOff = Counter.builder("messenger.export.cut-off").register(registry);
+    }
+
+    /**
+     * Admits an export of {@code conversationId} for {@code userId}, starting after {@code from} if given.
+     * Throws {@link RateLimitedException} over the user's quota and {@link RejectedExecutionException} when the
+     * node is at its export limit. The caller must see that the export is written or released.
+     */
+    public Export open(UUID conversationId, UUID userId, MessageCursor from) {
+        if (!memberRepository.existsByConversationIdAndUserId(conversationId, userId)) {
+            throw new AccessDeniedException("not a member of conversation " + conversationId);
+        }
+        acquire(userId);
+        if (!running.tryAcquire()) {
+            release(userId);
+            throw new RejectedExecutionException("too many exports in progress");
+        }
+        return new Admitted(conversationId, userId, from);
+    }
+
+    private void write(UUID conversationId, MessageCursor from, OutputStream target) throws IOException {
+        long deadline = System.nanoTime() + maxDuration.toNanos();
+        OutputStream out = new BufferedOutputStream(target, 1 << 16);
+        MessageCursor position = from;
+        long count = 0;
+        try {
+            // Archived messages are all older than the table's, so the archive goes first.
+            if (position == null || archive.covers(conversationId, position)) {
+                List<Message> chunk;
+                do {
+                    chunk = archive.after(conversationId, position, ARCHIVE_CHUNK);
+                    for (Message m : chunk) {
+                        line(out, MessageResponse.of(m), deadline);
+                        count++;
+                    }
+                    if (!chunk.isEmpty()) position = MessageCursor.of(chunk.get(chunk.size() - 1));
+                } while (chunk.size() == ARCHIVE_CHUNK);
+            }
+            count += table(conversationId, position, out, deadline);
+        } catch (ExportCutOff e) {
+            cutOff.increment();
+            log.info("export of conversation {} cut off after {} messages", conversationId, count + e.written);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            exported.increment(count);
+        }
+        out.flush();
+    }
+
+    private long table(UUID conversationId, MessageCursor from, OutputStream out, long deadline) {
+        // Starts strictly before any message when there is no position, so the id tiebreak cannot skip one.
+        Instant at = from == null ? Instant.EPOCH.minusSeconds(1) : from.createdAt();
+        OffsetDateTime fromAt = at.atOffset(ZoneOffset.UTC);
+        UUID fromId = from == null ? new UUID(0, 0) : from.id();
+        long[] written = {0};
+        try {
+            readOnly.executeWithoutResult(status -> cursorJdbc.query(EXPORT_SQL, rs -> {
+                MessageResponse m = new MessageResponse(rs.getObject(1, UUID.class), conversationId,
+                        rs.getObject(2, UUID.class), rs.getString(3), rs.getObject(4, OffsetDateTime.class).toInstant());
+                try {
+                    line(out, m, deadline);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                written[0]++;
+            }, conversationId, fromAt, fromAt, fromId));
+        } catch (ExportCutOff e) {
+            e.written = written[0];
+            throw e;
+        }
+        return written[0];
+    }
+
+    private void line(OutputStream out, MessageResponse m, long deadline) throws IOException {
+        if (System.nanoTime() > deadline) throw new ExportCutOff();
+        out.write(objectMapper.writeValueAsBytes(m));
+        out.write('\n');
+    }
+
+    private void acquire(UUID userId) {
+        long now = System.nanoTime();
+        if (quotas.size() > MAX_TRACKED_USERS) {
+            quotas.values().removeIf(q -> !q.active && refill(q, now) >= perUserPerHour);
+        }
+        quotas.compute(userId, (id, q) -> {
+            if (q == null) q = new Quota(perUserPerHour, now);
+            if (q.active) throw new RateLimitedException("an export is already running", Duration.ofSeconds(30));
+            if (refill(q, now) < 1) {
+                long seconds = (long) Math.ceil((1 - q.tokens) * 3600 / perUserPerHour);
+                throw new RateLimitedException("export quota exceeded", Duration.ofSeconds(seconds));
+            }
+            q.tokens -= 1;
+            q.active = true;
+            return q;
+        });
+    }
+
+    private void release(UUID userId) {
+        quotas.computeIfPresent(userId, (id, q) -> {
+            q.active = false;
+            return q;
+        });
+    }
+
+    private double refill(Quota q, long now) {
+        q.tokens = Math.min(perUserPerHour, q.tokens + (now - q.refilledAt) / 3.6e12 * perUserPerHour);
+        q.refilledAt = now;
+        return q.tokens;
+    }
+
+    /** Thrown from inside the row loop to end an export that ran past its deadline. */
+    private static final class ExportCutOff extends RuntimeException {
+        long written;
+
+        ExportCutOff() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.InboxDtos.InboxEntry;
+import com.example.messenger.api.dto.InboxDtos.LastMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The first {@code messenger.inbox.cache.window} inbox entries of recently active users, newest activity first.
+ * Sends and reads are applied in place; anything the cached window cannot absorb (a conversation outside it,
+ * a membership change) drops the user's entry instead. A message that cannot be applied is still sitting in the
+ * write-behind buffers of {@link InboxService} and {@link UnreadCounterService} (on whichever node took it), so
+ * for {@code settle} afterwards the user's inbox is read from the database without being cached; otherwise the
+ * page loaded before those flushes would be served for a whole {@code ttl}. Entries also expire after
+ * {@code ttl} to bound the staleness of changes that are not applied incrementally.
+ */
+@Component
+public class InboxCache {
+    private final int window;
+    private final long ttlMillis;
+    private final long settleMillis;
+    private final Map<UUID, Inbox> inboxes;
+    private final Counter hits;
+    private final Counter misses;
+
+    // A miss leaves a loading placeholder; updates that hit it mark it stale so the racing load is not cached.
+    private static final class Inbox {
+        List<InboxEntry> entries = new ArrayList<>();
+        boolean complete; // the user has no conversations beyond these entries
+        long expiresAtMillis;
+        boolean loading = true;
+        boolean stale;
+        long heldUntilMillis; // loads are not cached before this
+    }
+
+    public InboxCache(@Value("${messenger.inbox.cache.window:20}") int window,
+                      @Value("${messenger.inbox.cache.max-users:10000}") int maxUsers,
+                      @Value("${messenger.inbox.cache.ttl:60s}") Duration ttl,
+                      @Value("${messenger.inbox.cache.settle:3s}") Duration settle,
+                      MeterRegistry registry) {
+        this.window = window;
+        this.ttlMillis = ttl.toMillis();
+        this.settleMillis = settle.toMillis();
+        this.inboxes = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Inbox> eldest) { return size() > maxUsers; }
+        };
+        this.hits = Counter.builder("messenger.inbox.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("messenger.inbox.cache.requests").tag("result", "miss").register(registry);
+        Gauge.builder("messenger.inbox.cache.users", this, InboxCache::size).register(registry);
+    }
+
+    public record Slice(List<InboxEntry> entries, boolean hasMore) {}
+
+    public int window() { return window; }
+
+    /**
+     * The cached first {@code limit} entries of {@code userId}'s inbox, or null on a miss, in which case the
+     * caller should load the first {@link #window()} entries and hand them to {@link #fill}.
+     */
+    public Slice read(UUID userId, int limit) {
+        if (limit > window) return null;
+        synchronized (inboxes) {
+            Inbox inbox = inboxes.get(userId);
+            if (inbox != null && !inbox.loading && System.currentTimeMillis() < inbox.expiresAtMillis) {
+                hits.increment();
+                int n = Math.min(limit, inbox.entries.size());
+                return new Slice(List.copyOf(inbox.entries.subList(0, n)), inbox.entries.size() > n || !inbox.complete);
+            }
+            if (inbox == null || !inbox.loading) {
+                Inbox placeholder = new Inbox();
+                if (inbox != null) placeholder.heldUntilMillis = inbox.heldUntilMillis;
+                inboxes.put(userId, placeholder);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches a load started after a {@link #read} miss, unless the inbox changed while it was running or a
+     * message it cannot have seen yet is still being written behind.
+     */
+    public void fill(UUID userId, List<InboxEntry> newestFirst, boolean complete) {
+        synchronized (inboxes) {
+            Inbox inbox = inboxes.get(userId);
+            if (inbox == null || !inbox.loading) return;
+            if (inbox.stale || System.currentTimeMillis() < inbox.heldUntilMillis) {
+                hold(userId, inbox.heldUntilMillis);
+                return;
+            }
+            inbox.entries = new ArrayList<>(newestFirst.subList(0, Math.min(window, newestFirst.size())));
+            inbox.complete = complete && newestFirst.size() <= window;
+            inbox.expiresAtMillis = System.currentTimeMillis() + ttlMillis;
+            inbox.loading = false;
+        }
+    }
+
+    /** Moves the conversation to the top of each member's cached inbox with {@code last} as its preview. */
+    public void onMessage(Collection<UUID> members, UUID conversationId, LastMessage last) {
+        synchronized (inboxes) {
+            for (UUID member : members) {
+                Inbox inbox = inboxes.get(member);
+                if (inbox == null) continue;
+                if (inbox.loading) {
+                    // The running load may predate this message, and so may the next until it is flushed.
+                    inbox.stale = true;
+                    inbox.heldUntilMillis = System.currentTimeMillis() + settleMillis;
+                    continue;
+                }
+                int at = indexOf(inbox.entries, conversationId);
+                if (at < 0) {
+                    // Only the database knows the conversation's summary; reload once the message has reached it.
+                    hold(member, System.currentTimeMillis() + settleMillis);
+                    continue;
+                }
+                InboxEntry e = inbox.entries.get(at);
+                if (e.lastActivityAt().isAfter(last.createdAt())) continue;
+                inbox.entries.remove(at);
+                int unread = member.equals(last.senderId()) ? e.unreadCount() : e.unreadCount() + 1;
+                inbox.entries.add(0, new InboxEntry(e.conversationId(), e.direct(), e.members(), last, unread,
+                        last.createdAt()));
+            }
+        }
+    }
+
+    public void onRead(UUID userId, UUID conversationId, int unreadCount) {
+        synchronized (inboxes) {
+            Inbox inbox = inboxes.get(userId);
+            if (inbox == null) return;
+            if (inbox.loading) {
+                inbox.stale = true;
+                return;
+            }
+            int at = indexOf(inbox.entries, conversationId);
+            if (at < 0) return;
+            InboxEntry e = inbox.entries.get(at);
+            inbox.entries.set(at, new InboxEntry(e.conversationId(), e.direct(), e.members(), e.lastMessage(),
+                    unreadCount, e.lastActivityAt()));
+        }
+    }
+
+    public void invalidate(UUID userId) {
+        synchronized (inboxes) {
+            Inbox inbox = inboxes.remove(userId);
+            if (inbox != null && System.currentTimeMillis() < inbox.heldUntilMillis) hold(userId, inbox.heldUntilMillis);
+        }
+    }
+
+    /** Drops every cached inbox, for when updates may have been missed. */
+    public void clear() {
+        synchronized (inboxes) {
+            inboxes.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (inboxes) {
+            return inboxes.size();
+        }
+    }
+
+    /** Replaces the user's entry with one that misses on every read and caches no load until {@code until}. */
+    private void hold(UUID userId, long until) {
+        Inbox held = new Inbox();
+        held.loading = false;
+        held.heldUntilMillis = until;
+        inboxes.put(userId, held);
+    }
+
+    private static int indexOf(List<InboxEntry> entries, UUID conversationId) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).conversationId().equals(conversationId)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.InboxDtos.InboxEntry;
+import com.example.messenger.api.dto.InboxDtos.InboxPage;
+import com.example.messenger.api.dto.InboxDtos.LastMessage;
+import com.example.messenger.api.dto.InboxDtos.MemberSummary;
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbox pages: a user's conversations by last activity, each with its last message preview, unread count and
+ * member summary, read in one query from columns denormalized onto {@code conversations} and
+ * {@code conversation_members}. Sends update those columns through a coalescing writer (one pair of
+ * {@code UPDATE}s per active conversation every {@code messenger.inbox.flush-interval}) and the cached first
+ * page of every member's inbox immediately.
+ */
+@Slf4j
+@Service
+public class InboxService {
+    static final int PREVIEW_LENGTH = 200;
+
+    // The member sample is a correlated, index-ordered LIMIT 3 per row, so large groups cost no more than small ones.
+    static final String PAGE_SQL = "SELECT cm.conversation_id, cm.unread_count, cm.last_activity_at, c.is_direct, c.member_count,"
+            + " c.last_message_id, c.last_message_sender_id, c.last_message_preview, c.last_message_at,"
+            + " ARRAY(SELECT o.user_id FROM conversation_members o WHERE o.conversation_id = cm.conversation_id"
+            + " AND o.user_id <> cm.user_id ORDER BY o.user_id LIMIT 3) AS member_sample"
+            + " FROM conversation_members cm JOIN conversations c ON c.id = cm.conversation_id"
+            + " WHERE cm.user_id = ?%s"
+            + " ORDER BY cm.last_activity_at DESC, cm.conversation_id DESC LIMIT ?";
+    // Same redundant-bound keyset form as MessageRepository.findPageBefore.
+    static final String BEFORE = " AND cm.last_activity_at <= ? AND (cm.last_activity_at < ? OR cm.conversation_id < ?)";
+    static final String LAST_MESSAGE_SQL = "UPDATE conversations SET last_message_id = ?, last_message_sender_id = ?,"
+            + " last_message_preview = ?, last_message_at = ? WHERE id = ? AND (last_message_at IS NULL OR last_message_at <= ?)";
+    static final String ACTIVITY_SQL =
+            "UPDATE conversation_members SET last_activity_at = ? WHERE conversation_id = ? AND last_activity_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InboxCache cache;
+    private final ConversationMembersCache membersCache;
+    private final Duration flushInterval;
+    // Newest unflushed message per conversation.
+    private final Map<UUID, LastMessage> pending = new ConcurrentHashMap<>();
+    private final Timer flushTimer;
+    private ScheduledExecutorService flusher;
+
+    public InboxService(JdbcTemplate jdbcTemplate, InboxCache cache, ConversationMembersCache membersCache,
+                        @Value("${messenger.inbox.flush-interval:1s}") Duration flushInterval,
+                        MeterRegistry registry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = cache;
+        this.membersCache = membersCache;
+        this.flushInterval = flushInterval;
+        this.flushTimer = Timer.builder("messenger.inbox.flush").register(registry);
+        Gauge.builder("messenger.inbox.pending", pending, Map::size).register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inbox-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) flusher.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * One page of {@code userId}'s inbox, most recently active first; pass {@code nextCursor} as {@code before}
+     * for the following page. Pages read from the database may trail sends by up to one flush interval.
+     */
+    public InboxPage page(UUID userId, String before, int limit) {
+        if (before == null) {
+            InboxCache.Slice cached = cache.read(userId, limit);
+            if (cached != null) return page(cached.entries(), cached.hasMore());
+            if (limit <= cache.window()) {
+                List<InboxEntry> rows = load(userId, null, cache.window() + 1);
+                boolean more = rows.size() > cache.window();
+                List<InboxEntry> window = more ? rows.subList(0, cache.window()) : rows;
+                cache.fill(userId, window, !more);
+                int n = Math.min(limit, window.size());
+                return page(window.subList(0, n), more || window.size() > n);
+            }
+        }
+        MessageCursor cursor = before == null ? null : MessageCursor.decode(before);
+        List<InboxEntry> rows = load(userId, cursor, limit + 1);
+        boolean more = rows.size() > limit;
+        return page(more ? rows.subList(0, limit) : rows, more);
+    }
+
+    /** A message persisted by this node: queued for the denormalized columns and applied to cached inboxes. */
+    public void record(MessageResponse m) {
+        LastMessage last = lastMessage(m);
+        pending.merge(m.conversationId(), last, (a, b) -> b.createdAt().isBefore(a.createdAt()) ? a : b);
+        cache.onMessage(membersCache.members(m.conversationId()), m.conversationId(), last);
+    }
+
+    /** A message persisted by another node, which also writes it through; only cached inboxes change here. */
+    public void apply(MessageResponse m) {
+        cache.onMessage(membersCache.members(m.conversationId()), m.conversationId(), lastMessage(m));
+    }
+
+    public void onRead(UUID userId, UUID conversationId, int unreadCount) {
+        cache.onRead(userId, conversationId, unreadCount);
+    }
+
+    /** Drops a cached inbox after a membership change the cache cannot apply in place. */
+    public void invalidate(UUID userId) {
+        cache.invalidate(userId);
+    }
+
+    /** Drops all cached inboxes after updates from other nodes may have been lost. */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public void flush() {
+        List<Map.Entry<UUID, LastMessage>> batch = new ArrayList<>();
+        for (UUID conversationId : pending.keySet()) {
+            LastMessage last = pending.remove(conversationId);
+            if (last != null) batch.add(Map.entry(conversationId, last));
+        }
+        if (batch.isEmpty()) return;
+        try {
+            flushTimer.record(() -> {
+                jdbcTemplate.batchUpdate(LAST_MESSAGE_SQL, batch, batch.size(), (ps, e) -> {
+                    LastMessage last = e.getValue();
+                    OffsetDateTime at = last.createdAt().atOffset(ZoneOffset.UTC);
+                    ps.setObject(1, last.id());
+                    ps.setObject(2, last.senderId());
+                    ps.setString(3, last.preview());
+                    ps.setObject(4, at);
+                    ps.setObject(5, e.getKey());
+                    ps.setObject(6, at);
+                });
+                jdbcTemplate.batchUpdate(ACTIVITY_SQL, batch, batch.size(), (ps, e) -> {
+                    OffsetDateTime at = e.getValue().createdAt().atOffset(ZoneOffset.UTC);
+                    ps.setObject(1, at);
+                    ps.setObject(2, e.getKey());
+                    ps.setObject(3, at);
+                });
+            });
+        } catch (RuntimeException e) {
+            // Both statements are guarded by timestamp, so replaying the batch later is harmless.
+            batch.forEach(entry -> pending.merge(entry.getKey(), entry.getValue(),
+                    (a, b) -> b.createdAt().isBefore(a.createdAt()) ? a : b));
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("inbox flush failed; will retry", e);
+        }
+    }
+
+    private List<InboxEntry> load(UUID userId, MessageCursor cursor, int limit) {
+        if (cursor == null) return jdbcTemplate.query(PAGE_SQL.formatted(""), InboxService::entry, userId, limit);
+        OffsetDateTime at = cursor.createdAt().atOffset(ZoneOffset.UTC);
+        return jdbcTemplate.query(PAGE_SQL.formatted(BEFORE), InboxService::entry, userId, at, at, cursor.id(), limit);
+    }
+
+    private static InboxPage page(List<InboxEntry> entries, boolean hasMore) {
+        String next = null;
+        if (hasMore && !entries.isEmpty()) {
+            InboxEntry last = entries.get(entries.size() - 1);
+            next = new MessageCursor(last.lastActivityAt(), last.conversationId()).encode();
+        }
+        return new InboxPage(List.copyOf(entries), next);
+    }
+
+    private static InboxEntry entry(ResultSet rs, int rowNum) throws SQLException {
+        UUID lastId = rs.getObject("last_message_id", UUID.class);
+        LastMessage last = lastId == null ? null : new LastMessage(lastId, rs.getObject("last_message_sender_id", UUID.class),
+                rs.getString("last_message_preview"), instant(rs, "last_message_at"));
+        List<UUID> sample = new ArrayList<>(3);
+        Array array = rs.getArray("member_sample");
+        if (array != null) {
+            for (Object id : (Object[]) array.getArray()) sample.add((UUID) id);
+        }
+        return new InboxEntry(rs.getObject("conversation_id", UUID.class), rs.getBoolean("is_direct"),
+                new MemberSummary(rs.getInt("member_count"), sample), last, rs.getInt("unread_count"),
+                instant(rs, "last_activity_at"));
+    }
+
+    private static Instant instant(ResultSet rs, String column) throws SQLException {
+        OffsetDateTime value = rs.getObject(column, OffsetDateTime.class);
+        return value == null ? null : value.toInstant();
+    }
+
+    private static LastMessage lastMessage(MessageResponse m) {
+        return new LastMessage(m.id(), m.senderId(), preview(m.content()), m.createdAt());
+    }
+
+    static String preview(String content) {
+        if (content.length() <= PREVIEW_LENGTH) return content;
+        int end = PREVIEW_LENGTH;
+        if (Character.isHighSurrogate(content.charAt(end - 1))) end--;
+        return content.substring(0, end);
+    }
+}
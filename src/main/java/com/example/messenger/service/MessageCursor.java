@@ -0,0 +1,60 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.MessageDtos;
+import com.example.messenger.domain.Message;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque keyset position in a conversation's history: {@code (created_at, id)} of a message.
+ * The id breaks ties between messages that share a timestamp, so every page boundary is exact.
+ */
+public record MessageCursor(Instant createdAt, UUID id) {
+    private static final int ENCODED_BYTES = Long.BYTES + Integer.BYTES + 2 * Long.BYTES;
+
+    public static MessageCursor of(Message m) {
+        return new MessageCursor(m.getCreatedAt(), m.getId());
+    }
+
+    public static MessageCursor of(MessageDtos.MessageResponse m) {
+        return new MessageCursor(m.createdAt(), m.id());
+    }
+
+    /**
+     * Orders positions the way the history queries do: by id alone when {@code byId}, otherwise by
+     * {@code (createdAt, id)}. Ids compare as unsigned bytes, matching Postgres' uuid ordering.
+     */
+    public int compareTo(MessageCursor other, boolean byId) {
+        if (!byId) {
+            int c = createdAt.compareTo(other.createdAt);
+            if (c != 0) return c;
+        }
+        int c = Long.compareUnsigned(id.getMostSignificantBits(), other.id.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(id.getLeastSignificantBits(), other.id.getLeastSignificantBits());
+    }
+
+    public String encode() {
+        ByteBuffer buf = ByteBuffer.allocate(ENCODED_BYTES)
+                .putLong(createdAt.getEpochSecond())
+                .putInt(createdAt.getNano())
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
+    }
+
+    public static MessageCursor decode(String token) {
+        try {
+            byte[] raw = Base64.getUrlDecoder().decode(token);
+            if (raw.length != ENCODED_BYTES) throw new IllegalArgumentException("invalid cursor");
+            ByteBuffer buf = ByteBuffer.wrap(raw);
+            Instant createdAt = Instant.ofEpochSecond(buf.getLong(), buf.getInt());
+            return new MessageCursor(createdAt, new UUID(buf.getLong(), buf.getLong()));
+        } catch (IllegalArgumentException | DateTimeException | ArithmeticException e) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+    }
+}
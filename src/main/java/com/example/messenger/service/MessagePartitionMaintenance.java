@@ -0,0 +1,182 @@
+package com.example.messenger.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the monthly partitions of {@code messages} (V10) ahead of the clock: on startup and every
+ * {@code messenger.messages.partitions.check-interval}, partitions up to {@code months-ahead} months out are
+ * created. With {@code retention-months} set, whole months older than that are detached with
+ * {@code DETACH PARTITION ... CONCURRENTLY}, which does not block reads or writes on the other partitions; the
+ * detached tables are left in place to be archived or dropped. Does nothing where {@code messages} is not
+ * partitioned (H2). Nodes take turns through an advisory lock.
+ */
+@Slf4j
+@Component
+public class MessagePartitionMaintenance {
+    static final Pattern MONTHLY = Pattern.compile("messages_y(\\d{4})m(\\d{2})");
+    private static final long LOCK_KEY = 0x6d65737361676573L;
+    private static final String PARTITIONED_SQL =
+            "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('messages'))";
+    // Upper bound of the partition covering the latest range; Postgres parses its own bound literal back.
+    private static final String HORIZON_SQL =
+            "SELECT max(substring(pg_get_expr(c.relpartbound, c.oid) FROM 'TO \\(''([^'']+)''\\)')::timestamptz)"
+                    + " FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'messages'::regclass";
+    private static final String PARTITIONS_SQL =
+            "SELECT c.relname, i.inhdetachpending FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid"
+                    + " WHERE i.inhparent = 'messages'::regclass";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final Duration checkInterval;
+    private ScheduledExecutorService scheduler;
+
+    public MessagePartitionMaintenance(JdbcTemplate jdbcTemplate,
+                                       @Value("${messenger.messages.partitions.months-ahead:3}") int monthsAhead,
+                                       @Value("${messenger.messages.partitions.retention-months:0}") int retentionMonths,
+                                       @Value("${messenger.messages.partitions.check-interval:6h}") Duration checkInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.checkInterval = checkInterval;
+    }
+
+    @PostConstruct
+    public void start() {
+        // The first run is synchronous so a node that was down for months has partitions before taking writes.
+        if (!run()) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-partitions");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = checkInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::runQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    /** One maintenance pass; returns false when {@code messages} is not partitioned. */
+    public boolean run() {
+        Boolean partitioned = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            if (!con.isWrapperFor(PGConnection.class)) return false;
+            try (Statement st = con.createStatement()) {
+                if (!queryBoolean(st, PARTITIONED_SQL)) return false;
+                // Session-level lock on this connection; autocommit, since DETACH CONCURRENTLY refuses transactions.
+                if (!queryBoolean(st, "SELECT pg_try_advisory_lock(" + LOCK_KEY + ")")) return true;
+                try {
+                    YearMonth now = YearMonth.now(ZoneOffset.UTC);
+                    createAhead(st, now.plusMonths(monthsAhead));
+                    if (retentionMonths > 0) detachBefore(st, now.minusMonths(retentionMonths));
+                } finally {
+                    st.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+                }
+                return true;
+            }
+        });
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    private void runQuietly() {
+        try {
+            run();
+        } catch (DataAccessException e) {
+            log.warn("messages partition maintenance failed; will retry", e);
+        }
+    }
+
+    private static void createAhead(Statement st, YearMonth last) throws SQLException {
+        OffsetDateTime horizon;
+        try (ResultSet rs = st.executeQuery(HORIZON_SQL)) {
+            rs.next();
+            horizon = rs.getObject(1, OffsetDateTime.class);
+        }
+        for (YearMonth month = firstMissing(horizon, YearMonth.now(ZoneOffset.UTC)); !month.isAfter(last);
+             month = month.plusMonths(1)) {
+            st.execute(createSql(month));
+            log.info("created messages partition {}", name(month));
+        }
+    }
+
+    private static void detachBefore(Statement st, YearMonth cutoff) throws SQLException {
+        List<String> detach = new ArrayList<>();
+        List<String> pending = new ArrayList<>();
+        try (ResultSet rs = st.executeQuery(PARTITIONS_SQL)) {
+            while (rs.next()) {
+                // The legacy partition (V10) has no month of its own and is never detached automatically.
+                YearMonth month = month(rs.getString(1));
+                if (month == null || !month.isBefore(cutoff)) continue;
+                (rs.getBoolean(2) ? pending : detach).add(rs.getString(1));
+            }
+        }
+        // A concurrent detach interrupted half-way leaves the partition pending until it is finalized.
+        for (String table : pending) {
+            st.execute("ALTER TABLE messages DETACH PARTITION " + table + " FINALIZE");
+            log.info("finalized detach of messages partition {}", table);
+        }
+        for (String table : detach) {
+            st.execute("ALTER TABLE messages DETACH PARTITION " + table + " CONCURRENTLY");
+            log.info("detached messages partition {}", table);
+        }
+    }
+
+    private static boolean queryBoolean(Statement st, String sql) throws SQLException {
+        try (ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    /**
+     * The first month without a partition, given the upper bound of the latest one ({@code null} when there is
+     * none yet, in which case partitions start at {@code now}).
+     */
+    public static YearMonth firstMissing(OffsetDateTime horizon, YearMonth now) {
+        // Bounds are exclusive, so the month the horizon falls in is the first one not covered.
+        return horizon == null ? now : YearMonth.from(horizon.withOffsetSameInstant(ZoneOffset.UTC));
+    }
+
+    public static String createSql(YearMonth month) {
+        return "CREATE TABLE IF NOT EXISTS %s PARTITION OF messages FOR VALUES FROM ('%s') TO ('%s')"
+                .formatted(name(month), start(month), start(month.plusMonths(1)));
+    }
+
+    public static String name(YearMonth month) {
+        return "messages_y%04dm%02d".formatted(month.getYear(), month.getMonthValue());
+    }
+
+    /** The month a partition created here covers; null for any other table. */
+    public static YearMonth month(String table) {
+        Matcher m = MONTHLY.matcher(table);
+        return m.matches() ? YearMonth.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))) : null;
+    }
+
+    private static String start(YearMonth month) {
+        return "%04d-%02d-01 00:00:00+00".formatted(month.getYear(), month.getMonthValue());
+    }
+}
@@ -1,29 +1,224 @@
-
 package com.example.messenger.service;
 
+import com.example.messenger.api.dto.MessageDtos;
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+import com.example.messenger.archive.MessageArchive;
 import com.example.messenger.domain.Message;
 import com.example.messenger.repo.MessageRepository;
+import com.example.messenger.search.SearchIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
 @Service
 public class MessageService {
+    // First history window; about a month, so a full page usually comes from one partition.
+    static final Duration HISTORY_WINDOW = Duration.ofDays(32);
+    // History latency is tagged with the smallest of these at or above the requested limit.
+    static final int[] PAGE_SIZE_BUCKETS = {20, 50, 100, 200};
+
     private final MessageRepository messageRepository;
+    private final MessageTailCache tailCache;
+    private final MessageWriteBatcher writeBatcher;
+    private final UnreadCounterService unreadCounters;
+    private final InboxService inboxService;
+    private final SearchIndex searchIndex;
+    private final MessageArchive archive;
+    private final SyncService syncService;
+    private final SendDeduplicator deduplicator;
+    private final boolean orderById;
+    private final Timer persistTimer;
+    private final Counter sent;
+    private final Timer[] historyTimers;
 
-    public MessageService(MessageRepository messageRepository) { this.messageRepository = messageRepository; }
+    public MessageService(MessageRepository messageRepository,
+                          MessageTailCache tailCache,
+                          MessageWriteBatcher writeBatcher,
+                          UnreadCounterService unreadCounters,
+                          InboxService inboxService,
+                          SearchIndex searchIndex,
+                          MessageArchive archive,
+                          SyncService syncService,
+                          SendDeduplicator deduplicator,
+                          @Value("${messenger.history.order-by-id:false}") boolean orderById,
+                          MeterRegistry registry) {
+        this.messageRepository = messageRepository;
+        this.tailCache = tailCache;
+        this.writeBatcher = writeBatcher;
+        this.unreadCounters = unreadCounters;
+        this.inboxService = inboxService;
+        this.searchIndex = searchIndex;
+        this.archive = archive;
+        this.syncService = syncService;
+        this.deduplicator = deduplicator;
+        this.orderById = orderById;
+        this.persistTimer = Timer.builder("messenger.send.persist").register(registry);
+        this.sent = Counter.builder("messenger.messages.sent").register(registry);
+        this.historyTimers = new Timer[PAGE_SIZE_BUCKETS.length];
+        for (int i = 0; i < PAGE_SIZE_BUCKETS.length; i++) {
+            historyTimers[i] = Timer.builder("messenger.history.read")
+                    .tag("page-size", String.valueOf(PAGE_SIZE_BUCKETS[i])).register(registry);
+        }
+    }
+
+    /** Outcome of {@link #send(UUID, UUID, String, UUID)}; a duplicate was neither written nor should be published again. */
+    public record Sent(MessageResponse message, boolean duplicate) {}
 
     public Message send(UUID conversationId, UUID senderId, String content) {
+        return persist(conversationId, senderId, content, null);
+    }
+
+    /**
+     * Sends once per {@code clientMessageId}: a retry of a send that already went through returns the original
+     * message, from {@link SendDeduplicator}'s memory or, failing that, after losing on its unique index.
+     * Without a client id this is a plain {@link #send(UUID, UUID, String)}.
+     */
+    public Sent send(UUID conversationId, UUID senderId, String content, UUID clientMessageId) {
+        if (clientMessageId == null) {
+            return new Sent(MessageResponse.of(persist(conversationId, senderId, content, null)), false);
+        }
+        MessageResponse earlier = deduplicator.recent(conversationId, senderId, clientMessageId);
+        if (earlier != null) return new Sent(earlier, true);
+        try {
+            MessageResponse response = MessageResponse.of(persist(conversationId, senderId, content, clientMessageId));
+            deduplicator.remember(clientMessageId, response);
+            return new Sent(response, false);
+        } catch (DuplicateKeyException e) {
+            MessageResponse original = deduplicator.stored(conversationId, senderId, clientMessageId);
+            if (original == null) throw e;
+            return new Sent(original, true);
+        }
+    }
+
+    private Message persist(UUID conversationId, UUID senderId, String content, UUID clientMessageId) {
         Message m = new Message();
         m.setConversationId(conversationId);
         m.setSenderId(senderId);
         m.setContent(content);
-        return messageRepository.save(m);
+        Message saved = persistTimer.record(() -> insert(m, clientMessageId));
+        sent.increment();
+        MessageResponse response = MessageResponse.of(saved);
+        tailCache.append(response);
+        unreadCounters.record(saved);
+        inboxService.record(response);
+        searchIndex.add(saved.getId(), conversationId, content, saved.getCreatedAt());
+        syncService.recordMessage(saved);
+        return saved;
+    }
+
+    private Message insert(Message m, UUID clientMessageId) {
+        if (writeBatcher.isEnabled()) {
+            return clientMessageId == null ? writeBatcher.write(m) : writeBatcher.write(m, clientMessageId);
+        }
+        return clientMessageId == null ? messageRepository.save(m) : deduplicator.save(m, clientMessageId);
+    }
+
+    /**
+     * Keyset page of a conversation's history, newest first. At most one of {@code before}/{@code after}
+     * may be given; without either the newest page is returned. Pages inside the cached tail of a hot
+     * conversation are served from {@link MessageTailCache}.
+     */
+    public MessageDtos.MessagePage history(UUID conversationId, String before, String after, int limit) {
+        return historyTimers[pageSizeBucket(limit)].record(() -> page(conversationId, before, after, limit));
+    }
+
+    private MessageDtos.MessagePage page(UUID conversationId, String before, String after, int limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("before and after are mutually exclusive");
+        }
+        if (after != null) {
+            MessageCursor cursor = MessageCursor.decode(after);
+            List<Message> rows = new ArrayList<>(limit + 1);
+            if (archive.covers(conversationId, cursor)) rows.addAll(archive.after(conversationId, cursor, limit + 1));
+            if (rows.size() <= limit) {
+                MessageCursor from = rows.isEmpty() ? cursor : MessageCursor.of(rows.get(rows.size() - 1));
+                PageRequest page = PageRequest.of(0, limit + 1 - rows.size());
+                rows.addAll(orderById
+                        ? messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(conversationId, from.id(), page)
+                        : messageRepository.findPageAfter(conversationId, from.createdAt(), from.id(), page));
+            }
+            boolean hasNewer = rows.size() > limit;
+            List<MessageResponse> items = new ArrayList<>(responses(hasNewer ? rows.subList(0, limit) : rows));
+            Collections.reverse(items);
+            // Rows older than the cursor always exist (the cursor row itself), so the older link is always set.
+            String next = items.isEmpty() ? after : MessageCursor.of(items.get(items.size() - 1)).encode();
+            String prev = items.isEmpty() ? after : MessageCursor.of(items.get(0)).encode();
+            return new MessageDtos.MessagePage(items, next, prev);
+        }
+        MessageCursor cursor = before == null ? null : MessageCursor.decode(before);
+        if (limit <= tailCache.tailSize()) {
+            MessageTailCache.Slice cached = tailCache.read(conversationId, cursor, limit);
+            if (cached != null) return olderPage(cached.messages(), cached.hasOlder(), before);
+            if (cursor == null) {
+                int window = tailCache.window();
+                List<MessageResponse> rows = responses(older(conversationId, null, window + 1));
+                tailCache.fill(conversationId, rows.subList(0, Math.min(window, rows.size())), rows.size() <= window);
+                boolean hasOlder = rows.size() > limit;
+                return olderPage(hasOlder ? rows.subList(0, limit) : rows, hasOlder, null);
+            }
+        }
+        List<Message> rows = older(conversationId, cursor, limit + 1);
+        boolean hasOlder = rows.size() > limit;
+        return olderPage(responses(hasOlder ? rows.subList(0, limit) : rows), hasOlder, before);
+    }
+
+    /**
+     * Up to {@code n} messages older than {@code cursor} (or the newest ones), newest first. With the default
+     * ordering the read first looks at one {@link #HISTORY_WINDOW} before the starting point, which fills a busy
+     * conversation's page from one or two partitions; whatever is still missing comes from one unbounded read
+     * below that window, so a quiet or empty conversation costs two queries. The id-only ordering has no created_at bound to prune by. Once the table runs out, the read continues into
+     * {@link MessageArchive}; cursors inside the archived range skip the table altogether.
+     */
+    private List<Message> older(UUID conversationId, MessageCursor cursor, int n) {
+        if (cursor != null && archive.covers(conversationId, cursor)) return archive.before(conversationId, cursor, n);
+        List<Message> rows = new ArrayList<>(n);
+        if (orderById) {
+            PageRequest page = PageRequest.of(0, n);
+            rows.addAll(cursor == null
+                    ? messageRepository.findByConversationIdOrderByIdDesc(conversationId, page)
+                    : messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(conversationId, cursor.id(), page));
+        } else {
+            Instant from = (cursor == null ? Instant.now() : cursor.createdAt()).minus(HISTORY_WINDOW);
+            PageRequest page = PageRequest.of(0, n);
+            rows.addAll(cursor == null
+                    ? messageRepository.findNewest(conversationId, from, page)
+                    : messageRepository.findPageBefore(conversationId, from, cursor.createdAt(), cursor.id(), page));
+            if (rows.size() < n) {
+                rows.addAll(messageRepository.findPageUntil(conversationId, from, PageRequest.of(0, n - rows.size())));
+            }
+        }
+        if (rows.size() < n) {
+            MessageCursor last = rows.isEmpty() ? cursor : MessageCursor.of(rows.get(rows.size() - 1));
+            rows.addAll(archive.before(conversationId, last, n - rows.size()));
+        }
+        return rows;
+    }
+
+    static int pageSizeBucket(int limit) {
+        for (int i = 0; i < PAGE_SIZE_BUCKETS.length - 1; i++) {
+            if (limit <= PAGE_SIZE_BUCKETS[i]) return i;
+        }
+        return PAGE_SIZE_BUCKETS.length - 1;
+    }
+
+    private static MessageDtos.MessagePage olderPage(List<MessageResponse> items, boolean hasOlder, String before) {
+        String next = hasOlder ? MessageCursor.of(items.get(items.size() - 1)).encode() : null;
+        String prev = items.isEmpty() ? before : MessageCursor.of(items.get(0)).encode();
+        return new MessageDtos.MessagePage(items, next, prev);
     }
 
-    public List<Message> history(UUID conversationId, int limit) {
-        return messageRepository.findByConversationIdOrderByCreatedAtDesc(conversationId, PageRequest.of(0, limit));
+    private static List<MessageResponse> responses(List<Message> rows) {
+        return rows.stream().map(MessageResponse::of).toList();
     }
 }
@@ -0,0 +1,232 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the newest messages of recently read conversations in memory so the common "open a chat" read
+ * skips Postgres. Each conversation holds a sorted ring of its newest {@code tail-size + 1} messages (the
+ * extra slot answers "is there an older page?"). Conversations are evicted least-recently-used once either
+ * {@code max-conversations} or {@code max-bytes} is exceeded.
+ * <p>
+ * A tail is always a contiguous suffix of the conversation: it is created empty on a miss, receives
+ * write-through appends while the loader queries the database, and then merges the loaded rows in, so a
+ * message committed concurrently with the load cannot be lost.
+ */
+@Component
+public class MessageTailCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final int tailSize;
+    private final int maxConversations;
+    private final long maxBytes;
+    private final boolean orderById;
+    private final LinkedHashMap<UUID, Tail> tails = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLong bytes = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public record Slice(List<MessageResponse> messages, boolean hasOlder) {}
+
+    public MessageTailCache(@Value("${messenger.history.cache.tail-size:50}") int tailSize,
+                            @Value("${messenger.history.cache.max-conversations:10000}") int maxConversations,
+                            @Value("${messenger.history.cache.max-bytes:64MB}") DataSize maxBytes,
+                            @Value("${messenger.history.order-by-id:false}") boolean orderById,
+                            MeterRegistry registry) {
+        this.tailSize = tailSize;
+        this.maxConversations = maxConversations;
+        this.maxBytes = maxBytes.toBytes();
+        this.orderById = orderById;
+        this.hits = Counter.builder("messenger.history.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("messenger.history.cache.requests").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("messenger.history.cache.evictions").register(registry);
+        Gauge.builder("messenger.history.cache.conversations", this, MessageTailCache::conversations).register(registry);
+        Gauge.builder("messenger.history.cache.bytes", bytes, AtomicLong::get).baseUnit("bytes").register(registry);
+    }
+
+    /** Largest page that can be served from the cache. */
+    public int tailSize() { return tailSize; }
+
+    /** Number of newest rows a loader should pass to {@link #fill}; one more than that tells whether more exist. */
+    public int window() { return tailSize + 1; }
+
+    /**
+     * Serves the {@code limit} messages older than {@code before} (or the newest ones), newest first,
+     * or returns {@code null} when the cached tail cannot answer and the caller must query the database.
+     */
+    public Slice read(UUID conversationId, MessageCursor before, int limit) {
+        Tail tail;
+        synchronized (this) {
+            tail = tails.get(conversationId);
+            if (tail == null && before == null && tailSize > 0) {
+                tail = new Tail();
+                tails.put(conversationId, tail);
+                evictOverflow();
+            }
+        }
+        Slice slice = tail == null || limit > tailSize ? null : tail.read(before, limit);
+        (slice == null ? misses : hits).increment();
+        return slice;
+    }
+
+    /** Installs rows loaded after a {@link #read} miss; {@code complete} means no older rows exist. */
+    public void fill(UUID conversationId, List<MessageResponse> newestFirst, boolean complete) {
+        Tail tail;
+        synchronized (this) {
+            tail = tails.get(conversationId);
+        }
+        if (tail != null) account(tail.fill(newestFirst, complete));
+    }
+
+    /** Write-through of a durable message; ignored for conversations that are not cached. */
+    public void append(MessageResponse m) {
+        Tail tail;
+        synchronized (this) {
+            tail = tails.get(m.conversationId());
+        }
+        if (tail != null) account(tail.insert(m));
+    }
+
+    public void invalidate(UUID conversationId) {
+        Tail tail;
+        synchronized (this) {
+            tail = tails.remove(conversationId);
+        }
+        if (tail != null) bytes.addAndGet(-tail.evict());
+    }
+
+    /** Drops every tail, for when appends may have been missed and any tail may have a hole. */
+    public void clear() {
+        List<Tail> dropped;
+        synchronized (this) {
+            dropped = new ArrayList<>(tails.values());
+            tails.clear();
+        }
+        for (Tail tail : dropped) bytes.addAndGet(-tail.evict());
+    }
+
+    public synchronized int conversations() { return tails.size(); }
+
+    private void account(long delta) {
+        if (delta == 0) return;
+        if (bytes.addAndGet(delta) > maxBytes) {
+            synchronized (this) {
+                evictOverflow();
+            }
+        }
+    }
+
+    // Caller holds the map lock.
+    private void evictOverflow() {
+        Iterator<Map.Entry<UUID, Tail>> it = tails.entrySet().iterator();
+        while (it.hasNext() && (tails.size() > maxConversations || bytes.get() > maxBytes)) {
+            Tail eldest = it.next().getValue();
+            it.remove();
+            bytes.addAndGet(-eldest.evict());
+            evictions.increment();
+        }
+    }
+
+    private int compare(MessageResponse a, MessageResponse b) {
+        return MessageCursor.of(a).compareTo(MessageCursor.of(b), orderById);
+    }
+
+    private static long weight(MessageResponse m) {
+        return ENTRY_OVERHEAD_BYTES + 2L * m.content().length();
+    }
+
+    private final class Tail {
+        private final MessageResponse[] ring = new MessageResponse[window()];
+        private int head;
+        private int size;
+        private boolean loaded;
+        private boolean complete;
+        private boolean evicted;
+        private long weight;
+
+        private MessageResponse at(int i) { return ring[(head + i) % ring.length]; }
+
+        private void set(int i, MessageResponse m) { ring[(head + i) % ring.length] = m; }
+
+        synchronized Slice read(MessageCursor before, int limit) {
+            if (!loaded) return null;
+            int end = size;
+            while (before != null && end > 0 && MessageCursor.of(at(end - 1)).compareTo(before, orderById) >= 0) end--;
+            boolean hasOlder = end > limit;
+            if (!hasOlder && !complete) return null;
+            int from = hasOlder ? end - limit : 0;
+            List<MessageResponse> out = new ArrayList<>(end - from);
+            for (int i = end - 1; i >= from; i--) out.add(at(i));
+            return new Slice(out, hasOlder);
+        }
+
+        synchronized long insert(MessageResponse m) {
+            if (evicted) return 0;
+            int pos = size;
+            while (pos > 0 && compare(at(pos - 1), m) > 0) pos--;
+            if (pos > 0 && at(pos - 1).id().equals(m.id())) return 0;
+            // Older than a partial tail: rows in between may be missing, so it cannot be kept.
+            if (pos == 0 && size > 0 && loaded && !complete) return 0;
+            long delta = weight(m);
+            if (size == ring.length) {
+                if (pos == 0) return 0;
+                delta -= weight(at(0));
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                pos--;
+                complete = false;
+            }
+            for (int i = size; i > pos; i--) set(i, at(i - 1));
+            set(pos, m);
+            size++;
+            weight += delta;
+            return delta;
+        }
+
+        synchronized long fill(List<MessageResponse> newestFirst, boolean completeLoad) {
+            if (evicted) return 0;
+            List<MessageResponse> merged = new ArrayList<>(size + newestFirst.size());
+            for (int i = 0; i < size; i++) merged.add(at(i));
+            for (int i = newestFirst.size() - 1; i >= 0; i--) merged.add(newestFirst.get(i));
+            merged.sort(MessageTailCache.this::compare);
+            List<MessageResponse> unique = new ArrayList<>(merged.size());
+            for (MessageResponse m : merged) {
+                if (unique.isEmpty() || !unique.get(unique.size() - 1).id().equals(m.id())) unique.add(m);
+            }
+            int from = Math.max(0, unique.size() - ring.length);
+            long before = weight;
+            Arrays.fill(ring, null);
+            head = 0;
+            size = 0;
+            weight = 0;
+            for (int i = from; i < unique.size(); i++) {
+                ring[size++] = unique.get(i);
+                weight += weight(unique.get(i));
+            }
+            complete = completeLoad && from == 0;
+            loaded = true;
+            return weight - before;
+        }
+
+        synchronized long evict() {
+            evicted = true;
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.messenger.service;
+
+import com.example.messenger.domain.Message;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional group-commit path for {@link MessageService#send}: callers enqueue their message and block until
+ * a single writer thread has inserted it as part of a JDBC batch and committed. A batch is flushed once it
+ * holds {@code max-size} messages or {@code max-delay} after its first message arrived, whichever is first.
+ * With {@code reWriteBatchedInserts=true} on the Postgres URL each batch becomes one multi-row INSERT.
+ */
+@Slf4j
+@Component
+public class MessageWriteBatcher {
+    static final String INSERT_SQL =
+            "INSERT INTO messages (id, conversation_id, sender_id, content, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+    private volatile boolean running;
+    private Thread writer;
+
+    private record Pending(Message message, UUID clientMessageId, CompletableFuture<Message> done) {}
+
+    public MessageWriteBatcher(@Value("${messenger.send.batch.enabled:false}") boolean enabled,
+                               @Value("${messenger.send.batch.max-size:128}") int maxSize,
+                               @Value("${messenger.send.batch.max-delay:5ms}") Duration maxDelay,
+                               @Value("${messenger.send.batch.queue-capacity:10000}") int queueCapacity,
+                               JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               MeterRegistry registry) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSizes = DistributionSummary.builder("messenger.send.batch.size")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.flushTimer = Timer.builder("messenger.send.batch.flush").register(registry);
+        Gauge.builder("messenger.send.batch.queued", queue, BlockingQueue::size).register(registry);
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        running = true;
+        writer = new Thread(this::run, "message-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /** Enqueues the message; the future completes once the batch containing it has committed. */
+    public CompletableFuture<Message> submit(Message m) {
+        return submit(m, null);
+    }
+
+    /**
+     * As {@link #submit(Message)}, also claiming {@code clientMessageId} for the sender (see {@link SendDeduplicator});
+     * the future fails with {@link org.springframework.dao.DuplicateKeyException} if the id is already claimed.
+     */
+    public CompletableFuture<Message> submit(Message m, UUID clientMessageId) {
+        if (!running) throw new IllegalStateException("message write batching is not running");
+        m.pre();
+        Pending p = new Pending(m, clientMessageId, new CompletableFuture<>());
+        if (!queue.offer(p)) throw new RejectedExecutionException("message write queue is full");
+        return p.done();
+    }
+
+    /** {@link #submit} and wait for durability, rethrowing the insert failure if there was one. */
+    public Message write(Message m) {
+        return write(m, null);
+    }
+
+    public Message write(Message m, UUID clientMessageId) {
+        try {
+            return submit(m, clientMessageId).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxSize) {
+                    if (queue.drainTo(batch, maxSize - batch.size()) > 0) continue;
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                log.error("message writer failed", e);
+            } finally {
+                batch.forEach(p -> p.done().completeExceptionally(new IllegalStateException("message writer stopped")));
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        batchSizes.record(batch.size());
+        try {
+            flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> insert(batch)));
+            batch.forEach(p -> p.done().complete(p.message()));
+        } catch (RuntimeException e) {
+            // One bad row (e.g. an unknown conversation) must not fail its neighbours: retry them one by one.
+            log.debug("batch of {} failed, retrying individually", batch.size(), e);
+            for (Pending p : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(List.of(p)));
+                    p.done().complete(p.message());
+                } catch (RuntimeException single) {
+                    p.done().completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    private void insert(List<Pending> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, p) -> {
+            Message m = p.message();
+            ps.setObject(1, m.getId());
+            ps.setObject(2, m.getConversationId());
+            ps.setObject(3, m.getSenderId());
+            ps.setString(4, m.getContent());
+            ps.setObject(5, m.getCreatedAt().atOffset(ZoneOffset.UTC));
+        });
+        List<Pending> claims = batch.stream().filter(p -> p.clientMessageId() != null).toList();
+        if (claims.isEmpty()) return;
+        jdbcTemplate.batchUpdate(SendDeduplicator.INSERT_SQL, claims, claims.size(),
+                (ps, p) -> SendDeduplicator.bind(ps, p.message(), p.clientMessageId()));
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.PresenceDtos.PresenceBatch;
+import com.example.messenger.api.dto.PresenceDtos.PresenceChange;
+import com.example.messenger.api.dto.PresenceDtos.UserPresence;
+import com.example.messenger.domain.ConversationMember;
+import com.example.messenger.repo.ConversationMemberRepository;
+import com.example.messenger.ws.SessionRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is online, across all nodes. Each node announces its own users' changes in coalesced batches (see
+ * {@link com.example.messenger.ws.PresenceTracker}) and every node applies every batch here. State is one
+ * {@link ConcurrentHashMap} entry per user holding the nodes the user is connected to, so concurrent batches
+ * only contend on the same user's bin. A batch turns into at most one {@code /user/queue/presence} message per
+ * local recipient, listing the changed users that recipient shares a conversation with; conversations larger
+ * than {@code messenger.presence.max-fanout-members} are left out of the fan-out. Memberships of the changed users
+ * are looked up {@value #LOOKUP_CHUNK} users at a time, however many a batch or an expired node brings. Nodes that stop sending
+ * batches for {@code messenger.presence.node-lease} are presumed dead and their users go offline.
+ */
+@Service
+public class PresenceService {
+    public static final String PRESENCE_QUEUE = "/queue/presence";
+    static final int LOOKUP_CHUNK = 500;
+
+    private final ConversationMemberRepository memberRepository;
+    private final ConversationMembersCache membersCache;
+    private final SessionRegistry sessionRegistry;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final int maxFanoutMembers;
+    private final Duration nodeLease;
+    private final Map<UUID, Entry> presence = new ConcurrentHashMap<>();
+    private final Map<String, Instant> nodes = new ConcurrentHashMap<>();
+    private final Counter deliveries;
+
+    private record Entry(Set<String> nodes, Instant lastSeenAt) {
+        boolean online() { return !nodes.isEmpty(); }
+    }
+
+    public PresenceService(ConversationMemberRepository memberRepository,
+                           ConversationMembersCache membersCache,
+                           SessionRegistry sessionRegistry,
+                           SimpMessagingTemplate messagingTemplate,
+                           @Value("${messenger.presence.max-fanout-members:500}") int maxFanoutMembers,
+                           @Value("${messenger.presence.node-lease:30s}") Duration nodeLease,
+                           MeterRegistry registry) {
+        this.memberRepository = memberRepository;
+        this.membersCache = membersCache;
+        this.sessionRegistry = sessionRegistry;
+        this.messagingTemplate = messagingTemplate;
+        this.maxFanoutMembers = maxFanoutMembers;
+        this.nodeLease = nodeLease;
+        this.deliveries = Counter.builder("messenger.presence.deliveries").register(registry);
+        Gauge.builder("messenger.presence.online", presence,
+                p -> p.values().stream().filter(Entry::online).count()).register(registry);
+    }
+
+    /** Applies one node's batch and tells local co-members about users whose overall state changed. */
+    public void apply(PresenceBatch batch) {
+        nodes.put(batch.nodeId(), Instant.now());
+        Map<UUID, UserPresence> changed = new LinkedHashMap<>();
+        for (PresenceChange c : batch.changes()) {
+            UserPresence p = update(c.userId(), batch.nodeId(), c.online(), c.at());
+            if (p != null) changed.put(c.userId(), p);
+        }
+        fanOut(changed);
+    }
+
+    /** Takes every user of nodes silent for longer than the lease offline. */
+    public void expireNodes() {
+        Instant cutoff = Instant.now().minus(nodeLease);
+        List<String> dead = new ArrayList<>();
+        nodes.forEach((node, seen) -> {
+            if (!seen.isAfter(cutoff)) dead.add(node);
+        });
+        if (dead.isEmpty()) return;
+        Map<UUID, UserPresence> changed = new LinkedHashMap<>();
+        for (String node : dead) {
+            nodes.remove(node);
+            for (Map.Entry<UUID, Entry> e : presence.entrySet()) {
+                if (!e.getValue().nodes().contains(node)) continue;
+                UserPresence p = update(e.getKey(), node, false, cutoff);
+                if (p != null) changed.put(e.getKey(), p);
+            }
+        }
+        fanOut(changed);
+    }
+
+    public UserPresence presence(UUID userId) {
+        Entry e = presence.get(userId);
+        return e == null ? new UserPresence(userId, false, null) : new UserPresence(userId, e.online(), e.lastSeenAt());
+    }
+
+    /** Presence of every member of a conversation, for clients to start from before applying pushed changes. */
+    public List<UserPresence> snapshot(UUID conversationId, UUID userId) {
+        if (!memberRepository.existsByConversationIdAndUserId(conversationId, userId)) {
+            throw new AccessDeniedException("not a member of conversation " + conversationId);
+        }
+        return membersCache.members(conversationId).stream().map(this::presence).toList();
+    }
+
+    /** Records {@code node}'s view of the user; returns the new presence if the user's overall state flipped. */
+    private UserPresence update(UUID userId, String node, boolean online, Instant at) {
+        boolean[] flipped = {false};
+        Entry updated = presence.compute(userId, (id, e) -> {
+            Set<String> before = e == null ? Set.of() : e.nodes();
+            if (before.contains(node) == online) return e;
+            Set<String> after = new HashSet<>(before);
+            if (online) after.add(node);
+            else after.remove(node);
+            flipped[0] = before.isEmpty() != after.isEmpty();
+            return new Entry(Set.copyOf(after), flipped[0] ? at : e.lastSeenAt());
+        });
+        return flipped[0] ? new UserPresence(userId, updated.online(), updated.lastSeenAt()) : null;
+    }
+
+    private void fanOut(Map<UUID, UserPresence> changed) {
+        if (changed.isEmpty()) return;
+        Map<UUID, Map<UUID, UserPresence>> byRecipient = new HashMap<>();
+        List<UUID> userIds = new ArrayList<>(changed.keySet());
+        for (int from = 0; from < userIds.size(); from += LOOKUP_CHUNK) {
+            List<UUID> chunk = userIds.subList(from, Math.min(userIds.size(), from + LOOKUP_CHUNK));
+            for (ConversationMember m : memberRepository.findByUserIdIn(chunk)) {
+                List<UUID> members = membersCache.members(m.getConversationId());
+                if (members.size() > maxFanoutMembers) continue;
+                UserPresence p = changed.get(m.getUserId());
+                for (UUID recipient : members) {
+                    if (recipient.equals(m.getUserId()) || !sessionRegistry.isOnline(recipient)) continue;
+                    byRecipient.computeIfAbsent(recipient, r -> new LinkedHashMap<>()).put(p.userId(), p);
+                }
+            }
+        }
+        String prefix = messagingTemplate.getUserDestinationPrefix();
+        byRecipient.forEach((recipient, updates) ->
+                messagingTemplate.convertAndSend(prefix + recipient + PRESENCE_QUEUE, List.copyOf(updates.values())));
+        deliveries.increment(byRecipient.size());
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.messenger.service;
+
+import java.time.Duration;
+
+/** A per-user quota is used up; surfaces as 429 with a {@code Retry-After} header. */
+public class RateLimitedException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public RateLimitedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() { return retryAfter; }
+}
@@ -0,0 +1,67 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+import com.example.messenger.api.dto.SearchDtos;
+import com.example.messenger.archive.MessageArchive;
+import com.example.messenger.domain.ConversationMember;
+import com.example.messenger.domain.Message;
+import com.example.messenger.repo.ConversationMemberRepository;
+import com.example.messenger.repo.MessageRepository;
+import com.example.messenger.search.SearchIndex;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/** Message search over the caller's conversations; ids come from {@link SearchIndex}, content from the database or the archive. */
+@Service
+public class SearchService {
+    static final int MAX_RESULTS = 1000;
+
+    private final SearchIndex searchIndex;
+    private final ConversationMemberRepository memberRepository;
+    private final MessageRepository messageRepository;
+    private final MessageArchive archive;
+
+    public SearchService(SearchIndex searchIndex, ConversationMemberRepository memberRepository,
+                         MessageRepository messageRepository, MessageArchive archive) {
+        this.searchIndex = searchIndex;
+        this.memberRepository = memberRepository;
+        this.messageRepository = messageRepository;
+        this.archive = archive;
+    }
+
+    public SearchDtos.SearchPage search(UUID userId, String query, int page, int size) {
+        if (query == null || query.isBlank()) throw new IllegalArgumentException("query must not be blank");
+        int offset = page * size;
+        if (page < 0 || offset + size > MAX_RESULTS) {
+            throw new IllegalArgumentException("only the first " + MAX_RESULTS + " results can be paged through");
+        }
+        List<UUID> conversations = memberRepository.findByUserId(userId).stream()
+                .map(ConversationMember::getConversationId)
+                .toList();
+        List<SearchIndex.Hit> hits = searchIndex.search(query, conversations, offset + size + 1);
+        boolean hasMore = hits.size() > offset + size;
+        List<SearchIndex.Hit> pageHits = hits.subList(Math.min(offset, hits.size()), Math.min(offset + size, hits.size()));
+
+        // Archived messages are looked up in the archive; messages deleted since they were indexed drop out here.
+        Map<UUID, Message> rows = messageRepository.findAllById(pageHits.stream().map(SearchIndex.Hit::messageId).toList())
+                .stream()
+                .collect(Collectors.toMap(Message::getId, Function.identity(), (a, b) -> a, HashMap::new));
+        for (SearchIndex.Hit h : pageHits) {
+            if (!rows.containsKey(h.messageId())) {
+                archive.find(h.conversationId(), new MessageCursor(h.createdAt(), h.messageId()))
+                        .ifPresent(m -> rows.put(m.getId(), m));
+            }
+        }
+        List<SearchDtos.SearchHit> results = pageHits.stream()
+                .filter(h -> rows.containsKey(h.messageId()))
+                .map(h -> new SearchDtos.SearchHit(MessageResponse.of(rows.get(h.messageId())), h.score()))
+                .toList();
+        return new SearchDtos.SearchPage(results, page, hasMore);
+    }
+}
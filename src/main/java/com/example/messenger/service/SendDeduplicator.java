@@ -0,0 +1,163 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+import com.example.messenger.domain.Message;
+import com.example.messenger.repo.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idempotent sends. A send carrying a client-generated id claims (conversation, sender, client id) in
+ * {@code message_client_ids} in the same transaction as its message, so a retry racing the original fails on the
+ * unique index instead of writing a second message. The responses of the last {@code messenger.send.dedup.max-entries}
+ * such sends are kept in memory, so a retry reaching the node that took the original is answered without touching
+ * the database; any other retry is answered from the table. Claims older than {@code messenger.send.dedup.retention}
+ * are trimmed, after which the same id sends a new message.
+ */
+@Slf4j
+@Component
+public class SendDeduplicator {
+    static final String INSERT_SQL = "INSERT INTO message_client_ids"
+            + " (message_id, conversation_id, sender_id, client_message_id, created_at) VALUES (?, ?, ?, ?, ?)";
+    static final String FIND_SQL = "SELECT message_id FROM message_client_ids"
+            + " WHERE conversation_id = ? AND sender_id = ? AND client_message_id = ?";
+    static final String TRIM_SQL = "DELETE FROM message_client_ids WHERE created_at < ?";
+
+    private final MessageRepository messageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration retention;
+    private final Duration cleanupInterval;
+    private final Map<Key, MessageResponse> recent;
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private ScheduledExecutorService cleaner;
+
+    private record Key(UUID conversationId, UUID senderId, UUID clientMessageId) {}
+
+    public SendDeduplicator(MessageRepository messageRepository, JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${messenger.send.dedup.max-entries:100000}") int maxEntries,
+                            @Value("${messenger.send.dedup.retention:24h}") Duration retention,
+                            @Value("${messenger.send.dedup.cleanup-interval:1h}") Duration cleanupInterval,
+                            MeterRegistry registry) {
+        this.messageRepository = messageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.retention = retention;
+        this.cleanupInterval = cleanupInterval;
+        this.recent = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, MessageResponse> eldest) { return size() > maxEntries; }
+        };
+        this.memoryHits = Counter.builder("messenger.send.duplicates").tag("source", "memory").register(registry);
+        this.databaseHits = Counter.builder("messenger.send.duplicates").tag("source", "database").register(registry);
+        Gauge.builder("messenger.send.dedup.entries", this, SendDeduplicator::size).register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "send-dedup-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = cleanupInterval.toMillis();
+        cleaner.scheduleWithFixedDelay(this::trimQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (cleaner != null) cleaner.shutdownNow();
+    }
+
+    /** The response of an earlier send with this client id, if this node still remembers it. */
+    public MessageResponse recent(UUID conversationId, UUID senderId, UUID clientMessageId) {
+        MessageResponse response;
+        synchronized (recent) {
+            response = recent.get(new Key(conversationId, senderId, clientMessageId));
+        }
+        if (response != null) memoryHits.increment();
+        return response;
+    }
+
+    /** The message that claimed this client id, looked up in the database; null if there is none (any more). */
+    public MessageResponse stored(UUID conversationId, UUID senderId, UUID clientMessageId) {
+        List<UUID> ids = jdbcTemplate.queryForList(FIND_SQL, UUID.class, conversationId, senderId, clientMessageId);
+        if (ids.isEmpty()) return null;
+        MessageResponse response = messageRepository.findById(ids.get(0)).map(MessageResponse::of).orElse(null);
+        if (response == null) return null;
+        databaseHits.increment();
+        remember(clientMessageId, response);
+        return response;
+    }
+
+    public void remember(UUID clientMessageId, MessageResponse response) {
+        synchronized (recent) {
+            recent.put(new Key(response.conversationId(), response.senderId(), clientMessageId), response);
+        }
+    }
+
+    /**
+     * Inserts {@code m} together with its claim on {@code clientMessageId}; throws
+     * {@link org.springframework.dao.DuplicateKeyException} without inserting anything if the id is already claimed.
+     */
+    public Message save(Message m, UUID clientMessageId) {
+        return transactionTemplate.execute(status -> {
+            Message saved = messageRepository.save(m);
+            // Runs before the message INSERT is flushed at commit, so a duplicate fails before writing it.
+            jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, saved, clientMessageId));
+            return saved;
+        });
+    }
+
+    /** Binds the parameters of {@link #INSERT_SQL}; also used by {@link MessageWriteBatcher}. */
+    static void bind(PreparedStatement ps, Message m, UUID clientMessageId) throws SQLException {
+        ps.setObject(1, m.getId());
+        ps.setObject(2, m.getConversationId());
+        ps.setObject(3, m.getSenderId());
+        ps.setObject(4, clientMessageId);
+        ps.setObject(5, m.getCreatedAt().atOffset(ZoneOffset.UTC));
+    }
+
+    /** Drops claims older than the retention window. */
+    public int trim() {
+        return jdbcTemplate.update(TRIM_SQL, Instant.now().minus(retention).atOffset(ZoneOffset.UTC));
+    }
+
+    public int size() {
+        synchronized (recent) {
+            return recent.size();
+        }
+    }
+
+    private void trimQuietly() {
+        try {
+            int trimmed = trim();
+            if (trimmed > 0) log.debug("trimmed {} client message ids", trimmed);
+        } catch (RuntimeException e) {
+            log.warn("client message id trim failed", e);
+        }
+    }
+}
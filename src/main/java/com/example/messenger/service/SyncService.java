@@ -0,0 +1,215 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+import com.example.messenger.api.dto.SyncDtos;
+import com.example.messenger.domain.ChangeLogEntry.Kind;
+import com.example.messenger.domain.Message;
+import com.example.messenger.repo.MessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Change feed for reconnecting clients, kept in {@code change_log}. Every new message, added membership and
+ * deleted conversation gets a row; its {@code seq} comes from one database sequence, so the changes any one user
+ * can see form a monotonic sequence of their own and {@link #sync} returns everything after the position a
+ * client last saw in one indexed read, instead of a history call per conversation. Rows are buffered and
+ * inserted every {@code messenger.sync.flush-interval}, like {@link UnreadCounterService}, so a change reaches
+ * the feed shortly after it reaches live subscribers. Reads skip rows younger than {@code messenger.sync.settle}
+ * so a batch committing late on another node cannot land behind a position already handed out; both the row's
+ * {@code created_at} and that cutoff come from the database clock, so skew between nodes does not eat into the
+ * window. Rows older than
+ * {@code messenger.sync.retention} are trimmed and {@code change_log_floor} records the last trimmed position;
+ * a client behind it is told to resync. The sequence may skip values, so positions are only ever compared.
+ */
+@Slf4j
+@Service
+public class SyncService {
+    // created_at is left to the column default, clock_timestamp() on Postgres.
+    static final String INSERT_SQL = "INSERT INTO change_log (kind, conversation_id, user_id, message_id)"
+            + " VALUES (?, ?, ?, ?)";
+    // Per-user rows, plus conversation-wide rows of the conversations the user is in now.
+    static final String PAGE_SQL = "SELECT seq, kind, conversation_id, message_id FROM ("
+            + " SELECT seq, kind, conversation_id, message_id FROM change_log"
+            + " WHERE user_id = ? AND seq > ? AND created_at < ?"
+            + " UNION ALL"
+            + " SELECT c.seq, c.kind, c.conversation_id, c.message_id FROM change_log c"
+            + " JOIN conversation_members m ON m.conversation_id = c.conversation_id AND m.user_id = ?"
+            + " WHERE c.user_id IS NULL AND c.seq > ? AND c.created_at < ?"
+            + ") changes ORDER BY seq LIMIT ?";
+    static final String RANGE_SQL = "SELECT f.seq, (SELECT max(seq) FROM change_log), CURRENT_TIMESTAMP"
+            + " FROM change_log_floor f";
+    static final String MAX_BEFORE_SQL = "SELECT max(seq) FROM change_log WHERE created_at < ?";
+    static final String RAISE_FLOOR_SQL = "UPDATE change_log_floor SET seq = ? WHERE seq < ?";
+    static final String TRIM_SQL = "DELETE FROM change_log WHERE seq <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageRepository messageRepository;
+    private final Duration flushInterval;
+    private final Duration settle;
+    private final Duration retention;
+    private final Duration cleanupInterval;
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final Timer flushTimer;
+    private ScheduledExecutorService flusher;
+
+    private record Pending(Kind kind, UUID conversationId, UUID userId, UUID messageId) {}
+
+    private record Row(long seq, String kind, UUID conversationId, UUID messageId) {}
+
+    private record Range(long floor, long max, OffsetDateTime now) {}
+
+    public SyncService(JdbcTemplate jdbcTemplate, MessageRepository messageRepository,
+                       @Value("${messenger.sync.flush-interval:200ms}") Duration flushInterval,
+                       @Value("${messenger.sync.settle:2s}") Duration settle,
+                       @Value("${messenger.sync.retention:7d}") Duration retention,
+                       @Value("${messenger.sync.cleanup-interval:1h}") Duration cleanupInterval,
+                       MeterRegistry registry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.messageRepository = messageRepository;
+        this.flushInterval = flushInterval;
+        this.settle = settle;
+        this.retention = retention;
+        this.cleanupInterval = cleanupInterval;
+        this.flushTimer = Timer.builder("messenger.sync.flush").register(registry);
+        Gauge.builder("messenger.sync.pending", pending, Queue::size).register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sync-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, millis, millis, TimeUnit.MILLISECONDS);
+        long cleanup = cleanupInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::trimQuietly, cleanup, cleanup, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) flusher.shutdownNow();
+        flushQuietly();
+    }
+
+    public void recordMessage(Message m) {
+        pending.add(new Pending(Kind.MESSAGE, m.getConversationId(), null, m.getId()));
+    }
+
+    public void recordMemberAdded(UUID conversationId, UUID userId) {
+        pending.add(new Pending(Kind.MEMBER_ADDED, conversationId, userId, null));
+    }
+
+    public void recordDeleted(UUID conversationId, Collection<UUID> memberIds) {
+        memberIds.forEach(userId -> pending.add(new Pending(Kind.CONVERSATION_DELETED, conversationId, userId, null)));
+    }
+
+    /** Writes all pending changes. */
+    public void flush() {
+        List<Pending> batch = new ArrayList<>();
+        for (Pending p; (p = pending.poll()) != null; ) batch.add(p);
+        if (batch.isEmpty()) return;
+        try {
+            flushTimer.record(() -> jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, p) -> {
+                ps.setString(1, p.kind().name());
+                ps.setObject(2, p.conversationId());
+                ps.setObject(3, p.userId());
+                ps.setObject(4, p.messageId());
+            }));
+        } catch (RuntimeException e) {
+            // Requeue so the next flush retries them.
+            pending.addAll(batch);
+            throw e;
+        }
+    }
+
+    /** Drops rows older than the retention window, first raising the floor past them. */
+    public int trim() {
+        Long expired = jdbcTemplate.queryForObject(MAX_BEFORE_SQL, Long.class, range().now().minus(retention));
+        if (expired == null) return 0;
+        // Raised before deleting, so a read in between at worst sends a client to resync a little early.
+        jdbcTemplate.update(RAISE_FLOOR_SQL, expired, expired);
+        return jdbcTemplate.update(TRIM_SQL, expired);
+    }
+
+    /**
+     * Up to {@code limit} of {@code userId}'s changes after {@code since}. Without {@code since}, or once
+     * {@code since} is older than the retained feed (or newer than anything in it), no changes are returned and
+     * {@code resyncRequired} is set, with {@code next} the position to sync from after reloading.
+     */
+    public SyncDtos.SyncPage sync(UUID userId, Long since, int limit) {
+        Range range = range();
+        OffsetDateTime settled = range.now().minus(settle);
+        if (since == null || since < range.floor() || since > range.max()) {
+            Long max = jdbcTemplate.queryForObject(MAX_BEFORE_SQL, Long.class, settled);
+            return new SyncDtos.SyncPage(List.of(), max == null ? range.floor() : Math.max(range.floor(), max), false, true);
+        }
+        List<Row> rows = jdbcTemplate.query(PAGE_SQL,
+                (rs, i) -> new Row(rs.getLong(1), rs.getString(2), rs.getObject(3, UUID.class), rs.getObject(4, UUID.class)),
+                userId, since, settled, userId, since, settled, limit + 1);
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) rows = rows.subList(0, limit);
+        List<UUID> messageIds = rows.stream().map(Row::messageId).filter(Objects::nonNull).toList();
+        Map<UUID, Message> messages = messageIds.isEmpty() ? Map.of()
+                : messageRepository.findAllById(messageIds).stream().collect(Collectors.toMap(Message::getId, Function.identity()));
+        List<SyncDtos.Change> changes = rows.stream().map(r -> {
+            Message m = r.messageId() == null ? null : messages.get(r.messageId());
+            return new SyncDtos.Change(r.seq(), r.kind(), r.conversationId(), m == null ? null : MessageResponse.of(m));
+        }).toList();
+        long next = rows.isEmpty() ? since : rows.get(rows.size() - 1).seq();
+        return new SyncDtos.SyncPage(changes, next, hasMore, false);
+    }
+
+    /**
+     * The floor, the newest position and the database's current time; every change after the floor is still in
+     * the table.
+     */
+    private Range range() {
+        return jdbcTemplate.queryForObject(RANGE_SQL, (rs, i) -> {
+            long floor = rs.getLong(1);
+            Long max = rs.getObject(2, Long.class);
+            return new Range(floor, max == null ? floor : Math.max(floor, max), rs.getObject(3, OffsetDateTime.class));
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("change log flush failed; will retry", e);
+        }
+    }
+
+    private void trimQuietly() {
+        try {
+            int trimmed = trim();
+            if (trimmed > 0) log.debug("trimmed {} change log rows", trimmed);
+        } catch (RuntimeException e) {
+            log.warn("change log trim failed", e);
+        }
+    }
+}
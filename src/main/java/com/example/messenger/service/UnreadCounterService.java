@@ -0,0 +1,162 @@
+package com.example.messenger.service;
+
+import com.example.messenger.domain.Message;
+import com.example.messenger.repo.MessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-member unread counters kept in {@code conversation_members.unread_count}. Sends only bump an in-memory
+ * count per (conversation, sender), remembering the oldest message; every {@code messenger.unread.flush-interval}
+ * each pending pair becomes one {@code UPDATE} adding the count to the other members of the conversation.
+ * Counters may therefore lag a send by up to one interval. Marking a message read recounts the reader's
+ * messages after it, which is normally zero or a handful, and stores in {@code counted_through_at} the newest
+ * message time that recount could see. Increments only apply to members counted through an earlier time than
+ * every message they carry; any other member is recounted instead, so no message is counted twice.
+ */
+@Slf4j
+@Service
+public class UnreadCounterService {
+    static final String INCREMENT_SQL = "UPDATE conversation_members SET unread_count = unread_count + ?"
+            + " WHERE conversation_id = ? AND user_id <> ? AND (counted_through_at IS NULL OR counted_through_at < ?)";
+    // Count and newest time come from one statement, hence one snapshot.
+    static final String RECOUNT_SQL = "UPDATE conversation_members cm SET"
+            + " unread_count = (SELECT count(*) FROM messages m WHERE m.conversation_id = cm.conversation_id"
+            + " AND m.sender_id <> cm.user_id AND m.created_at >= cm.last_read_at"
+            + " AND (m.created_at > cm.last_read_at OR m.id > cm.last_read_message_id)),"
+            + " counted_through_at = (SELECT max(m.created_at) FROM messages m WHERE m.conversation_id = cm.conversation_id)"
+            + " WHERE cm.conversation_id = ? AND cm.user_id <> ? AND cm.counted_through_at >= ?";
+    // Only ever moves the read position forward.
+    static final String MARK_READ_SQL = "UPDATE conversation_members cm SET last_read_message_id = ?, last_read_at = ?,"
+            + " unread_count = (SELECT count(*) FROM messages m WHERE m.conversation_id = cm.conversation_id"
+            + " AND m.sender_id <> cm.user_id AND m.created_at >= ? AND (m.created_at > ? OR m.id > ?)),"
+            + " counted_through_at = (SELECT max(m.created_at) FROM messages m WHERE m.conversation_id = cm.conversation_id)"
+            + " WHERE cm.conversation_id = ? AND cm.user_id = ?"
+            + " AND (cm.last_read_at IS NULL OR cm.last_read_at < ? OR (cm.last_read_at = ? AND cm.last_read_message_id < ?))";
+    static final String UNREAD_SQL = "SELECT unread_count FROM conversation_members WHERE conversation_id = ? AND user_id = ?";
+
+    private final MessageRepository messageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final InboxService inboxService;
+    private final Duration flushInterval;
+    private final Map<Key, Counts> pending = new ConcurrentHashMap<>();
+    private final Timer flushTimer;
+    private ScheduledExecutorService flusher;
+
+    private record Key(UUID conversationId, UUID senderId) {}
+
+    private record Counts(int count, Instant oldest) {
+        Counts plus(Counts other) {
+            return new Counts(count + other.count, oldest.isBefore(other.oldest) ? oldest : other.oldest);
+        }
+    }
+
+    public UnreadCounterService(MessageRepository messageRepository, JdbcTemplate jdbcTemplate, InboxService inboxService,
+                                @Value("${messenger.unread.flush-interval:1s}") Duration flushInterval,
+                                MeterRegistry registry) {
+        this.messageRepository = messageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.inboxService = inboxService;
+        this.flushInterval = flushInterval;
+        this.flushTimer = Timer.builder("messenger.unread.flush").register(registry);
+        Gauge.builder("messenger.unread.pending", pending, Map::size).register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "unread-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) flusher.shutdownNow();
+        flushQuietly();
+    }
+
+    /** Counts {@code m} as unread for every member of its conversation except the sender. */
+    public void record(Message m) {
+        pending.merge(new Key(m.getConversationId(), m.getSenderId()), new Counts(1, m.getCreatedAt()), Counts::plus);
+    }
+
+    /** Writes all pending increments. */
+    public void flush() {
+        List<Map.Entry<Key, Counts>> batch = new ArrayList<>();
+        for (Key key : pending.keySet()) {
+            Counts counts = pending.remove(key);
+            if (counts != null) batch.add(Map.entry(key, counts));
+        }
+        if (batch.isEmpty()) return;
+        try {
+            flushTimer.record(() -> {
+                // Recounts first: they are idempotent, so a retry after the increments fail repeats nothing.
+                jdbcTemplate.batchUpdate(RECOUNT_SQL, batch, batch.size(), (ps, e) -> {
+                    ps.setObject(1, e.getKey().conversationId());
+                    ps.setObject(2, e.getKey().senderId());
+                    ps.setObject(3, e.getValue().oldest().atOffset(ZoneOffset.UTC));
+                });
+                jdbcTemplate.batchUpdate(INCREMENT_SQL, batch, batch.size(), (ps, e) -> {
+                    ps.setInt(1, e.getValue().count());
+                    ps.setObject(2, e.getKey().conversationId());
+                    ps.setObject(3, e.getKey().senderId());
+                    ps.setObject(4, e.getValue().oldest().atOffset(ZoneOffset.UTC));
+                });
+            });
+        } catch (RuntimeException e) {
+            // Put the counts back so the next flush retries them.
+            batch.forEach(entry -> pending.merge(entry.getKey(), entry.getValue(), Counts::plus));
+            throw e;
+        }
+    }
+
+    /**
+     * Moves {@code userId}'s read position in the conversation forward to {@code messageId} and returns the
+     * number of messages from others after the position. A message at or before the current position leaves
+     * it where it is.
+     */
+    public int markRead(UUID conversationId, UUID userId, UUID messageId) {
+        Message read = messageRepository.findById(messageId)
+                .filter(m -> m.getConversationId().equals(conversationId))
+                .orElseThrow(() -> new IllegalArgumentException("message " + messageId + " is not in conversation " + conversationId));
+        OffsetDateTime at = read.getCreatedAt().atOffset(ZoneOffset.UTC);
+        jdbcTemplate.update(MARK_READ_SQL, messageId, at, at, at, messageId, conversationId, userId, at, at, messageId);
+        List<Integer> unread = jdbcTemplate.queryForList(UNREAD_SQL, Integer.class, conversationId, userId);
+        if (unread.isEmpty()) throw new AccessDeniedException("not a member of conversation " + conversationId);
+        inboxService.onRead(userId, conversationId, unread.get(0));
+        return unread.get(0);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("unread counter flush failed; will retry", e);
+        }
+    }
+}
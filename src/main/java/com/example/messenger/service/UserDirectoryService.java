@@ -0,0 +1,85 @@
+package com.example.messenger.service;
+
+import com.example.messenger.api.dto.UserDtos;
+import com.example.messenger.domain.User;
+import com.example.messenger.repo.UserRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * User directory in username order, optionally narrowed to users whose username or display name starts with a
+ * case-insensitive prefix. Pages are keyset ranges over the unique username, so each one costs the same no matter
+ * how deep the caller has paged. A prefix becomes the range {@code [prefix, next)} on each name's
+ * {@code lower(...)} index (V16); the two names are queried separately, each limited to the page, and merged here.
+ */
+@Service
+public class UserDirectoryService {
+    static final int MAX_QUERY_LENGTH = 100;
+
+    private final UserRepository userRepository;
+
+    public UserDirectoryService(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Transactional(readOnly = true)
+    public UserDtos.UserPage page(String query, String after, int limit) {
+        String from = after == null ? "" : decode(after);
+        PageRequest first = PageRequest.of(0, limit + 1);
+        List<User> rows;
+        if (query == null || query.isBlank()) {
+            rows = userRepository.findByUsernameGreaterThanOrderByUsernameAsc(from, first);
+        } else {
+            String q = query.strip();
+            if (q.length() > MAX_QUERY_LENGTH) {
+                throw new IllegalArgumentException("query must be at most " + MAX_QUERY_LENGTH + " characters");
+            }
+            String lo = q.toLowerCase(Locale.ROOT);
+            String hi = upperBound(lo);
+            rows = merge(userRepository.findPageByUsernamePrefix(lo, hi, from, first),
+                    userRepository.findPageByDisplayNamePrefix(lo, hi, from, first), limit + 1);
+        }
+        boolean hasMore = rows.size() > limit;
+        List<User> page = hasMore ? rows.subList(0, limit) : rows;
+        String next = hasMore ? encode(page.get(page.size() - 1).getUsername()) : null;
+        return new UserDtos.UserPage(page.stream().map(UserDtos.userResponse::of).toList(), next);
+    }
+
+    /** The least string greater than every string starting with {@code prefix}: its last code point plus one. */
+    static String upperBound(String prefix) {
+        int last = prefix.codePointBefore(prefix.length());
+        return prefix.substring(0, prefix.length() - Character.charCount(last)) + Character.toString(last + 1);
+    }
+
+    /** Both lists in username order, merged without duplicates and cut to {@code max}. */
+    private static List<User> merge(List<User> a, List<User> b, int max) {
+        List<User> merged = new ArrayList<>(Math.min(max, a.size() + b.size()));
+        int i = 0, j = 0;
+        while (merged.size() < max && (i < a.size() || j < b.size())) {
+            int cmp = i == a.size() ? 1 : j == b.size() ? -1 : a.get(i).getUsername().compareTo(b.get(j).getUsername());
+            if (cmp <= 0) merged.add(a.get(i++));
+            else merged.add(b.get(j++));
+            if (cmp == 0) j++;
+        }
+        return merged;
+    }
+
+    private static String encode(String username) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(username.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+    }
+}
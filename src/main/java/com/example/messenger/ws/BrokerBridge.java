@@ -0,0 +1,9 @@
+package com.example.messenger.ws;
+
+/**
+ * Publishes to STOMP destinations on every application node, not only on the JVM that produced the event.
+ * Selected by {@code messenger.cluster.backend}: {@code local} (single node) or {@code postgres}.
+ */
+public interface BrokerBridge {
+    void publish(String destination, Object payload);
+}
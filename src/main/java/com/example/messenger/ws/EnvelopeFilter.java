@@ -0,0 +1,36 @@
+package com.example.messenger.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Counter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides which fan-out envelopes received by {@link PostgresBrokerBridge} to deliver: none of this node's own,
+ * which it delivered when publishing, and each envelope id only once among the last {@code maxSeen}.
+ * Not thread-safe; the listener thread owns it.
+ */
+public class EnvelopeFilter {
+    private final String nodeId;
+    private final Counter duplicates;
+    private final Map<String, Boolean> seen;
+
+    public EnvelopeFilter(String nodeId, int maxSeen, Counter duplicates) {
+        this.nodeId = nodeId;
+        this.duplicates = duplicates;
+        this.seen = new LinkedHashMap<>(1024, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) { return size() > maxSeen; }
+        };
+    }
+
+    public boolean accept(JsonNode envelope) {
+        if (nodeId.equals(envelope.path("origin").asText())) return false;
+        if (seen.put(envelope.path("id").asText(), Boolean.TRUE) != null) {
+            duplicates.increment();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.messenger.ws;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/** Single-node fan-out straight to this node's subscribers. */
+@Component
+@ConditionalOnProperty(name = "messenger.cluster.backend", havingValue = "local", matchIfMissing = true)
+public class LocalBrokerBridge implements BrokerBridge {
+    private final LocalDelivery localDelivery;
+
+    public LocalBrokerBridge(LocalDelivery localDelivery) { this.localDelivery = localDelivery; }
+
+    @Override
+    public void publish(String destination, Object payload) {
+        localDelivery.deliver(destination, payload);
+    }
+}
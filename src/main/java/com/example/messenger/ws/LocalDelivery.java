@@ -0,0 +1,119 @@
+package com.example.messenger.ws;
+
+import com.example.messenger.api.dto.PresenceDtos.PresenceBatch;
+import com.example.messenger.service.ConversationMembersCache;
+import com.example.messenger.service.InboxService;
+import com.example.messenger.service.PresenceService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Hands a publish to the subscribers connected to this node. Depending on {@code messenger.delivery.mode},
+ * conversation events go to the {@code /topic/chat.{id}} topic ({@code topic}), to each member's single
+ * {@code /user/queue/messages} subscription ({@code user}), or to both during client migration.
+ * In user mode the payload is serialized once and only members with a live session here are addressed.
+ * Presence batches ({@link #PRESENCE_DESTINATION}) never reach the broker; {@link PresenceService} fans them out.
+ * Neither do membership changes ({@link #MEMBERS_DESTINATION}), which only drop the conversation's cached members,
+ * nor inbox invalidations ({@link #INBOXES_DESTINATION}), which drop the listed users' cached inboxes.
+ */
+@Component
+public class LocalDelivery {
+    public static final String CHAT_TOPIC_PREFIX = "/topic/chat.";
+    public static final String USER_QUEUE = "/queue/messages";
+    public static final String PRESENCE_DESTINATION = "/internal/presence";
+    public static final String MEMBERS_DESTINATION = "/internal/members";
+    public static final String INBOXES_DESTINATION = "/internal/inboxes";
+    private static final TypeReference<List<UUID>> USER_IDS = new TypeReference<>() {};
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ConversationMembersCache membersCache;
+    private final SessionRegistry sessionRegistry;
+    private final PresenceService presenceService;
+    private final InboxService inboxService;
+    private final ObjectMapper objectMapper;
+    private final boolean toTopic;
+    private final boolean toUsers;
+
+    public LocalDelivery(SimpMessagingTemplate messagingTemplate,
+                         ConversationMembersCache membersCache,
+                         SessionRegistry sessionRegistry,
+                         PresenceService presenceService,
+                         InboxService inboxService,
+                         ObjectMapper objectMapper,
+                         @Value("${messenger.delivery.mode:topic}") String mode) {
+        this.messagingTemplate = messagingTemplate;
+        this.membersCache = membersCache;
+        this.sessionRegistry = sessionRegistry;
+        this.presenceService = presenceService;
+        this.inboxService = inboxService;
+        this.objectMapper = objectMapper;
+        switch (mode) {
+            case "topic" -> { toTopic = true; toUsers = false; }
+            case "user" -> { toTopic = false; toUsers = true; }
+            case "both" -> { toTopic = true; toUsers = true; }
+            default -> throw new IllegalArgumentException("unknown messenger.delivery.mode: " + mode);
+        }
+    }
+
+    public void deliver(String destination, Object payload) {
+        if (PRESENCE_DESTINATION.equals(destination)) {
+            // Local batches arrive as objects, batches from other nodes as JSON trees.
+            presenceService.apply(payload instanceof PresenceBatch batch
+                    ? batch : objectMapper.convertValue(payload, PresenceBatch.class));
+            return;
+        }
+        if (MEMBERS_DESTINATION.equals(destination)) {
+            membersCache.invalidate(objectMapper.convertValue(payload, UUID.class));
+            return;
+        }
+        if (INBOXES_DESTINATION.equals(destination)) {
+            objectMapper.convertValue(payload, USER_IDS).forEach(inboxService::invalidate);
+            return;
+        }
+        UUID conversationId = toUsers ? conversationOf(destination) : null;
+        if (conversationId == null) {
+            messagingTemplate.convertAndSend(destination, payload);
+            return;
+        }
+        if (toTopic) messagingTemplate.convertAndSend(destination, payload);
+        byte[] body = null;
+        for (UUID member : membersCache.members(conversationId)) {
+            if (!sessionRegistry.isOnline(member)) continue;
+            if (body == null) body = serialize(payload);
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            headers.setLeaveMutable(true);
+            messagingTemplate.send(messagingTemplate.getUserDestinationPrefix() + member + USER_QUEUE,
+                    MessageBuilder.createMessage(body, headers.getMessageHeaders()));
+        }
+    }
+
+    /** The conversation id of a {@code /topic/chat.{id}} destination, or {@code null} for anything else. */
+    static UUID conversationOf(String destination) {
+        if (!destination.startsWith(CHAT_TOPIC_PREFIX)) return null;
+        try {
+            return UUID.fromString(destination.substring(CHAT_TOPIC_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] serialize(Object payload) {
+        try {
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("payload is not serializable", e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.messenger.ws;
+
+import com.example.messenger.api.dto.MessageDtos;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.ConversationMembersCache;
+import com.example.messenger.service.MessageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.handler.annotation.support.MethodArgumentNotValidException;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+import java.util.UUID;
+
+/**
+ * Sending over the open STOMP connection: a SEND to {@code /app/conversations/{id}/messages} with
+ * {@code {"content": "...", "clientMessageId": "..."}} persists the message, fans it out like
+ * {@code POST /api/v1/conversations/{id}/messages} and answers only the sending session on
+ * {@code /user/queue/receipts} with the stored id and timestamp; a repeated {@code clientMessageId} gets the
+ * original's receipt and is not fanned out again. The caller was authenticated once at CONNECT (see
+ * {@link StompAuthInterceptor}), so a send costs no token parsing and, for a conversation in
+ * {@link ConversationMembersCache}, no lookup besides the insert. Put a {@code receipt} header on the frame to
+ * correlate the reply; failures go to {@code /user/queue/errors} with the same value.
+ */
+@Slf4j
+@Controller
+public class MessageSocketController {
+    static final String RECEIPT_HEADER = "receipt";
+
+    private final MessageService messageService;
+    private final ConversationMembersCache membersCache;
+    private final BrokerBridge brokerBridge;
+    private final Timer fanOutTimer;
+
+    public MessageSocketController(MessageService messageService, ConversationMembersCache membersCache,
+                                   BrokerBridge brokerBridge, MeterRegistry registry) {
+        this.messageService = messageService;
+        this.membersCache = membersCache;
+        this.brokerBridge = brokerBridge;
+        this.fanOutTimer = Timer.builder("messenger.send.fanout").tag("transport", "stomp").register(registry);
+    }
+
+    @MessageMapping("/conversations/{id}/messages")
+    @SendToUser(destinations = "/queue/receipts", broadcast = false)
+    public MessageDtos.SendReceipt send(@DestinationVariable("id") UUID conversationId,
+                                        @Valid @Payload MessageDtos.SendMessageRequest req,
+                                        @Header(name = RECEIPT_HEADER, required = false) String receipt,
+                                        Principal principal) {
+        AuthUser me = user(principal);
+        if (!membersCache.members(conversationId).contains(me.id())) {
+            throw new AccessDeniedException("not a member of conversation " + conversationId);
+        }
+        MessageService.Sent sent = messageService.send(conversationId, me.id(), req.content(), req.clientMessageId());
+        MessageDtos.MessageResponse response = sent.message();
+        if (!sent.duplicate()) {
+            fanOutTimer.record(() -> brokerBridge.publish(LocalDelivery.CHAT_TOPIC_PREFIX + conversationId, response));
+        }
+        return new MessageDtos.SendReceipt(receipt, response.id(), response.createdAt());
+    }
+
+    @MessageExceptionHandler({IllegalArgumentException.class, AccessDeniedException.class})
+    @SendToUser(destinations = "/queue/errors", broadcast = false)
+    public MessageDtos.SendError rejected(RuntimeException e,
+                                          @Header(name = RECEIPT_HEADER, required = false) String receipt) {
+        return new MessageDtos.SendError(receipt, e.getMessage());
+    }
+
+    @MessageExceptionHandler(MethodArgumentNotValidException.class)
+    @SendToUser(destinations = "/queue/errors", broadcast = false)
+    public MessageDtos.SendError invalid(MethodArgumentNotValidException e,
+                                         @Header(name = RECEIPT_HEADER, required = false) String receipt) {
+        return new MessageDtos.SendError(receipt, "invalid message");
+    }
+
+    /** Anything else (overload, database errors, a lost duplicate race) gets a generic error; the client may retry. */
+    @MessageExceptionHandler(Exception.class)
+    @SendToUser(destinations = "/queue/errors", broadcast = false)
+    public MessageDtos.SendError failed(Exception e,
+                                        @Header(name = RECEIPT_HEADER, required = false) String receipt) {
+        log.warn("STOMP send failed", e);
+        return new MessageDtos.SendError(receipt, "message could not be sent");
+    }
+
+    private static AuthUser user(Principal principal) {
+        if (principal instanceof Authentication auth && auth.getPrincipal() instanceof AuthUser me) return me;
+        throw new AccessDeniedException("not authenticated");
+    }
+}
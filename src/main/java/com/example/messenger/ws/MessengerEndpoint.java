@@ -0,0 +1,50 @@
+package com.example.messenger.ws;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/messenger}: this node's live broker and session state in one response, for a quick look
+ * during an incident without querying the metrics backend. The same numbers are exported as meters.
+ */
+@Component
+@Endpoint(id = "messenger")
+public class MessengerEndpoint {
+    private final SessionRegistry sessionRegistry;
+    private final WebSocketMessageBrokerStats brokerStats;
+    private final Counter sent;
+    private final String backend;
+
+    public record Summary(String backend, int sessions, int onlineUsers, Map<String, Integer> subscriptions,
+                          long messagesSent, Map<String, String> broker) {}
+
+    public MessengerEndpoint(SessionRegistry sessionRegistry,
+                             WebSocketMessageBrokerStats brokerStats,
+                             MeterRegistry registry,
+                             @Value("${messenger.cluster.backend:local}") String backend) {
+        this.sessionRegistry = sessionRegistry;
+        this.brokerStats = brokerStats;
+        this.sent = Counter.builder("messenger.messages.sent").register(registry);
+        this.backend = backend;
+    }
+
+    @ReadOperation
+    public Summary summary() {
+        Map<String, String> broker = new LinkedHashMap<>();
+        broker.put("webSocketSessions", brokerStats.getWebSocketSessionStatsInfo());
+        broker.put("stomp", brokerStats.getStompSubProtocolStatsInfo());
+        broker.put("inboundChannel", brokerStats.getClientInboundExecutorStatsInfo());
+        broker.put("outboundChannel", brokerStats.getClientOutboundExecutorStatsInfo());
+        broker.put("sockJsScheduler", brokerStats.getSockJsTaskSchedulerStatsInfo());
+        return new Summary(backend, sessionRegistry.sessionCount(), sessionRegistry.onlineUsers(),
+                sessionRegistry.subscriptions(), (long) sent.count(), broker);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.messenger.ws;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs fan-out envelopes into as few JSON arrays as possible, each at most {@code maxBytes} of UTF-8, for
+ * {@link PostgresBrokerBridge} to send as {@code pg_notify} payloads. An envelope that cannot fit even alone is
+ * handed to a {@link Spill}, which parks it elsewhere and returns a small reference envelope in its place.
+ */
+public class NotificationPacker {
+    @FunctionalInterface
+    public interface Spill {
+        /** Parks {@code envelope} (serialized as {@code json}) and returns the JSON of its reference envelope. */
+        String spill(ObjectNode envelope, String json) throws JsonProcessingException;
+    }
+
+    private final ObjectMapper objectMapper;
+    private final int maxBytes;
+
+    public NotificationPacker(ObjectMapper objectMapper, int maxBytes) {
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+    }
+
+    public List<String> pack(List<ObjectNode> envelopes, Spill spill) throws JsonProcessingException {
+        List<String> payloads = new ArrayList<>();
+        StringBuilder current = new StringBuilder("[");
+        int currentBytes = 1;
+        for (ObjectNode envelope : envelopes) {
+            String json = objectMapper.writeValueAsString(envelope);
+            int bytes = utf8Length(json);
+            if (bytes + 2 > maxBytes) {
+                json = spill.spill(envelope, json);
+                bytes = utf8Length(json);
+            }
+            // The separating comma and the closing bracket must fit too.
+            if (currentBytes > 1 && currentBytes + 1 + bytes + 1 > maxBytes) {
+                payloads.add(current.append(']').toString());
+                current = new StringBuilder("[");
+                currentBytes = 1;
+            }
+            if (currentBytes > 1) {
+                current.append(',');
+                currentBytes++;
+            }
+            current.append(json);
+            currentBytes += bytes;
+        }
+        if (currentBytes > 1) payloads.add(current.append(']').toString());
+        return payloads;
+    }
+
+    private static int utf8Length(String s) {
+        return s.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.messenger.ws;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-session outbound queue with a byte limit ({@code messenger.ws.send-buffer-limit}) and a send-time limit
+ * ({@code messenger.ws.send-time-limit}). Frames are written by a virtual thread per busy session, so a stalled
+ * client never blocks the outbound channel. When a frame would overflow the queue, the policy of its destination
+ * decides: {@code conflate} drops queued frames for the same destination so only the latest is kept (only safe
+ * where each frame carries the full state, which rules out presence: its frames are deltas),
+ * {@code drop-oldest} drops the oldest queued frames for that destination (or the new one if that is not enough),
+ * and anything else disconnects the session, after which the client reconnects and reloads history. A send
+ * running past the time limit also disconnects; a watchdog checks the sending threads, so this happens even when
+ * nothing more is queued for the session. Spring's {@code ConcurrentWebSocketSessionDecorator} wraps this
+ * session from the outside and only ever sees sends that return at once, so its limits never trip: both limits
+ * are enforced here alone.
+ */
+@Slf4j
+@Component
+public class OutboundFlowControl implements WebSocketHandlerDecoratorFactory {
+    enum Policy { CONFLATE, DROP_OLDEST, DISCONNECT }
+
+    private final long bufferLimit;
+    private final long sendTimeLimitNanos;
+    private final List<String> conflate;
+    private final List<String> dropOldest;
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, FlowControlledSession> sessions = new ConcurrentHashMap<>();
+    private final Counter conflated;
+    private final Counter dropped;
+    private final Counter bufferDisconnects;
+    private final Counter timeDisconnects;
+    private ScheduledExecutorService watchdog;
+
+    public OutboundFlowControl(@Value("${messenger.ws.send-buffer-limit:512KB}") DataSize bufferLimit,
+                               @Value("${messenger.ws.send-time-limit:10s}") Duration sendTimeLimit,
+                               @Value("${messenger.ws.overflow.conflate:}") List<String> conflate,
+                               @Value("${messenger.ws.overflow.drop-oldest:}") List<String> dropOldest,
+                               MeterRegistry registry) {
+        this.bufferLimit = bufferLimit.toBytes();
+        this.sendTimeLimitNanos = sendTimeLimit.toNanos();
+        this.conflate = conflate.stream().filter(s -> !s.isBlank()).toList();
+        this.dropOldest = dropOldest.stream().filter(s -> !s.isBlank()).toList();
+        this.conflated = Counter.builder("messenger.ws.outbound.overflow").tag("policy", "conflate").register(registry);
+        this.dropped = Counter.builder("messenger.ws.outbound.overflow").tag("policy", "drop-oldest").register(registry);
+        this.bufferDisconnects = Counter.builder("messenger.ws.outbound.disconnects").tag("reason", "buffer").register(registry);
+        this.timeDisconnects = Counter.builder("messenger.ws.outbound.disconnects").tag("reason", "send-time").register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ws-send-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(TimeUnit.MILLISECONDS.toNanos(50), sendTimeLimitNanos / 4);
+        watchdog.scheduleWithFixedDelay(this::closeStalled, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watchdog != null) watchdog.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /** Disconnects every session whose current send has run past the time limit. */
+    private void closeStalled() {
+        long now = System.nanoTime();
+        for (FlowControlledSession session : sessions.values()) {
+            long started = session.sendStarted;
+            if (started != 0 && now - started > sendTimeLimitNanos && sessions.remove(session.getId(), session)) {
+                timeDisconnects.increment();
+                // The close can block behind the stalled write, so it must not hold up the watchdog.
+                senders.execute(() -> session.disconnect("send time limit exceeded"));
+            }
+        }
+    }
+
+    public long bufferLimit() { return bufferLimit; }
+
+    public Duration sendTimeLimit() { return Duration.ofNanos(sendTimeLimitNanos); }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                FlowControlledSession controlled = new FlowControlledSession(session);
+                sessions.put(session.getId(), controlled);
+                super.afterConnectionEstablished(controlled);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    Policy policy(String destination) {
+        if (destination != null) {
+            for (String prefix : conflate) if (destination.startsWith(prefix)) return Policy.CONFLATE;
+            for (String prefix : dropOldest) if (destination.startsWith(prefix)) return Policy.DROP_OLDEST;
+        }
+        return Policy.DISCONNECT;
+    }
+
+    /** The {@code destination} header of a STOMP frame, or null; only the header block is decoded. */
+    static String destination(WebSocketMessage<?> message) {
+        String headers;
+        if (message instanceof TextMessage text) {
+            String frame = text.getPayload();
+            int end = frame.indexOf("\n\n");
+            headers = end < 0 ? frame : frame.substring(0, end);
+        } else if (message instanceof BinaryMessage binary) {
+            ByteBuffer buf = binary.getPayload().duplicate();
+            int end = buf.position();
+            while (end < buf.limit() && !(buf.get(end) == '\n' && end + 1 < buf.limit() && buf.get(end + 1) == '\n')) end++;
+            buf.limit(end);
+            headers = StandardCharsets.UTF_8.decode(buf).toString();
+        } else {
+            return null;
+        }
+        int at = headers.indexOf("\ndestination:");
+        if (at < 0) return null;
+        int start = at + "\ndestination:".length();
+        int stop = headers.indexOf('\n', start);
+        return headers.substring(start, stop < 0 ? headers.length() : stop);
+    }
+
+    private record Pending(WebSocketMessage<?> message, String destination, Policy policy, int bytes) {}
+
+    private final class FlowControlledSession extends WebSocketSessionDecorator {
+        private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        private long queuedBytes;
+        private boolean draining;
+        private volatile long sendStarted;
+        private volatile boolean closed;
+
+        FlowControlledSession(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (closed) return;
+            long started = sendStarted;
+            if (started != 0 && System.nanoTime() - started > sendTimeLimitNanos) {
+                timeDisconnects.increment();
+                disconnect("send time limit exceeded");
+                return;
+            }
+            String destination = destination(message);
+            Pending p = new Pending(message, destination, policy(destination), message.getPayloadLength());
+            boolean overflow = false;
+            boolean startDrain = false;
+            synchronized (queue) {
+                if (queuedBytes + p.bytes() > bufferLimit && !makeRoom(p)) {
+                    overflow = p.policy() == Policy.DISCONNECT;
+                } else {
+                    queue.add(p);
+                    queuedBytes += p.bytes();
+                    startDrain = !draining;
+                    draining = true;
+                }
+            }
+            if (overflow) {
+                bufferDisconnects.increment();
+                disconnect("send buffer limit exceeded");
+                return;
+            }
+            if (startDrain) senders.execute(this::drain);
+        }
+
+        /** Frees space for {@code p} under its destination's policy; false if it must not be queued. */
+        private boolean makeRoom(Pending p) {
+            switch (p.policy()) {
+                case CONFLATE -> {
+                    removeQueued(p.destination(), Long.MAX_VALUE);
+                    conflated.increment();
+                    return true;
+                }
+                case DROP_OLDEST -> {
+                    removeQueued(p.destination(), queuedBytes + p.bytes() - bufferLimit);
+                    dropped.increment();
+                    return queuedBytes + p.bytes() <= bufferLimit;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+
+        /** Drops queued frames for {@code destination}, oldest first, until at least {@code bytes} are freed. */
+        private void removeQueued(String destination, long bytes) {
+            long freed = 0;
+            for (Iterator<Pending> it = queue.iterator(); it.hasNext() && freed < bytes; ) {
+                Pending q = it.next();
+                if (destination != null && destination.equals(q.destination())) {
+                    it.remove();
+                    queuedBytes -= q.bytes();
+                    freed += q.bytes();
+                }
+            }
+        }
+
+        private void drain() {
+            while (!closed) {
+                Pending p;
+                synchronized (queue) {
+                    p = queue.poll();
+                    if (p == null) {
+                        draining = false;
+                        return;
+                    }
+                    queuedBytes -= p.bytes();
+                }
+                sendStarted = System.nanoTime() | 1;
+                try {
+                    getDelegate().sendMessage(p.message());
+                } catch (IOException | RuntimeException e) {
+                    log.debug("send to websocket session {} failed", getId(), e);
+                    disconnect("send failed");
+                } finally {
+                    sendStarted = 0;
+                }
+            }
+        }
+
+        private void disconnect(String reason) {
+            closed = true;
+            sessions.remove(getId());
+            synchronized (queue) {
+                queue.clear();
+                queuedBytes = 0;
+            }
+            try {
+                getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE.withReason(reason));
+            } catch (IOException | RuntimeException e) {
+                log.debug("closing websocket session {} failed", getId(), e);
+            }
+        }
+
+        @Override
+        public void close(CloseStatus status) throws IOException {
+            closed = true;
+            sessions.remove(getId());
+            synchronized (queue) {
+                queue.clear();
+                queuedBytes = 0;
+            }
+            super.close(status);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.messenger.ws;
+
+import com.example.messenger.api.dto.MessageDtos;
+import com.example.messenger.search.SearchIndex;
+import com.example.messenger.service.InboxService;
+import com.example.messenger.service.MessageTailCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Multi-node fan-out over Postgres {@code LISTEN/NOTIFY}. A publish is delivered to local subscribers at
+ * once (see {@link LocalDelivery}) and queued as an envelope; a notifier thread collects envelopes for {@code notify-delay} and sends
+ * them as JSON arrays packed into as few {@code pg_notify} payloads as the 8000-byte limit allows, all in one
+ * statement (see {@link NotificationPacker}). Every node listens on a dedicated connection (outside the Hikari
+ * pool), skips its own envelopes and ids it has already seen ({@link EnvelopeFilter}) and hands the rest to its
+ * own {@link LocalDelivery}. Envelopes can be lost: while the listener reconnects, when the outbox is full, or
+ * when a notification fails. Lost messages would leave holes in the history tails and inboxes cached from
+ * them, so the node that lost envelopes drops its own caches, or, if they were outgoing, sends every other node
+ * a reset ({@link #RESET_DESTINATION}) that drops theirs.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "messenger.cluster.backend", havingValue = "postgres")
+public class PostgresBrokerBridge implements BrokerBridge {
+    private static final int MAX_NOTIFY_BYTES = 7900;
+    private static final int MAX_SEEN = 65_536;
+    private static final long SPILL_RETENTION_MILLIS = Duration.ofMinutes(1).toMillis();
+    static final String RESET_DESTINATION = "/internal/reset";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final LocalDelivery localDelivery;
+    private final MessageTailCache tailCache;
+    private final InboxService inboxService;
+    private final SearchIndex searchIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final ObjectMapper objectMapper;
+    private final String channel;
+    private final long notifyDelayMillis;
+    private final BlockingQueue<ObjectNode> outbox;
+    private final NotificationPacker packer;
+    private final EnvelopeFilter filter;
+    private final Counter published;
+    private final Counter forwarded;
+    private final Counter dropped;
+    private final Counter notifications;
+    private final Counter resets;
+    // Set when outgoing envelopes were lost; the notifier then sends a reset ahead of its next batch.
+    private final AtomicBoolean resetOthers = new AtomicBoolean();
+    private volatile boolean running;
+    private Thread notifier;
+    private Thread listener;
+
+    public PostgresBrokerBridge(LocalDelivery localDelivery,
+                                MessageTailCache tailCache,
+                                InboxService inboxService,
+                                SearchIndex searchIndex,
+                                JdbcTemplate jdbcTemplate,
+                                DataSourceProperties dataSourceProperties,
+                                ObjectMapper objectMapper,
+                                @Value("${messenger.cluster.channel:messenger_fanout}") String channel,
+                                @Value("${messenger.cluster.notify-delay:10ms}") Duration notifyDelay,
+                                @Value("${messenger.cluster.outbox-capacity:50000}") int outboxCapacity,
+                                MeterRegistry registry) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("messenger.cluster.channel must be a lower-case identifier");
+        }
+        this.localDelivery = localDelivery;
+        this.tailCache = tailCache;
+        this.inboxService = inboxService;
+        this.searchIndex = searchIndex;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.objectMapper = objectMapper;
+        this.channel = channel;
+        this.notifyDelayMillis = notifyDelay.toMillis();
+        this.outbox = new ArrayBlockingQueue<>(outboxCapacity);
+        this.published = Counter.builder("messenger.cluster.envelopes").tag("direction", "out").register(registry);
+        this.forwarded = Counter.builder("messenger.cluster.envelopes").tag("direction", "in").register(registry);
+        this.dropped = Counter.builder("messenger.cluster.dropped").register(registry);
+        this.notifications = Counter.builder("messenger.cluster.notifications").register(registry);
+        this.resets = Counter.builder("messenger.cluster.cache-resets").register(registry);
+        this.packer = new NotificationPacker(objectMapper, MAX_NOTIFY_BYTES);
+        this.filter = new EnvelopeFilter(nodeId, MAX_SEEN,
+                Counter.builder("messenger.cluster.duplicates").register(registry));
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        notifier = new Thread(this::runNotifier, "fanout-notifier");
+        notifier.setDaemon(true);
+        notifier.start();
+        listener = new Thread(this::runListener, "fanout-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        notifier.join(TimeUnit.SECONDS.toMillis(2));
+        listener.join(TimeUnit.SECONDS.toMillis(2));
+    }
+
+    @Override
+    public void publish(String destination, Object payload) {
+        localDelivery.deliver(destination, payload);
+        if (!outbox.offer(envelope(destination, payload))) {
+            dropped.increment();
+            resetOthers.set(true);
+            log.warn("fan-out outbox full, {} not forwarded to other nodes", destination);
+        }
+    }
+
+    private ObjectNode envelope(String destination, Object payload) {
+        ObjectNode envelope = objectMapper.createObjectNode()
+                .put("id", UUID.randomUUID().toString())
+                .put("origin", nodeId)
+                .put("destination", destination);
+        envelope.set("payload", objectMapper.valueToTree(payload));
+        return envelope;
+    }
+
+    private void runNotifier() {
+        List<ObjectNode> batch = new ArrayList<>();
+        long lastSpillCleanup = System.currentTimeMillis();
+        while (running || !outbox.isEmpty()) {
+            try {
+                ObjectNode first = outbox.poll(500, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    if (notifyDelayMillis > 0) Thread.sleep(notifyDelayMillis);
+                    outbox.drainTo(batch);
+                }
+                // Ahead of the batch, so the messages in it land in the emptied caches of the other nodes.
+                if (resetOthers.getAndSet(false)) batch.add(0, envelope(RESET_DESTINATION, null));
+                if (!batch.isEmpty()) sendNotifications(batch);
+                if (System.currentTimeMillis() - lastSpillCleanup > SPILL_RETENTION_MILLIS) {
+                    jdbcTemplate.update("DELETE FROM fanout_spill WHERE created_at < NOW() - INTERVAL '1 minute'");
+                    lastSpillCleanup = System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException | JsonProcessingException e) {
+                dropped.increment(batch.size());
+                resetOthers.set(true);
+                log.warn("failed to notify {} fan-out envelopes", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void sendNotifications(List<ObjectNode> batch) throws JsonProcessingException {
+        List<String> payloads = packer.pack(batch, this::spill);
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement("SELECT pg_notify(?, p) FROM unnest(?::text[]) AS p")) {
+                ps.setString(1, channel);
+                ps.setArray(2, con.createArrayOf("text", payloads.toArray()));
+                ps.executeQuery().close();
+            }
+            return null;
+        });
+        published.increment(batch.size());
+        notifications.increment(payloads.size());
+    }
+
+    /** Parks an oversized envelope and returns the small reference envelope that replaces it. */
+    private String spill(ObjectNode envelope, String json) throws JsonProcessingException {
+        String id = envelope.get("id").asText();
+        jdbcTemplate.update("INSERT INTO fanout_spill (id, body) VALUES (?, ?)", UUID.fromString(id), json);
+        return objectMapper.writeValueAsString(objectMapper.createObjectNode()
+                .put("id", id)
+                .put("origin", nodeId)
+                .put("spill", true));
+    }
+
+    private void runListener() {
+        boolean listenedBefore = false;
+        while (running) {
+            try (Connection con = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                try (Statement st = con.createStatement()) {
+                    st.execute("LISTEN " + channel);
+                }
+                // Anything published while the listener was down was missed; reload from the database instead.
+                if (listenedBefore) resetCaches("fan-out listener reconnected");
+                listenedBefore = true;
+                PGConnection pg = con.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] received = pg.getNotifications(500);
+                    if (received == null) continue;
+                    for (PGNotification n : received) receive(n.getParameter());
+                }
+            } catch (SQLException e) {
+                log.warn("fan-out listener connection lost, reconnecting", e);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(String body) {
+        try {
+            for (JsonNode envelope : objectMapper.readTree(body)) {
+                if (!filter.accept(envelope)) continue;
+                if (envelope.path("spill").asBoolean()) {
+                    envelope = unspill(envelope.path("id").asText());
+                    if (envelope == null) continue;
+                }
+                deliver(envelope.path("destination").asText(), envelope.get("payload"));
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("dropping malformed fan-out notification", e);
+        }
+    }
+
+    private JsonNode unspill(String id) throws JsonProcessingException {
+        try {
+            return objectMapper.readTree(jdbcTemplate.queryForObject(
+                    "SELECT body FROM fanout_spill WHERE id = ?", String.class, UUID.fromString(id)));
+        } catch (EmptyResultDataAccessException e) {
+            log.warn("fan-out envelope {} expired before it was read", id);
+            return null;
+        }
+    }
+
+    private void deliver(String destination, JsonNode payload) throws JsonProcessingException {
+        if (RESET_DESTINATION.equals(destination)) {
+            resetCaches("another node lost fan-out envelopes");
+            return;
+        }
+        localDelivery.deliver(destination, payload);
+        forwarded.increment();
+        // Keep this node's history tail, cached inboxes and search index in step with messages sent through other nodes.
+        // Typing indicators share the topic and carry a "type"; messages do not.
+        if (destination.startsWith(LocalDelivery.CHAT_TOPIC_PREFIX) && !payload.has("type")) {
+            MessageDtos.MessageResponse message = objectMapper.treeToValue(payload, MessageDtos.MessageResponse.class);
+            tailCache.append(message);
+            inboxService.apply(message);
+            searchIndex.add(message.id(), message.conversationId(), message.content(), message.createdAt());
+        }
+    }
+
+    private void resetCaches(String reason) {
+        resets.increment();
+        log.warn("{}; dropping cached history tails and inboxes", reason);
+        tailCache.clear();
+        inboxService.invalidateAll();
+    }
+}
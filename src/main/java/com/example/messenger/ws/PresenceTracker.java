@@ -0,0 +1,163 @@
+package com.example.messenger.ws;
+
+import com.example.messenger.api.dto.PresenceDtos.PresenceBatch;
+import com.example.messenger.api.dto.PresenceDtos.PresenceChange;
+import com.example.messenger.service.PresenceService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns this node's STOMP session events into presence batches. Connects and disconnects only mark the user;
+ * every {@code messenger.presence.coalesce-window} the marked users are compared with what was last announced
+ * (using {@link SessionRegistry} as the truth), so a burst of reconnects produces no change at all and many
+ * users coming online at once go out as one batch through the {@link BrokerBridge}. Every third of
+ * {@code messenger.presence.node-lease} the batch instead restates all users online here, which keeps this node's
+ * lease alive and lets a node that started (or missed a batch) since learn who is online. Every batch is split
+ * into chunks of {@value #BATCH_CHUNK} users, so a reconnect storm does not produce one batch too large for the
+ * membership lookup every node runs on it. Dead connections are
+ * found by the STOMP heartbeats configured in {@link WebSocketConfig}, which end in a disconnect event like any other.
+ */
+@Slf4j
+@Component
+public class PresenceTracker {
+    static final int BATCH_CHUNK = 500;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final SessionRegistry sessionRegistry;
+    private final BrokerBridge brokerBridge;
+    private final PresenceService presenceService;
+    private final Duration window;
+    private final long keepAliveNanos;
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    // Only touched by the flusher thread, and by stop() after it has ended.
+    // Users announced online, with when they came online here.
+    private final Map<UUID, Instant> announced = new HashMap<>();
+    private long lastPublished;
+    private ScheduledExecutorService flusher;
+
+    public PresenceTracker(SessionRegistry sessionRegistry,
+                           BrokerBridge brokerBridge,
+                           PresenceService presenceService,
+                           @Value("${messenger.presence.coalesce-window:1s}") Duration window,
+                           @Value("${messenger.presence.node-lease:30s}") Duration nodeLease) {
+        this.sessionRegistry = sessionRegistry;
+        this.brokerBridge = brokerBridge;
+        this.presenceService = presenceService;
+        this.window = window;
+        this.keepAliveNanos = nodeLease.toNanos() / 3;
+        this.lastPublished = System.nanoTime() - keepAliveNanos;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presence-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = window.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, 0, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Announces this node's users as offline, so other nodes need not wait for the lease to run out. */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdownNow();
+        flusher.awaitTermination(2, TimeUnit.SECONDS);
+        if (announced.isEmpty()) return;
+        Instant now = Instant.now();
+        List<PresenceChange> changes = new ArrayList<>();
+        for (UUID userId : announced.keySet()) changes.add(new PresenceChange(userId, false, now));
+        try {
+            publish(changes);
+        } catch (RuntimeException e) {
+            log.warn("could not announce {} users offline on shutdown", changes.size(), e);
+        }
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        mark(event);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        mark(event);
+    }
+
+    private void mark(AbstractSubProtocolEvent event) {
+        UUID userId = SessionRegistry.userId(event);
+        if (userId != null) dirty.add(userId);
+    }
+
+    public void flush() {
+        List<PresenceChange> changes = new ArrayList<>();
+        Instant now = Instant.now();
+        for (UUID userId : dirty) {
+            if (!dirty.remove(userId)) continue;
+            boolean online = sessionRegistry.isOnline(userId);
+            if (online ? announced.putIfAbsent(userId, now) == null : announced.remove(userId) != null) {
+                changes.add(new PresenceChange(userId, online, now));
+            }
+        }
+        long nanos = System.nanoTime();
+        if (nanos - lastPublished >= keepAliveNanos) {
+            publishFullState(changes);
+            lastPublished = nanos;
+        } else if (!changes.isEmpty()) {
+            publish(changes);
+            lastPublished = nanos;
+        }
+        presenceService.expireNodes();
+    }
+
+    /** This round's changes plus every other user online here; re-announcing a known user changes nothing. */
+    private void publishFullState(List<PresenceChange> changes) {
+        Set<UUID> changed = new HashSet<>();
+        changes.forEach(c -> changed.add(c.userId()));
+        List<PresenceChange> all = new ArrayList<>(changes);
+        announced.forEach((userId, since) -> {
+            if (!changed.contains(userId)) all.add(new PresenceChange(userId, true, since));
+        });
+        publish(all);
+    }
+
+    /** Publishes {@code changes} in batches of at most {@link #BATCH_CHUNK}; at least one, which keeps the lease. */
+    private void publish(List<PresenceChange> changes) {
+        int i = 0;
+        do {
+            List<PresenceChange> chunk = changes.subList(i, Math.min(changes.size(), i + BATCH_CHUNK));
+            brokerBridge.publish(LocalDelivery.PRESENCE_DESTINATION, new PresenceBatch(nodeId, new ArrayList<>(chunk)));
+            i += BATCH_CHUNK;
+        } while (i < changes.size());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("presence flush failed", e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.messenger.ws;
+
+import com.example.messenger.security.AuthUser;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live STOMP sessions on this node, keyed by the authenticated user id, and subscription counts per destination
+ * prefix (the destination up to its first {@code .}, so {@code /topic/chat.{id}} counts as {@code /topic/chat}).
+ * Exported as {@code messenger.ws.sessions}, {@code messenger.ws.users} and {@code messenger.ws.subscriptions}.
+ */
+@Component
+public class SessionRegistry {
+    // Prefixes come from client frames; past this many, new ones are counted as "other".
+    static final int MAX_PREFIXES = 32;
+    static final String OTHER_PREFIX = "other";
+
+    private final ConcurrentHashMap<UUID, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Map<String, String>> subscriptionsBySession = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> subscriptionsByPrefix = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+
+    public SessionRegistry(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("messenger.ws.sessions", this, SessionRegistry::sessionCount).register(registry);
+        Gauge.builder("messenger.ws.users", this, SessionRegistry::onlineUsers).register(registry);
+    }
+
+    // Runs before other session listeners, so they see the registry already updated (see PresenceTracker).
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onConnected(SessionConnectedEvent event) {
+        UUID userId = userId(event);
+        String sessionId = sessionId(event);
+        if (userId == null || sessionId == null) return;
+        sessionsByUser.compute(userId, (k, sessions) -> {
+            Set<String> live = sessions == null ? ConcurrentHashMap.newKeySet() : sessions;
+            live.add(sessionId);
+            return live;
+        });
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> subscriptions = subscriptionsBySession.remove(event.getSessionId());
+        if (subscriptions != null) subscriptions.values().forEach(prefix -> counter(prefix).decrementAndGet());
+        UUID userId = userId(event);
+        if (userId == null) return;
+        sessionsByUser.computeIfPresent(userId, (k, sessions) -> {
+            sessions.remove(event.getSessionId());
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (sessionId == null || subscriptionId == null || headers.getDestination() == null) return;
+        String prefix = track(prefix(headers.getDestination()));
+        String previous = subscriptionsBySession.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>())
+                .put(subscriptionId, prefix);
+        if (previous != null) counter(previous).decrementAndGet();
+        counter(prefix).incrementAndGet();
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> subscriptions = headers.getSessionId() == null ? null
+                : subscriptionsBySession.get(headers.getSessionId());
+        if (subscriptions == null || headers.getSubscriptionId() == null) return;
+        String prefix = subscriptions.remove(headers.getSubscriptionId());
+        if (prefix != null) counter(prefix).decrementAndGet();
+    }
+
+    public boolean isOnline(UUID userId) { return sessionsByUser.containsKey(userId); }
+
+    public Set<String> sessions(UUID userId) { return sessionsByUser.getOrDefault(userId, Set.of()); }
+
+    public int onlineUsers() { return sessionsByUser.size(); }
+
+    public int sessionCount() {
+        return sessionsByUser.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /** Live subscriptions per destination prefix, sorted by prefix. */
+    public Map<String, Integer> subscriptions() {
+        Map<String, Integer> counts = new TreeMap<>();
+        subscriptionsByPrefix.forEach((prefix, n) -> {
+            if (n.get() > 0) counts.put(prefix, n.get());
+        });
+        return counts;
+    }
+
+    static String prefix(String destination) {
+        int dot = destination.indexOf('.');
+        return dot < 0 ? destination : destination.substring(0, dot);
+    }
+
+    /** The key {@code prefix} is counted under, registering its gauge the first time. */
+    private String track(String prefix) {
+        if (subscriptionsByPrefix.containsKey(prefix)) return prefix;
+        String key = subscriptionsByPrefix.size() < MAX_PREFIXES ? prefix : OTHER_PREFIX;
+        subscriptionsByPrefix.computeIfAbsent(key, k -> {
+            AtomicInteger n = new AtomicInteger();
+            Gauge.builder("messenger.ws.subscriptions", n, AtomicInteger::get).tag("prefix", k).register(registry);
+            return n;
+        });
+        return key;
+    }
+
+    private AtomicInteger counter(String key) {
+        return subscriptionsByPrefix.get(key);
+    }
+
+    static UUID userId(AbstractSubProtocolEvent event) {
+        Principal user = event.getUser();
+        if (user instanceof Authentication auth && auth.getPrincipal() instanceof AuthUser me) return me.id();
+        return null;
+    }
+
+    private static String sessionId(AbstractSubProtocolEvent event) {
+        return SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+    }
+}
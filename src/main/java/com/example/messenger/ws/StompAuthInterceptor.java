@@ -0,0 +1,41 @@
+package com.example.messenger.ws;
+
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.security.JwtService;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+/**
+ * Authenticates a STOMP connection once, from the {@code Authorization: Bearer ...} header of its CONNECT
+ * frame. The resulting {@link AuthUser} becomes the session user for every later frame, which is what
+ * {@code /user/...} destinations resolve against. Connections without a token stay anonymous.
+ */
+@Component
+public class StompAuthInterceptor implements ChannelInterceptor {
+    private final JwtService jwtService;
+
+    public StompAuthInterceptor(JwtService jwtService) { this.jwtService = jwtService; }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.CONNECT) return message;
+        String auth = accessor.getFirstNativeHeader("Authorization");
+        if (auth != null && auth.startsWith("Bearer ")) {
+            try {
+                AuthUser user = AuthUser.from(jwtService.parse(auth.substring(7)));
+                accessor.setUser(new UsernamePasswordAuthenticationToken(user, null, AuthUser.AUTHORITIES));
+            } catch (RuntimeException e) {
+                throw new MessagingException(message, "invalid access token");
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.messenger.ws;
+
+import com.example.messenger.api.dto.TypingDtos.TypingEvent;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.ConversationMembersCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Typing indicators: a client sends an empty frame to {@code /app/conversations/{id}/typing} while the user
+ * types, and members get a {@link TypingEvent} on {@code /topic/chat.{id}}. Nothing is stored; events over the
+ * {@link TypingThrottle} rate are dropped before any other work, and membership is checked with a lock-free
+ * {@link ConversationMembersCache#peek}, which is warm for any conversation with recent messages. Events for a
+ * conversation whose members are not cached are dropped rather than loading them from the database.
+ */
+@Controller
+public class TypingController {
+    private final TypingThrottle throttle;
+    private final ConversationMembersCache membersCache;
+    private final BrokerBridge brokerBridge;
+    private final Duration ttl;
+    private final Counter relayed;
+    private final Counter throttled;
+    private final Counter uncached;
+
+    public TypingController(TypingThrottle throttle,
+                            ConversationMembersCache membersCache,
+                            BrokerBridge brokerBridge,
+                            @Value("${messenger.typing.ttl:6s}") Duration ttl,
+                            MeterRegistry registry) {
+        this.throttle = throttle;
+        this.membersCache = membersCache;
+        this.brokerBridge = brokerBridge;
+        this.ttl = ttl;
+        this.relayed = Counter.builder("messenger.typing.events").tag("outcome", "relayed").register(registry);
+        this.throttled = Counter.builder("messenger.typing.events").tag("outcome", "throttled").register(registry);
+        this.uncached = Counter.builder("messenger.typing.events").tag("outcome", "uncached").register(registry);
+    }
+
+    @MessageMapping("/conversations/{id}/typing")
+    public void typing(@DestinationVariable("id") UUID conversationId, Principal principal) {
+        if (!(principal instanceof Authentication auth) || !(auth.getPrincipal() instanceof AuthUser me)) return;
+        if (!throttle.tryAcquire(me.id(), conversationId)) {
+            throttled.increment();
+            return;
+        }
+        List<UUID> members = membersCache.peek(conversationId);
+        if (members == null) {
+            uncached.increment();
+            return;
+        }
+        if (!members.contains(me.id())) return;
+        brokerBridge.publish(LocalDelivery.CHAT_TOPIC_PREFIX + conversationId,
+                new TypingEvent(TypingEvent.TYPE, conversationId, me.id(), Instant.now().plus(ttl)));
+        relayed.increment();
+    }
+}
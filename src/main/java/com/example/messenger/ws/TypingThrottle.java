@@ -0,0 +1,61 @@
+package com.example.messenger.ws;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Admits at most one typing event per (user, conversation) every {@code messenger.typing.interval}, without
+ * locks or allocation. Pairs hash into a fixed table of {@code messenger.typing.slots} longs, each packing a
+ * 24-bit fingerprint of the pair and the 40-bit time it last passed; a slot is claimed with one CAS. A pair
+ * that collides with another in the same slot just loses its history and may get one extra event through,
+ * so the throttle never holds state beyond the table and needs no expiry.
+ */
+@Component
+public class TypingThrottle {
+    private static final int TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final long intervalMillis;
+    private final long base = System.nanoTime();
+
+    public TypingThrottle(@Value("${messenger.typing.slots:65536}") int slots,
+                          @Value("${messenger.typing.interval:3s}") Duration interval) {
+        if (Integer.bitCount(slots) != 1) throw new IllegalArgumentException("messenger.typing.slots must be a power of two");
+        this.slots = new AtomicLongArray(slots);
+        this.mask = slots - 1;
+        this.intervalMillis = interval.toMillis();
+    }
+
+    public boolean tryAcquire(UUID userId, UUID conversationId) {
+        return tryAcquire(userId, conversationId, (System.nanoTime() - base) / 1_000_000);
+    }
+
+    /** As {@link #tryAcquire(UUID, UUID)}, at {@code now} milliseconds on a caller-supplied monotonic clock. */
+    public boolean tryAcquire(UUID userId, UUID conversationId, long now) {
+        long h = mix(userId.getMostSignificantBits() ^ Long.rotateLeft(userId.getLeastSignificantBits(), 17)
+                ^ Long.rotateLeft(conversationId.getMostSignificantBits(), 31) ^ conversationId.getLeastSignificantBits());
+        int slot = (int) h & mask;
+        long fingerprint = h >>> TIME_BITS;
+        // +1 keeps an occupied slot from ever reading as the empty value 0.
+        long time = (now + 1) & TIME_MASK;
+        long current = slots.get(slot);
+        if (current != 0 && current >>> TIME_BITS == fingerprint
+                && ((time - (current & TIME_MASK)) & TIME_MASK) < intervalMillis) {
+            return false;
+        }
+        // Losing the race means another event for this slot just went through.
+        return slots.compareAndSet(slot, current, fingerprint << TIME_BITS | time);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -1,15 +1,58 @@
 
 package com.example.messenger.ws;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.time.Duration;
+
+/**
+ * STOMP over {@code /ws}. The inbound and outbound client channels run on executors of
+ * {@code messenger.ws.channel.pool-size} threads, virtual ones when {@code spring.threads.virtual.enabled}
+ * (default size then 256, as blocking in a handler no longer ties up a carrier thread), and export
+ * {@code messenger.ws.channel.queued} and {@code messenger.ws.channel.active} per channel. Each session's
+ * outbound frames go through {@link OutboundFlowControl}.
+ */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    private final StompAuthInterceptor stompAuthInterceptor;
+    private final OutboundFlowControl outboundFlowControl;
+    private final TaskScheduler heartbeatScheduler;
+    private final Duration heartbeat;
+    private final boolean virtualThreads;
+    private final int channelPoolSize;
+    private final MeterRegistry registry;
+
+    public WebSocketConfig(StompAuthInterceptor stompAuthInterceptor,
+                           OutboundFlowControl outboundFlowControl,
+                           @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler heartbeatScheduler,
+                           @Value("${messenger.ws.heartbeat:10s}") Duration heartbeat,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                           @Value("${messenger.ws.channel.pool-size:0}") int channelPoolSize,
+                           MeterRegistry registry) {
+        this.stompAuthInterceptor = stompAuthInterceptor;
+        this.outboundFlowControl = outboundFlowControl;
+        this.heartbeatScheduler = heartbeatScheduler;
+        this.heartbeat = heartbeat;
+        this.virtualThreads = virtualThreads;
+        this.channelPoolSize = channelPoolSize > 0 ? channelPoolSize
+                : virtualThreads ? 256 : Runtime.getRuntime().availableProcessors() * 2;
+        this.registry = registry;
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // Add allowed origins - replace with your actual frontend URL
@@ -23,9 +66,45 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     }
 
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendBufferSizeLimit(Math.toIntExact(outboundFlowControl.bufferLimit()))
+                .setSendTimeLimit(Math.toIntExact(outboundFlowControl.sendTimeLimit().toMillis()))
+                .addDecoratorFactory(outboundFlowControl);
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic", "/queue");
+        // Heartbeats both ways: a client that stops answering is disconnected, which is what takes it offline.
+        registry.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[]{heartbeat.toMillis(), heartbeat.toMillis()})
+                .setTaskScheduler(heartbeatScheduler);
         registry.setApplicationDestinationPrefixes("/app");
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompAuthInterceptor);
+        registration.taskExecutor(channelExecutor("inbound"));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(channelExecutor("outbound"));
+    }
+
+    private ThreadPoolTaskExecutor channelExecutor(String channel) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("ws-" + channel + "-");
+        // Still a bounded pool, so the queue and active gauges read the same in both modes.
+        if (virtualThreads) executor.setThreadFactory(Thread.ofVirtual().name("ws-" + channel + "-", 0).factory());
+        executor.setCorePoolSize(channelPoolSize);
+        executor.setMaxPoolSize(channelPoolSize);
+        executor.setAllowCoreThreadTimeOut(true);
+        Gauge.builder("messenger.ws.channel.queued", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .tag("channel", channel).register(registry);
+        Gauge.builder("messenger.ws.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("channel", channel).register(registry);
+        return executor;
+    }
 }
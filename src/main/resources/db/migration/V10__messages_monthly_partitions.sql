@@ -0,0 +1,50 @@
+-- Monthly range partitions on created_at. The existing heap is attached as the partition for everything
+-- before the next month boundary, so no rows are copied; MessagePartitionMaintenance creates later months
+-- ahead of time. A partitioned table's primary key has to include the partition key.
+ALTER TABLE messages RENAME TO messages_legacy;
+ALTER INDEX messages_pkey RENAME TO messages_legacy_pkey;
+ALTER INDEX idx_messages_conv_created_id RENAME TO messages_legacy_conv_created_id;
+ALTER INDEX idx_messages_conv_id RENAME TO messages_legacy_conv_id;
+ALTER INDEX idx_messages_created_id RENAME TO messages_legacy_created_id;
+
+CREATE TABLE messages (
+    id UUID NOT NULL,
+    conversation_id UUID NOT NULL REFERENCES conversations(id) ON DELETE CASCADE,
+    sender_id UUID NOT NULL REFERENCES users(id),
+    content VARCHAR(4000) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    edited_at TIMESTAMP WITH TIME ZONE,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+-- Matches the new primary key, so ATTACH adopts it instead of building one.
+CREATE UNIQUE INDEX messages_legacy_id_created ON messages_legacy (id, created_at);
+
+DO $$
+DECLARE
+    bound TIMESTAMPTZ;
+    month TIMESTAMPTZ;
+BEGIN
+    -- Month boundaries are UTC, like the ones MessagePartitionMaintenance creates.
+    PERFORM set_config('TimeZone', 'UTC', true);
+    SELECT date_trunc('month', GREATEST(now(), COALESCE(max(created_at), now()))) + INTERVAL '1 month'
+    INTO bound
+    FROM messages_legacy;
+
+    -- A validated CHECK implying the bound lets ATTACH skip its own full-table scan.
+    EXECUTE format('ALTER TABLE messages_legacy ADD CONSTRAINT messages_legacy_bound CHECK (created_at < %L)', bound);
+    EXECUTE format('ALTER TABLE messages ATTACH PARTITION messages_legacy FOR VALUES FROM (MINVALUE) TO (%L)', bound);
+    ALTER TABLE messages_legacy DROP CONSTRAINT messages_legacy_bound;
+
+    FOR i IN 0..2 LOOP
+        month := bound + make_interval(months => i);
+        EXECUTE format('CREATE TABLE messages_y%sm%s PARTITION OF messages FOR VALUES FROM (%L) TO (%L)',
+                       to_char(month, 'YYYY'), to_char(month, 'MM'),
+                       month, month + INTERVAL '1 month');
+    END LOOP;
+END $$;
+
+-- Existing indexes of messages_legacy with the same definitions are attached rather than rebuilt.
+CREATE INDEX idx_messages_conv_created_id ON messages (conversation_id, created_at, id);
+CREATE INDEX idx_messages_conv_id ON messages (conversation_id, id);
+CREATE INDEX idx_messages_created_id ON messages (created_at, id);
@@ -0,0 +1,3 @@
+-- User directory prefix search: lower(col) LIKE 'abc%' on either name. Pages are ordered by the unique username index.
+CREATE INDEX IF NOT EXISTS idx_users_username_prefix ON users (lower(username) text_pattern_ops);
+CREATE INDEX IF NOT EXISTS idx_users_display_name_prefix ON users (lower(display_name) text_pattern_ops);
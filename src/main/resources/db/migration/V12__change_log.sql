@@ -0,0 +1,15 @@
+-- Append-only change feed behind GET /api/v1/sync. Conversation-wide changes (messages) have no user_id and
+-- reach every member; per-user changes (added to a conversation, conversation deleted) carry the recipient.
+-- SyncService trims rows past the retention window, keeping the newest trimmed one as the floor marker.
+CREATE TABLE change_log (
+    seq BIGSERIAL PRIMARY KEY,
+    kind VARCHAR(32) NOT NULL,
+    conversation_id UUID NOT NULL,
+    user_id UUID,
+    message_id UUID,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_change_log_conv_seq ON change_log (conversation_id, seq) WHERE user_id IS NULL;
+CREATE INDEX idx_change_log_user_seq ON change_log (user_id, seq) WHERE user_id IS NOT NULL;
+CREATE INDEX idx_change_log_created ON change_log (created_at);
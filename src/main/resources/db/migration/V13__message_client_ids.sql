@@ -0,0 +1,14 @@
+-- Client-generated ids of recent sends, for answering retries with the original message. A unique index on
+-- messages itself would have to include the partition key created_at, which differs between an original and
+-- its retry, so uniqueness is enforced here. Rows are written in the same transaction as the message and
+-- trimmed by SendDeduplicator after messenger.send.dedup.retention.
+CREATE TABLE message_client_ids (
+    message_id UUID PRIMARY KEY,
+    conversation_id UUID NOT NULL,
+    sender_id UUID NOT NULL,
+    client_message_id UUID NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    CONSTRAINT uq_message_client_ids UNIQUE (conversation_id, sender_id, client_message_id)
+);
+
+CREATE INDEX idx_message_client_ids_created ON message_client_ids (created_at);
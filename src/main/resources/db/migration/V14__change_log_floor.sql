@@ -0,0 +1,9 @@
+-- How far back change_log is complete: SyncService raises seq to the newest row it is about to trim, so every
+-- change after it is still in the table. Replaces keeping the newest trimmed row as a marker, which read gaps
+-- in the sequence (rolled-back or cached values) as trimmed history.
+CREATE TABLE change_log_floor (
+    id INTEGER PRIMARY KEY,
+    seq BIGINT NOT NULL
+);
+
+INSERT INTO change_log_floor (id, seq) VALUES (1, 0);
@@ -0,0 +1,10 @@
+-- Read bookkeeping for UnreadCounterService. last_read_at is the created_at of last_read_message_id, so a new
+-- read position can be checked against the current one without a lookup. counted_through_at is the newest
+-- message time the member's last recount saw; coalesced increments only apply to members counted before every
+-- message they carry, so a message is never both recounted and incremented.
+ALTER TABLE conversation_members ADD COLUMN IF NOT EXISTS last_read_at TIMESTAMP WITH TIME ZONE;
+ALTER TABLE conversation_members ADD COLUMN IF NOT EXISTS counted_through_at TIMESTAMP WITH TIME ZONE;
+
+UPDATE conversation_members cm
+SET last_read_at = (SELECT m.created_at FROM messages m WHERE m.id = cm.last_read_message_id)
+WHERE cm.last_read_message_id IS NOT NULL;
@@ -0,0 +1,10 @@
+-- User directory prefix search as a plain range, lower(col) >= 'abc' AND lower(col) < 'abd', which any plan
+-- (generic prepared ones included) can run on an ordinary btree. Under byte-order "C" collation that range is
+-- exactly the set of strings starting with the prefix, so the names switch to it and the V11 LIKE indexes go.
+ALTER TABLE users ALTER COLUMN username TYPE VARCHAR(50) COLLATE "C";
+ALTER TABLE users ALTER COLUMN display_name TYPE VARCHAR(100) COLLATE "C";
+
+DROP INDEX IF EXISTS idx_users_username_prefix;
+DROP INDEX IF EXISTS idx_users_display_name_prefix;
+CREATE INDEX IF NOT EXISTS idx_users_username_lower ON users (lower(username), username);
+CREATE INDEX IF NOT EXISTS idx_users_display_name_lower ON users (lower(display_name), username);
@@ -0,0 +1,4 @@
+-- change_log.created_at is stamped by the database rather than the flushing node, so it and the settle cutoff
+-- SyncService compares it against (taken from CURRENT_TIMESTAMP) share one clock. clock_timestamp() rather than
+-- now() so a row's time is its insert, not the start of a long batch transaction.
+ALTER TABLE change_log ALTER COLUMN created_at SET DEFAULT clock_timestamp();
@@ -0,0 +1,4 @@
+-- History pages are read by (created_at, id) keyset; the id column breaks timestamp ties
+-- so the whole ORDER BY is served from one index range scan.
+CREATE INDEX IF NOT EXISTS idx_messages_conv_created_id ON messages(conversation_id, created_at, id);
+DROP INDEX IF EXISTS idx_messages_conv_created;
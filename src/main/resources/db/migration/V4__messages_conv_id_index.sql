@@ -0,0 +1,2 @@
+-- With time-ordered (UUIDv7) ids, history can be paged by id alone; see messenger.history.order-by-id.
+CREATE INDEX IF NOT EXISTS idx_messages_conv_id ON messages(conversation_id, id);
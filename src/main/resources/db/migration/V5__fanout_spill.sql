@@ -0,0 +1,7 @@
+-- NOTIFY payloads are capped at 8000 bytes; larger fan-out envelopes are parked here and
+-- referenced by id. Rows are only needed for a few seconds, so the table skips the WAL.
+CREATE UNLOGGED TABLE IF NOT EXISTS fanout_spill (
+    id UUID PRIMARY KEY,
+    body TEXT NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
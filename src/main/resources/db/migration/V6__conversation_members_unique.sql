@@ -0,0 +1,6 @@
+-- One membership row per (conversation, user). Bulk member inserts look up existing members by this key.
+DELETE FROM conversation_members a
+    USING conversation_members b
+    WHERE a.conversation_id = b.conversation_id AND a.user_id = b.user_id AND a.id > b.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_conversation_members_conv_user ON conversation_members (conversation_id, user_id);
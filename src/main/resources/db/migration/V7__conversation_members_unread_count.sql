@@ -0,0 +1,12 @@
+-- Incrementally maintained unread counter per membership (see UnreadCounterService).
+ALTER TABLE conversation_members ADD COLUMN IF NOT EXISTS unread_count INTEGER NOT NULL DEFAULT 0;
+
+-- Backfill from last_read_message_id; members who never marked anything read count every message from others.
+UPDATE conversation_members cm
+SET unread_count = (
+    SELECT count(*)
+    FROM messages m
+    WHERE m.conversation_id = cm.conversation_id
+      AND m.sender_id <> cm.user_id
+      AND (cm.last_read_message_id IS NULL OR (m.created_at, m.id) > (
+          SELECT r.created_at, r.id FROM messages r WHERE r.id = cm.last_read_message_id)));
@@ -0,0 +1,33 @@
+-- Denormalized inbox: last message and member count per conversation, last activity per membership.
+ALTER TABLE conversations
+    ADD COLUMN IF NOT EXISTS last_message_id UUID,
+    ADD COLUMN IF NOT EXISTS last_message_sender_id UUID,
+    ADD COLUMN IF NOT EXISTS last_message_preview VARCHAR(200),
+    ADD COLUMN IF NOT EXISTS last_message_at TIMESTAMP WITH TIME ZONE,
+    ADD COLUMN IF NOT EXISTS member_count INTEGER NOT NULL DEFAULT 0;
+
+UPDATE conversations c
+SET member_count = (SELECT count(*) FROM conversation_members m WHERE m.conversation_id = c.id);
+
+UPDATE conversations c
+SET last_message_id = l.id,
+    last_message_sender_id = l.sender_id,
+    last_message_preview = left(l.content, 200),
+    last_message_at = l.created_at
+FROM (SELECT DISTINCT ON (conversation_id) conversation_id, id, sender_id, content, created_at
+      FROM messages
+      ORDER BY conversation_id, created_at DESC, id DESC) l
+WHERE l.conversation_id = c.id;
+
+ALTER TABLE conversation_members ADD COLUMN IF NOT EXISTS last_activity_at TIMESTAMP WITH TIME ZONE;
+
+UPDATE conversation_members cm
+SET last_activity_at = GREATEST(cm.joined_at, COALESCE(c.last_message_at, cm.joined_at))
+FROM conversations c
+WHERE c.id = cm.conversation_id;
+
+ALTER TABLE conversation_members ALTER COLUMN last_activity_at SET NOT NULL;
+
+-- Inbox keyset: a user's memberships by (last_activity_at, conversation_id).
+CREATE INDEX IF NOT EXISTS idx_conversation_members_inbox
+    ON conversation_members (user_id, last_activity_at, conversation_id);
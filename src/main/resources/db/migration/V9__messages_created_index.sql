@@ -0,0 +1,2 @@
+-- Lets the embedded search index catch up on messages after a restart with keyset range scans.
+CREATE INDEX IF NOT EXISTS idx_messages_created_id ON messages (created_at, id);
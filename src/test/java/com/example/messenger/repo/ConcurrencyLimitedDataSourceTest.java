@@ -0,0 +1,65 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.configs.ConcurrencyLimitedDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ConcurrencyLimitedDataSource Tests")
+class ConcurrencyLimitedDataSourceTest {
+
+    @Mock
+    private DataSource target;
+
+    @Mock
+    private Connection connection;
+
+    private ConcurrencyLimitedDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(target.getConnection()).thenReturn(connection);
+        dataSource = new ConcurrencyLimitedDataSource(target, 2, Duration.ofMillis(50));
+    }
+
+    @Test
+    @DisplayName("Should time out once every permit is held and admit again after a close")
+    void testGetConnection_LimitsOpenConnections() throws Exception {
+        // Given
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+
+        // When / Then
+        assertThatThrownBy(() -> dataSource.getConnection()).isInstanceOf(SQLTransientConnectionException.class);
+        first.close();
+        assertThat(dataSource.getConnection()).isNotNull();
+        verify(connection).close();
+    }
+
+    @Test
+    @DisplayName("Should return a permit only once per connection")
+    void testClose_ReleasesOnce() throws Exception {
+        // Given
+        Connection con = dataSource.getConnection();
+
+        // When
+        con.close();
+        con.close();
+
+        // Then
+        assertThat(dataSource.inUse()).isZero();
+    }
+}
@@ -4,8 +4,9 @@ import com.example.messenger.api.ConversationController;
 import com.example.messenger.api.dto.ConversationDtos;
 import com.example.messenger.domain.Conversation;
 import com.example.messenger.domain.ConversationMember;
-import com.example.messenger.repo.UserRepository;
+import com.example.messenger.security.AuthUser;
 import com.example.messenger.service.ConversationService;
+import com.example.messenger.service.UnreadCounterService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -15,13 +16,11 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.security.core.userdetails.User;
 
 import java.time.Instant;
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -33,7 +32,7 @@ class ConversationControllerTest {
     private ConversationService conversationService;
 
     @Mock
-    private UserRepository userRepository;
+    private UnreadCounterService unreadCounters;
 
     @InjectMocks
     private ConversationController conversationController;
@@ -41,8 +40,7 @@ class ConversationControllerTest {
     @Captor
     private ArgumentCaptor<List<UUID>> memberIdsCaptor;
 
-    private User principal;
-    private com.example.messenger.domain.User domainUser;
+    private AuthUser principal;
     private UUID userId;
     private UUID conversationId;
 
@@ -51,14 +49,7 @@ class ConversationControllerTest {
         userId = UUID.randomUUID();
         conversationId = UUID.randomUUID();
         
-        principal = new User("testuser", "password", Collections.emptyList());
-        
-        domainUser = new com.example.messenger.domain.User();
-        domainUser.setId(userId);
-        domainUser.setUsername("testuser");
-        domainUser.setDisplayName("Test User");
-        domainUser.setPasswordHash("hashed");
-        domainUser.setCreatedAt(Instant.now());
+        principal = new AuthUser(userId, "testuser");
     }
 
     @Test
@@ -71,7 +62,6 @@ class ConversationControllerTest {
         
         Conversation mockConversation = createConversation(conversationId, true);
         
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(domainUser));
         when(conversationService.create(eq(true), anyList())).thenReturn(mockConversation);
 
         // When
@@ -82,7 +72,6 @@ class ConversationControllerTest {
         assertThat(response.id()).isEqualTo(conversationId);
         assertThat(response.direct()).isTrue();
         
-        verify(userRepository, times(1)).findByUsername("testuser");
         verify(conversationService, times(1)).create(eq(true), memberIdsCaptor.capture());
         
         List<UUID> capturedMemberIds = memberIdsCaptor.getValue();
@@ -99,7 +88,6 @@ class ConversationControllerTest {
         
         Conversation mockConversation = createConversation(conversationId, false);
         
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(domainUser));
         when(conversationService.create(eq(false), anyList())).thenReturn(mockConversation);
 
         // When
@@ -122,7 +110,6 @@ class ConversationControllerTest {
         
         Conversation mockConversation = createConversation(conversationId, true);
         
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(domainUser));
         when(conversationService.create(eq(true), anyList())).thenReturn(mockConversation);
 
         // When
@@ -146,7 +133,6 @@ class ConversationControllerTest {
         
         Conversation mockConversation = createConversation(conversationId, false);
         
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(domainUser));
         when(conversationService.create(eq(false), anyList())).thenReturn(mockConversation);
 
         // When
@@ -162,23 +148,6 @@ class ConversationControllerTest {
         assertThat(capturedMemberIds).contains(userId, member2, member3);
     }
 
-    @Test
-    @DisplayName("Should throw exception when user not found")
-    void testCreate_WhenUserNotFound_ShouldThrowException() {
-        // Given
-        ConversationDtos.CreateConversationRequest request = 
-                new ConversationDtos.CreateConversationRequest(true, List.of(UUID.randomUUID()));
-        
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.empty());
-
-        // When & Then
-        assertThatThrownBy(() -> conversationController.create(request, principal))
-                .isInstanceOf(NoSuchElementException.class);
-        
-        verify(userRepository, times(1)).findByUsername("testuser");
-        verify(conversationService, never()).create(anyBoolean(), anyList());
-    }
-
     @Test
     @DisplayName("Should list all conversations for user")
     void testMyConversations_WhenUserHasConversations_ShouldReturnMemberships() {
@@ -187,7 +156,6 @@ class ConversationControllerTest {
         ConversationMember member2 = createConversationMember(UUID.randomUUID(), userId);
         List<ConversationMember> memberships = Arrays.asList(member1, member2);
         
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(domainUser));
         when(conversationService.listMemberships(userId)).thenReturn(memberships);
 
         // When
@@ -198,7 +166,6 @@ class ConversationControllerTest {
         assertThat(result).hasSize(2);
         assertThat(result).isEqualTo(memberships);
         
-        verify(userRepository, times(1)).findByUsername("testuser");
         verify(conversationService, times(1)).listMemberships(userId);
     }
 
@@ -206,7 +173,6 @@ class ConversationControllerTest {
     @DisplayName("Should return empty list when user has no conversations")
     void testMyConversations_WhenUserHasNoConversations_ShouldReturnEmptyList() {
         // Given
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(domainUser));
         when(conversationService.listMemberships(userId)).thenReturn(Collections.emptyList());
 
         // When
@@ -216,68 +182,52 @@ class ConversationControllerTest {
         assertThat(result).isNotNull();
         assertThat(result).isEmpty();
         
-        verify(userRepository, times(1)).findByUsername("testuser");
         verify(conversationService, times(1)).listMemberships(userId);
     }
 
-    @Test
-    @DisplayName("Should throw exception when listing conversations for non-existent user")
-    void testMyConversations_WhenUserNotFound_ShouldThrowException() {
-        // Given
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.empty());
-
-        // When & Then
-        assertThatThrownBy(() -> conversationController.myConversations(principal))
-                .isInstanceOf(NoSuchElementException.class);
-        
-        verify(userRepository, times(1)).findByUsername("testuser");
-        verify(conversationService, never()).listMemberships(any());
-    }
-
     @Test
     @DisplayName("Should delete conversation successfully")
     void testDelete_WhenConversationExists_ShouldDeleteConversation() {
         // Given
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(domainUser));
         doNothing().when(conversationService).delete(conversationId);
 
         // When
-        conversationController.delete(conversationId, principal);
+        conversationController.delete(conversationId);
 
         // Then
-        verify(userRepository, times(1)).findByUsername("testuser");
         verify(conversationService, times(1)).delete(conversationId);
     }
 
-    @Test
-    @DisplayName("Should throw exception when deleting conversation for non-existent user")
-    void testDelete_WhenUserNotFound_ShouldThrowException() {
-        // Given
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.empty());
-
-        // When & Then
-        assertThatThrownBy(() -> conversationController.delete(conversationId, principal))
-                .isInstanceOf(NoSuchElementException.class);
-        
-        verify(userRepository, times(1)).findByUsername("testuser");
-        verify(conversationService, never()).delete(any());
-    }
-
     @Test
     @DisplayName("Should handle delete for non-existent conversation")
     void testDelete_WhenConversationDoesNotExist_ShouldCallService() {
         // Given
         UUID nonExistentId = UUID.randomUUID();
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(domainUser));
         doNothing().when(conversationService).delete(nonExistentId);
 
         // When
-        conversationController.delete(nonExistentId, principal);
+        conversationController.delete(nonExistentId);
 
         // Then
         verify(conversationService, times(1)).delete(nonExistentId);
     }
 
+    @Test
+    @DisplayName("Should mark a message read for the current user")
+    void testMarkRead_ShouldReturnRemainingUnread() {
+        // Given
+        UUID messageId = UUID.randomUUID();
+        when(unreadCounters.markRead(conversationId, userId, messageId)).thenReturn(2);
+
+        // When
+        ConversationDtos.UnreadResponse response = conversationController.markRead(conversationId,
+                new ConversationDtos.MarkReadRequest(messageId), principal);
+
+        // Then
+        assertThat(response.conversationId()).isEqualTo(conversationId);
+        assertThat(response.unreadCount()).isEqualTo(2);
+    }
+
     private Conversation createConversation(UUID id, boolean isDirect) {
         Conversation conversation = new Conversation();
         conversation.setId(id);
@@ -0,0 +1,71 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.service.ConversationMemberWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ConversationMemberWriter Tests")
+class ConversationMemberWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ConversationMemberWriter writer;
+    private UUID conversationId;
+
+    @BeforeEach
+    void setUp() {
+        writer = new ConversationMemberWriter(jdbcTemplate, 2, false);
+        conversationId = UUID.randomUUID();
+    }
+
+    @Test
+    @DisplayName("Should insert in chunks and skip ids that are already members")
+    @SuppressWarnings("unchecked")
+    void testInsert_ChunksAndSkipsExisting() {
+        // Given
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID c = UUID.randomUUID();
+        // The second chunk sees the first one's rows, as it would inside the same transaction.
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), any(Object[].class)))
+                .thenReturn(List.of(), List.of(a));
+
+        // When
+        int inserted = writer.insert(conversationId, List.of(a, b, a, c).iterator());
+
+        // Then
+        assertThat(inserted).isEqualTo(3);
+        ArgumentCaptor<Collection<UUID>> batches = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), batches.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertThat(batches.getAllValues()).containsExactly(List.of(a, b), List.of(c));
+    }
+
+    @Test
+    @DisplayName("Should not write anything for an empty member list")
+    void testInsert_Empty() {
+        // When
+        int inserted = writer.insert(conversationId, List.<UUID>of().iterator());
+
+        // Then
+        assertThat(inserted).isZero();
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
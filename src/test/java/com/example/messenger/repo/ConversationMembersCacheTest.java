@@ -0,0 +1,102 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.domain.ConversationMember;
+import com.example.messenger.service.ConversationMembersCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ConversationMembersCache Tests")
+class ConversationMembersCacheTest {
+
+    @Mock
+    private ConversationMemberRepository memberRepository;
+
+    private UUID conversationId;
+    private UUID alice;
+
+    @BeforeEach
+    void setUp() {
+        conversationId = UUID.randomUUID();
+        alice = UUID.randomUUID();
+        ConversationMember m = new ConversationMember();
+        m.setConversationId(conversationId);
+        m.setUserId(alice);
+        when(memberRepository.findByConversationId(conversationId)).thenReturn(List.of(m));
+    }
+
+    @Test
+    @DisplayName("Should serve repeated reads from the cache until invalidated")
+    void testMembers_CachedUntilInvalidated() {
+        // Given
+        ConversationMembersCache cache = new ConversationMembersCache(memberRepository, 10, Duration.ofHours(1));
+
+        // When
+        cache.members(conversationId);
+        cache.members(conversationId);
+        cache.invalidate(conversationId);
+        List<UUID> members = cache.members(conversationId);
+
+        // Then
+        assertThat(members).containsExactly(alice);
+        verify(memberRepository, times(2)).findByConversationId(conversationId);
+    }
+
+    @Test
+    @DisplayName("Should reload an entry older than the TTL")
+    void testMembers_ExpiresAfterTtl() {
+        // Given
+        ConversationMembersCache cache = new ConversationMembersCache(memberRepository, 10, Duration.ZERO);
+
+        // When
+        cache.members(conversationId);
+        cache.members(conversationId);
+
+        // Then
+        verify(memberRepository, times(2)).findByConversationId(conversationId);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should peek only at cached members, never loading them")
+    void testPeek_NeverLoads() {
+        // Given
+        ConversationMembersCache cache = new ConversationMembersCache(memberRepository, 10, Duration.ofHours(1));
+
+        // When / Then
+        assertThat(cache.peek(conversationId)).isNull();
+        verifyNoInteractions(memberRepository);
+        cache.members(conversationId);
+        assertThat(cache.peek(conversationId)).containsExactly(alice);
+        cache.invalidate(conversationId);
+        assertThat(cache.peek(conversationId)).isNull();
+        verify(memberRepository, times(1)).findByConversationId(conversationId);
+    }
+
+    @Test
+    @DisplayName("Should stop peeking at an entry evicted from the LRU")
+    void testPeek_FollowsEviction() {
+        // Given
+        ConversationMembersCache cache = new ConversationMembersCache(memberRepository, 1, Duration.ofHours(1));
+        UUID other = UUID.randomUUID();
+        cache.members(conversationId);
+
+        // When
+        cache.members(other);
+
+        // Then
+        assertThat(cache.peek(conversationId)).isNull();
+        assertThat(cache.peek(other)).isEmpty();
+    }
+}
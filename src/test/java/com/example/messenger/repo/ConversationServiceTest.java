@@ -5,7 +5,15 @@ import com.example.messenger.domain.Conversation;
 import com.example.messenger.domain.ConversationMember;
 import com.example.messenger.repo.ConversationMemberRepository;
 import com.example.messenger.repo.ConversationRepository;
+import com.example.messenger.service.ConversationMemberWriter;
+import com.example.messenger.service.ConversationMembersCache;
 import com.example.messenger.service.ConversationService;
+import com.example.messenger.service.MessageTailCache;
+import com.example.messenger.service.SyncService;
+import com.example.messenger.ws.BrokerBridge;
+import com.example.messenger.ws.LocalDelivery;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -14,15 +22,22 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.access.AccessDeniedException;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,6 +50,24 @@ class ConversationServiceTest {
     @Mock
     private ConversationMemberRepository memberRepository;
 
+    @Mock
+    private MessageTailCache tailCache;
+
+    @Mock
+    private ConversationMembersCache membersCache;
+
+    @Mock
+    private ConversationMemberWriter memberWriter;
+
+    @Mock
+    private SyncService syncService;
+
+    @Mock
+    private BrokerBridge brokerBridge;
+
+    @Spy
+    private MeterRegistry registry = new SimpleMeterRegistry();
+
     @InjectMocks
     private ConversationService conversationService;
 
@@ -42,7 +75,7 @@ class ConversationServiceTest {
     private ArgumentCaptor<Conversation> conversationCaptor;
 
     @Captor
-    private ArgumentCaptor<ConversationMember> memberCaptor;
+    private ArgumentCaptor<Iterator<UUID>> memberIdsCaptor;
 
     private UUID userId1;
     private UUID userId2;
@@ -62,8 +95,7 @@ class ConversationServiceTest {
         List<UUID> memberIds = Arrays.asList(userId1, userId2);
         Conversation mockConversation = createConversation(conversationId, true);
         
-        when(conversationRepository.save(any(Conversation.class))).thenReturn(mockConversation);
-        when(memberRepository.save(any(ConversationMember.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(conversationRepository.saveAndFlush(any(Conversation.class))).thenReturn(mockConversation);
 
         // When
         Conversation result = conversationService.create(true, memberIds);
@@ -73,28 +105,23 @@ class ConversationServiceTest {
         assertThat(result.getId()).isEqualTo(conversationId);
         assertThat(result.isDirect()).isTrue();
 
-        verify(conversationRepository, times(1)).save(conversationCaptor.capture());
+        verify(conversationRepository, times(1)).saveAndFlush(conversationCaptor.capture());
         Conversation savedConversation = conversationCaptor.getValue();
         assertThat(savedConversation.isDirect()).isTrue();
 
-        verify(memberRepository, times(2)).save(memberCaptor.capture());
-        List<ConversationMember> savedMembers = memberCaptor.getAllValues();
-        assertThat(savedMembers).hasSize(2);
-        assertThat(savedMembers).extracting(ConversationMember::getUserId)
-                .containsExactlyInAnyOrder(userId1, userId2);
-        assertThat(savedMembers).extracting(ConversationMember::getConversationId)
-                .containsOnly(conversationId);
+        assertThat(insertedMembers()).containsExactly(userId1, userId2);
+        verify(memberRepository, never()).save(any(ConversationMember.class));
     }
 
     @Test
     @DisplayName("Should create group conversation with all members")
     void testCreate_WhenGroupConversation_ShouldCreateConversationAndMembers() {
         // Given
-        List<UUID> memberIds = Arrays.asList(userId1, userId2, UUID.randomUUID());
+        UUID userId3 = UUID.randomUUID();
+        List<UUID> memberIds = Arrays.asList(userId1, userId2, userId3);
         Conversation mockConversation = createConversation(conversationId, false);
         
-        when(conversationRepository.save(any(Conversation.class))).thenReturn(mockConversation);
-        when(memberRepository.save(any(ConversationMember.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(conversationRepository.saveAndFlush(any(Conversation.class))).thenReturn(mockConversation);
 
         // When
         Conversation result = conversationService.create(false, memberIds);
@@ -103,8 +130,10 @@ class ConversationServiceTest {
         assertThat(result).isNotNull();
         assertThat(result.isDirect()).isFalse();
         
-        verify(conversationRepository, times(1)).save(any(Conversation.class));
-        verify(memberRepository, times(3)).save(any(ConversationMember.class));
+        verify(conversationRepository, times(1)).saveAndFlush(any(Conversation.class));
+        assertThat(insertedMembers()).containsExactly(userId1, userId2, userId3);
+        verify(brokerBridge).publish(LocalDelivery.MEMBERS_DESTINATION, conversationId);
+        verify(brokerBridge).publish(LocalDelivery.INBOXES_DESTINATION, List.of(userId1, userId2, userId3));
     }
 
     @Test
@@ -114,20 +143,15 @@ class ConversationServiceTest {
         List<UUID> memberIds = List.of(userId1);
         Conversation mockConversation = createConversation(conversationId, true);
         
-        when(conversationRepository.save(any(Conversation.class))).thenReturn(mockConversation);
-        when(memberRepository.save(any(ConversationMember.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(conversationRepository.saveAndFlush(any(Conversation.class))).thenReturn(mockConversation);
 
         // When
         Conversation result = conversationService.create(true, memberIds);
 
         // Then
         assertThat(result).isNotNull();
-        verify(conversationRepository, times(1)).save(any(Conversation.class));
-        verify(memberRepository, times(1)).save(memberCaptor.capture());
-        
-        ConversationMember savedMember = memberCaptor.getValue();
-        assertThat(savedMember.getUserId()).isEqualTo(userId1);
-        assertThat(savedMember.getConversationId()).isEqualTo(conversationId);
+        verify(conversationRepository, times(1)).saveAndFlush(any(Conversation.class));
+        assertThat(insertedMembers()).containsExactly(userId1);
     }
 
     @Test
@@ -137,15 +161,74 @@ class ConversationServiceTest {
         List<UUID> memberIds = List.of();
         Conversation mockConversation = createConversation(conversationId, false);
         
-        when(conversationRepository.save(any(Conversation.class))).thenReturn(mockConversation);
+        when(conversationRepository.saveAndFlush(any(Conversation.class))).thenReturn(mockConversation);
 
         // When
         Conversation result = conversationService.create(false, memberIds);
 
         // Then
         assertThat(result).isNotNull();
-        verify(conversationRepository, times(1)).save(any(Conversation.class));
-        verify(memberRepository, never()).save(any(ConversationMember.class));
+        verify(conversationRepository, times(1)).saveAndFlush(any(Conversation.class));
+        assertThat(insertedMembers()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should add members on behalf of an existing member")
+    void testAddMembers_WhenCallerIsMember_ShouldInsertAndInvalidate() {
+        // Given
+        when(memberRepository.existsByConversationIdAndUserId(conversationId, userId1)).thenReturn(true);
+        when(memberWriter.insert(eq(conversationId), any(), any())).thenAnswer(invocation -> {
+            Iterator<UUID> ids = invocation.getArgument(1);
+            Consumer<UUID> inserted = invocation.getArgument(2);
+            int n = 0;
+            for (; ids.hasNext(); n++) inserted.accept(ids.next());
+            return n;
+        });
+
+        // When
+        int added = conversationService.addMembers(conversationId, userId1, List.of(userId2).iterator());
+
+        // Then
+        assertThat(added).isEqualTo(1);
+        verify(brokerBridge).publish(LocalDelivery.MEMBERS_DESTINATION, conversationId);
+        verify(brokerBridge).publish(LocalDelivery.INBOXES_DESTINATION, List.of(userId2));
+        verify(syncService).recordMemberAdded(conversationId, userId2);
+    }
+
+    @Test
+    @DisplayName("Should record sync entries only for members actually inserted")
+    void testAddMembers_WhenSomeAreMembersAlready_ShouldRecordOnlyInserted() {
+        // Given
+        UUID userId3 = UUID.randomUUID();
+        when(memberRepository.existsByConversationIdAndUserId(conversationId, userId1)).thenReturn(true);
+        when(memberWriter.insert(eq(conversationId), any(), any())).thenAnswer(invocation -> {
+            Iterator<UUID> ids = invocation.getArgument(1);
+            Consumer<UUID> inserted = invocation.getArgument(2);
+            ids.forEachRemaining(id -> {
+                if (!id.equals(userId2)) inserted.accept(id);
+            });
+            return 1;
+        });
+
+        // When
+        conversationService.addMembers(conversationId, userId1, List.of(userId2, userId3).iterator());
+
+        // Then
+        verify(syncService).recordMemberAdded(conversationId, userId3);
+        verify(syncService, never()).recordMemberAdded(conversationId, userId2);
+        verify(brokerBridge).publish(LocalDelivery.INBOXES_DESTINATION, List.of(userId3));
+    }
+
+    @Test
+    @DisplayName("Should refuse to add members for a non-member")
+    void testAddMembers_WhenCallerIsNotMember_ShouldThrow() {
+        // Given
+        when(memberRepository.existsByConversationIdAndUserId(conversationId, userId1)).thenReturn(false);
+
+        // When / Then
+        assertThatThrownBy(() -> conversationService.addMembers(conversationId, userId1, List.of(userId2).iterator()))
+                .isInstanceOf(AccessDeniedException.class);
+        verifyNoInteractions(memberWriter);
     }
 
     @Test
@@ -203,6 +286,17 @@ class ConversationServiceTest {
         inOrder.verify(conversationRepository).deleteById(conversationId);
     }
 
+    @Test
+    @DisplayName("Should drop cached state of a deleted conversation")
+    void testDelete_ShouldInvalidateTailCache() {
+        // When
+        conversationService.delete(conversationId);
+
+        // Then
+        verify(tailCache, times(1)).invalidate(conversationId);
+        verify(brokerBridge, times(1)).publish(LocalDelivery.MEMBERS_DESTINATION, conversationId);
+    }
+
     @Test
     @DisplayName("Should handle delete when conversation has no members")
     void testDelete_WhenConversationHasNoMembers_ShouldStillDeleteConversation() {
@@ -225,16 +319,22 @@ class ConversationServiceTest {
         List<UUID> memberIds = List.of(userId1);
         Conversation mockConversation = createConversation(conversationId, true);
         
-        when(conversationRepository.save(any(Conversation.class))).thenReturn(mockConversation);
-        when(memberRepository.save(any(ConversationMember.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(conversationRepository.saveAndFlush(any(Conversation.class))).thenReturn(mockConversation);
 
         // When
         conversationService.create(true, memberIds);
 
         // Then
-        var inOrder = inOrder(conversationRepository, memberRepository);
-        inOrder.verify(conversationRepository).save(any(Conversation.class));
-        inOrder.verify(memberRepository).save(any(ConversationMember.class));
+        var inOrder = inOrder(conversationRepository, memberWriter);
+        inOrder.verify(conversationRepository).saveAndFlush(any(Conversation.class));
+        inOrder.verify(memberWriter).insert(eq(conversationId), any(), any());
+    }
+
+    private List<UUID> insertedMembers() {
+        verify(memberWriter, times(1)).insert(eq(conversationId), memberIdsCaptor.capture(), any());
+        List<UUID> ids = new ArrayList<>();
+        memberIdsCaptor.getValue().forEachRemaining(ids::add);
+        return ids;
     }
 
     private Conversation createConversation(UUID id, boolean isDirect) {
@@ -0,0 +1,59 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.ws.EnvelopeFilter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("EnvelopeFilter Tests")
+class EnvelopeFilterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Counter duplicates;
+    private EnvelopeFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        duplicates = new SimpleMeterRegistry().counter("duplicates");
+        filter = new EnvelopeFilter("self", 2, duplicates);
+    }
+
+    @Test
+    @DisplayName("Should skip envelopes this node published itself")
+    void testAccept_SkipsOwnNode() {
+        assertThat(filter.accept(envelope("a", "self"))).isFalse();
+        assertThat(duplicates.count()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should deliver an envelope id once and count repeats as duplicates")
+    void testAccept_DropsDuplicates() {
+        assertThat(filter.accept(envelope("a", "other"))).isTrue();
+        assertThat(filter.accept(envelope("a", "other"))).isFalse();
+        assertThat(filter.accept(envelope("b", "other"))).isTrue();
+        assertThat(duplicates.count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Should only remember the most recent ids")
+    void testAccept_ForgetsOldestIds() {
+        // Given
+        filter.accept(envelope("a", "other"));
+        filter.accept(envelope("b", "other"));
+        filter.accept(envelope("c", "other"));
+
+        // When / Then
+        assertThat(filter.accept(envelope("a", "other"))).isTrue();
+        assertThat(filter.accept(envelope("c", "other"))).isFalse();
+    }
+
+    private JsonNode envelope(String id, String origin) {
+        return objectMapper.createObjectNode().put("id", id).put("origin", origin).put("destination", "/topic/x");
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.archive.MessageArchive;
+import com.example.messenger.domain.ConversationMember;
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.ExportService;
+import com.example.messenger.service.MessageCursor;
+import com.example.messenger.service.RateLimitedException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@DisplayName("ExportService Tests")
+class ExportServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ConversationMemberRepository memberRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private ExportService exportService;
+    private UUID conversationId;
+    private UUID userId;
+    private final List<Message> messages = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        exportService = new ExportService(memberRepository, new MessageArchive(dir, 10, registry), objectMapper,
+                new JdbcTemplate(dataSource), transactionManager, 2, 4, 1, Duration.ofMinutes(1), registry);
+        conversationId = UUID.randomUUID();
+        userId = UUID.randomUUID();
+
+        ConversationMember member = new ConversationMember();
+        member.setConversationId(conversationId);
+        member.setUserId(userId);
+        member.setJoinedAt(Instant.now());
+        entityManager.persist(member);
+        Instant start = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        for (int i = 0; i < 5; i++) {
+            Message m = new Message();
+            m.setConversationId(conversationId);
+            m.setSenderId(userId);
+            m.setContent("message " + i);
+            m.setCreatedAt(start.plusSeconds(i));
+            entityManager.persist(m);
+            messages.add(m);
+        }
+        entityManager.flush();
+    }
+
+    private List<String> export(MessageCursor from) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.open(conversationId, userId, from).writeTo(out);
+        List<String> contents = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) contents.add(objectMapper.readTree(line).get("content").asText());
+        }
+        return contents;
+    }
+
+    @Test
+    @DisplayName("Should stream every message as one JSON line, oldest first")
+    void testExport_StreamsNdjson() throws Exception {
+        // When
+        List<String> contents = export(null);
+
+        // Then
+        assertThat(contents).containsExactly("message 0", "message 1", "message 2", "message 3", "message 4");
+    }
+
+    @Test
+    @DisplayName("Should resume after a given position")
+    void testExport_ResumesAfterPosition() throws Exception {
+        // When
+        List<String> contents = export(MessageCursor.of(messages.get(2)));
+
+        // Then
+        assertThat(contents).containsExactly("message 3", "message 4");
+    }
+
+    @Test
+    @DisplayName("Should refuse non-members and users over their hourly quota")
+    void testOpen_EnforcesAccessAndQuota() throws Exception {
+        // Given
+        export(null);
+
+        // When / Then
+        assertThatThrownBy(() -> exportService.open(conversationId, userId, null))
+                .isInstanceOf(RateLimitedException.class);
+        assertThatThrownBy(() -> exportService.open(conversationId, UUID.randomUUID(), null))
+                .isInstanceOf(AccessDeniedException.class);
+    }
+
+    @Test
+    @DisplayName("Should give back the user's slot and the node's permit when an export is released unwritten")
+    void testRelease_WithoutWriting() {
+        // Given: one export at a time on this node
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ExportService single = new ExportService(memberRepository, new MessageArchive(dir, 10, registry), objectMapper,
+                new JdbcTemplate(dataSource), transactionManager, 2, 1, 10, Duration.ofMinutes(1), registry);
+        ExportService.Export abandoned = single.open(conversationId, userId, null);
+
+        // When
+        abandoned.release();
+        abandoned.release();
+
+        // Then
+        ExportService.Export next = single.open(conversationId, userId, null);
+        assertThatThrownBy(() -> abandoned.writeTo(new ByteArrayOutputStream()))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> single.open(conversationId, userId, null))
+                .isInstanceOf(RateLimitedException.class);
+        next.release();
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.api.dto.InboxDtos.InboxEntry;
+import com.example.messenger.api.dto.InboxDtos.InboxPage;
+import com.example.messenger.api.dto.InboxDtos.LastMessage;
+import com.example.messenger.api.dto.InboxDtos.MemberSummary;
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+import com.example.messenger.service.ConversationMembersCache;
+import com.example.messenger.service.InboxCache;
+import com.example.messenger.service.InboxService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("InboxService Tests")
+class InboxServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ConversationMembersCache membersCache;
+
+    private InboxCache cache;
+    private InboxService inboxService;
+    private UUID me;
+    private UUID other;
+    private Instant base;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache = new InboxCache(3, 100, Duration.ofMinutes(1), Duration.ofMinutes(1), registry);
+        inboxService = new InboxService(jdbcTemplate, cache, membersCache, Duration.ofHours(1), registry);
+        me = UUID.randomUUID();
+        other = UUID.randomUUID();
+        base = Instant.parse("2024-01-01T00:00:00Z");
+    }
+
+    @Test
+    @DisplayName("Should load the first page once and then serve it from the cache")
+    @SuppressWarnings("unchecked")
+    void testPage_CachesFirstPage() {
+        // Given
+        InboxEntry a = entry(UUID.randomUUID(), 2);
+        InboxEntry b = entry(UUID.randomUUID(), 1);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(List.of(a, b));
+
+        // When
+        InboxPage first = inboxService.page(me, null, 2);
+        InboxPage second = inboxService.page(me, null, 2);
+
+        // Then
+        assertThat(first.conversations()).containsExactly(a, b);
+        assertThat(first.nextCursor()).isNull();
+        assertThat(second).isEqualTo(first);
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("Should move a conversation to the top of cached inboxes on a new message")
+    @SuppressWarnings("unchecked")
+    void testRecord_UpdatesCachedInbox() {
+        // Given
+        InboxEntry a = entry(UUID.randomUUID(), 2);
+        InboxEntry b = entry(UUID.randomUUID(), 1);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(List.of(a, b));
+        when(membersCache.members(b.conversationId())).thenReturn(List.of(me, other));
+        inboxService.page(me, null, 2);
+
+        // When
+        inboxService.record(new MessageResponse(UUID.randomUUID(), b.conversationId(), other, "hello",
+                base.plusSeconds(10)));
+        InboxPage page = inboxService.page(me, null, 2);
+
+        // Then
+        assertThat(page.conversations()).extracting(InboxEntry::conversationId)
+                .containsExactly(b.conversationId(), a.conversationId());
+        InboxEntry top = page.conversations().get(0);
+        assertThat(top.lastMessage().preview()).isEqualTo("hello");
+        assertThat(top.unreadCount()).isEqualTo(1);
+        assertThat(top.lastActivityAt()).isEqualTo(base.plusSeconds(10));
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("Should not cache a load that raced with a new message")
+    void testFill_DiscardsStaleLoad() {
+        // Given
+        UUID conversationId = UUID.randomUUID();
+        assertThat(cache.read(me, 2)).isNull();
+
+        // When
+        cache.onMessage(List.of(me), conversationId, new LastMessage(UUID.randomUUID(), other, "hi", base));
+        cache.fill(me, List.of(entry(conversationId, 1)), true);
+
+        // Then
+        assertThat(cache.read(me, 2)).isNull();
+    }
+
+    @Test
+    @DisplayName("Should not cache a reload until a message outside the cached page has been written behind")
+    @SuppressWarnings("unchecked")
+    void testRecord_OutsideWindowHoldsReloads() {
+        // Given: a cached page without the conversation that gets the message
+        InboxEntry a = entry(UUID.randomUUID(), 2);
+        UUID outside = UUID.randomUUID();
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(List.of(a));
+        when(membersCache.members(outside)).thenReturn(List.of(me, other));
+        inboxService.page(me, null, 2);
+
+        // When: the next reads load from tables the write-behind has not updated yet
+        inboxService.record(new MessageResponse(UUID.randomUUID(), outside, other, "hello", base.plusSeconds(10)));
+        inboxService.page(me, null, 2);
+        inboxService.page(me, null, 2);
+
+        // Then: neither stale load was cached
+        verify(jdbcTemplate, times(3)).query(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("Should coalesce messages per conversation into one flush")
+    @SuppressWarnings("unchecked")
+    void testFlush_KeepsNewestPerConversation() {
+        // Given
+        UUID conversationId = UUID.randomUUID();
+        inboxService.record(new MessageResponse(UUID.randomUUID(), conversationId, other, "first", base));
+        inboxService.record(new MessageResponse(UUID.randomUUID(), conversationId, other, "second", base.plusSeconds(1)));
+
+        // When
+        inboxService.flush();
+
+        // Then
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), argThat((Collection<?> c) -> c.size() == 1),
+                eq(1), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    private InboxEntry entry(UUID conversationId, int secondsAfterBase) {
+        Instant at = base.plusSeconds(secondsAfterBase);
+        return new InboxEntry(conversationId, false, new MemberSummary(2, List.of(other)),
+                new LastMessage(UUID.randomUUID(), other, "m" + secondsAfterBase, at), 0, at);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.security.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("JwtService Tests")
+class JwtServiceTest {
+
+    private SimpleMeterRegistry registry;
+    private JwtService jwtService;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        jwtService = new JwtService(2, registry);
+    }
+
+    @Test
+    @DisplayName("Should verify a token once and serve repeats from the cache")
+    void testParse_CachesVerifiedToken() {
+        // Given
+        UUID userId = UUID.randomUUID();
+        String token = jwtService.generateAccessToken(userId, "alice");
+
+        // When
+        Claims first = jwtService.parse(token);
+        Claims second = jwtService.parse(token);
+
+        // Then
+        assertThat(second.getSubject()).isEqualTo(userId.toString());
+        assertThat(second).isSameAs(first);
+        assertThat(registry.get("messenger.jwt.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(registry.get("messenger.jwt.verify").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should reject a tampered token without caching it")
+    void testParse_TamperedToken() {
+        // Given
+        String token = jwtService.generateAccessToken(UUID.randomUUID(), "alice");
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        // When / Then
+        assertThatThrownBy(() -> jwtService.parse(tampered)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> jwtService.parse(tampered)).isInstanceOf(JwtException.class);
+        assertThat(jwtService.cachedTokens()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should keep at most max-entries tokens")
+    void testParse_Bounded() {
+        // When
+        for (int i = 0; i < 5; i++) {
+            jwtService.parse(jwtService.generateAccessToken(UUID.randomUUID(), "user" + i));
+        }
+
+        // Then
+        assertThat(jwtService.cachedTokens()).isEqualTo(2);
+    }
+}
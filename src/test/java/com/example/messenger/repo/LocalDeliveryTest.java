@@ -0,0 +1,119 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.service.ConversationMembersCache;
+import com.example.messenger.service.InboxService;
+import com.example.messenger.service.PresenceService;
+import com.example.messenger.ws.LocalDelivery;
+import com.example.messenger.ws.SessionRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("LocalDelivery Tests")
+class LocalDeliveryTest {
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Mock
+    private ConversationMembersCache membersCache;
+
+    @Mock
+    private SessionRegistry sessionRegistry;
+
+    @Mock
+    private PresenceService presenceService;
+
+    @Mock
+    private InboxService inboxService;
+
+    private UUID conversationId;
+    private UUID online;
+    private UUID offline;
+
+    @BeforeEach
+    void setUp() {
+        conversationId = UUID.randomUUID();
+        online = UUID.randomUUID();
+        offline = UUID.randomUUID();
+    }
+
+    @Test
+    @DisplayName("Should deliver to the topic only in topic mode")
+    void testDeliver_TopicMode() {
+        LocalDelivery delivery = new LocalDelivery(messagingTemplate, membersCache, sessionRegistry, presenceService, inboxService, new ObjectMapper(), "topic");
+
+        delivery.deliver("/topic/chat." + conversationId, Map.of("content", "hi"));
+
+        verify(messagingTemplate).convertAndSend("/topic/chat." + conversationId, (Object) Map.of("content", "hi"));
+        verifyNoInteractions(membersCache);
+    }
+
+    @Test
+    @DisplayName("Should deliver to the user queue of online members only in user mode")
+    void testDeliver_UserMode() {
+        LocalDelivery delivery = new LocalDelivery(messagingTemplate, membersCache, sessionRegistry, presenceService, inboxService, new ObjectMapper(), "user");
+        when(membersCache.members(conversationId)).thenReturn(List.of(online, offline));
+        when(sessionRegistry.isOnline(online)).thenReturn(true);
+        when(sessionRegistry.isOnline(offline)).thenReturn(false);
+        when(messagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+
+        delivery.deliver("/topic/chat." + conversationId, Map.of("content", "hi"));
+
+        verify(messagingTemplate).send(eq("/user/" + online + "/queue/messages"), any(Message.class));
+        verify(messagingTemplate, times(1)).send(anyString(), any(Message.class));
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    @DisplayName("Should leave non-conversation destinations on the topic in user mode")
+    void testDeliver_UserModeOtherDestination() {
+        LocalDelivery delivery = new LocalDelivery(messagingTemplate, membersCache, sessionRegistry, presenceService, inboxService, new ObjectMapper(), "user");
+
+        delivery.deliver("/topic/announcements", "hello");
+
+        verify(messagingTemplate).convertAndSend("/topic/announcements", (Object) "hello");
+        verifyNoInteractions(membersCache);
+    }
+
+    @Test
+    @DisplayName("Should drop cached members on a membership change from this or another node")
+    void testDeliver_MembersInvalidation() {
+        LocalDelivery delivery = new LocalDelivery(messagingTemplate, membersCache, sessionRegistry, presenceService, inboxService, new ObjectMapper(), "topic");
+
+        delivery.deliver(LocalDelivery.MEMBERS_DESTINATION, conversationId);
+        delivery.deliver(LocalDelivery.MEMBERS_DESTINATION, new ObjectMapper().valueToTree(conversationId));
+
+        verify(membersCache, times(2)).invalidate(conversationId);
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    @DisplayName("Should drop the cached inboxes listed by this or another node")
+    void testDeliver_InboxesInvalidation() {
+        LocalDelivery delivery = new LocalDelivery(messagingTemplate, membersCache, sessionRegistry, presenceService, inboxService, new ObjectMapper(), "topic");
+
+        delivery.deliver(LocalDelivery.INBOXES_DESTINATION, List.of(online));
+        delivery.deliver(LocalDelivery.INBOXES_DESTINATION, new ObjectMapper().valueToTree(List.of(online, offline)));
+
+        verify(inboxService, times(2)).invalidate(online);
+        verify(inboxService).invalidate(offline);
+        verifyNoInteractions(messagingTemplate);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.archive.MessageArchive;
+import com.example.messenger.archive.MessageArchiver;
+import com.example.messenger.domain.Conversation;
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.MessageCursor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@DisplayName("MessageArchiver Tests")
+class MessageArchiverTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbcTemplate;
+    private MessageArchive archive;
+    private MessageArchiver archiver;
+    private UUID conversationId;
+    private final List<Message> old = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        archive = new MessageArchive(dir, 10, registry);
+        archiver = new MessageArchiver(archive, jdbcTemplate, Duration.ofDays(30), Duration.ofDays(1), 2, registry);
+
+        Conversation conversation = new Conversation();
+        entityManager.persist(conversation);
+        conversationId = conversation.getId();
+        Instant start = Instant.now().minus(60, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MICROS);
+        for (int i = 0; i < 5; i++) old.add(persist("old " + i, start.plusSeconds(i)));
+        persist("recent", Instant.now().truncatedTo(ChronoUnit.MICROS));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private Message persist(String content, Instant createdAt) {
+        Message m = new Message();
+        m.setConversationId(conversationId);
+        m.setSenderId(UUID.randomUUID());
+        m.setContent(content);
+        m.setCreatedAt(createdAt);
+        entityManager.persist(m);
+        return m;
+    }
+
+    private Integer rows() {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM messages", Integer.class);
+    }
+
+    @Test
+    @DisplayName("Should move messages older than the cutoff into the archive")
+    void testRun_MovesColdMessages() {
+        // When
+        long moved = archiver.run();
+
+        // Then
+        assertThat(moved).isEqualTo(5);
+        assertThat(rows()).isEqualTo(1);
+        assertThat(archive.bytes()).isPositive();
+        assertThat(archive.before(conversationId, null, 10)).extracting(Message::getContent)
+                .containsExactly("old 4", "old 3", "old 2", "old 1", "old 0");
+        assertThat(archive.archivedUntil(conversationId)).isEqualTo(MessageCursor.of(old.get(4)));
+    }
+
+    @Test
+    @DisplayName("Should page through archived messages from a cursor in either direction")
+    void testArchive_PagesFromCursor() {
+        // Given
+        archiver.run();
+        MessageCursor middle = MessageCursor.of(old.get(2));
+
+        // When / Then
+        assertThat(archive.covers(conversationId, middle)).isTrue();
+        assertThat(archive.before(conversationId, middle, 1)).extracting(Message::getContent).containsExactly("old 1");
+        assertThat(archive.after(conversationId, middle, 5)).extracting(Message::getContent).containsExactly("old 3", "old 4");
+        assertThat(archive.find(conversationId, middle)).map(Message::getContent).contains("old 2");
+    }
+
+    @Test
+    @DisplayName("Should append a new segment on the next pass without archiving anything twice")
+    void testRun_AppendsSegments() {
+        // Given
+        archiver.run();
+        Message later = persist("old 5", old.get(4).getCreatedAt().plusSeconds(1));
+        entityManager.flush();
+
+        // When
+        long moved = archiver.run();
+
+        // Then
+        assertThat(moved).isEqualTo(1);
+        assertThat(archiver.run()).isZero();
+        assertThat(archive.before(conversationId, null, 3)).extracting(Message::getId)
+                .containsExactly(later.getId(), old.get(4).getId(), old.get(3).getId());
+    }
+}
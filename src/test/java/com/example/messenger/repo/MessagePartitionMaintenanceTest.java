@@ -0,0 +1,60 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.service.MessagePartitionMaintenance;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("MessagePartitionMaintenance Tests")
+class MessagePartitionMaintenanceTest {
+
+    @Test
+    @DisplayName("Should start at the month the latest partition's exclusive upper bound falls in")
+    void testFirstMissing_FromHorizon() {
+        // When / Then
+        assertThat(MessagePartitionMaintenance.firstMissing(OffsetDateTime.parse("2024-03-01T00:00:00Z"), YearMonth.of(2024, 1)))
+                .isEqualTo(YearMonth.of(2024, 3));
+        // The same instant written in another offset still lands on the UTC month.
+        assertThat(MessagePartitionMaintenance.firstMissing(OffsetDateTime.parse("2024-02-29T19:00:00-05:00"), YearMonth.of(2024, 1)))
+                .isEqualTo(YearMonth.of(2024, 3));
+    }
+
+    @Test
+    @DisplayName("Should start at the current month when there are no partitions yet")
+    void testFirstMissing_NoHorizon() {
+        // When / Then
+        assertThat(MessagePartitionMaintenance.firstMissing(null, YearMonth.of(2024, 7))).isEqualTo(YearMonth.of(2024, 7));
+    }
+
+    @Test
+    @DisplayName("Should name partitions by zero-padded year and month and read the month back")
+    void testName_RoundTrips() {
+        // Given
+        YearMonth month = YearMonth.of(2024, 2);
+
+        // When
+        String name = MessagePartitionMaintenance.name(month);
+
+        // Then
+        assertThat(name).isEqualTo("messages_y2024m02");
+        assertThat(MessagePartitionMaintenance.month(name)).isEqualTo(month);
+        assertThat(MessagePartitionMaintenance.month("messages_legacy")).isNull();
+        assertThat(MessagePartitionMaintenance.month("messages_y2024m02_old")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should bound a partition from the first of its month to the first of the next, in UTC")
+    void testCreateSql_Bounds() {
+        // When / Then
+        assertThat(MessagePartitionMaintenance.createSql(YearMonth.of(2024, 2))).isEqualTo(
+                "CREATE TABLE IF NOT EXISTS messages_y2024m02 PARTITION OF messages"
+                        + " FOR VALUES FROM ('2024-02-01 00:00:00+00') TO ('2024-03-01 00:00:00+00')");
+        assertThat(MessagePartitionMaintenance.createSql(YearMonth.of(2024, 12))).isEqualTo(
+                "CREATE TABLE IF NOT EXISTS messages_y2024m12 PARTITION OF messages"
+                        + " FOR VALUES FROM ('2024-12-01 00:00:00+00') TO ('2025-01-01 00:00:00+00')");
+    }
+}
@@ -1,20 +1,32 @@
 
 package com.example.messenger.repo;
 
+import com.example.messenger.api.dto.MessageDtos;
+import com.example.messenger.archive.MessageArchive;
 import com.example.messenger.domain.Message;
 import com.example.messenger.repo.MessageRepository;
+import com.example.messenger.search.SearchIndex;
+import com.example.messenger.service.InboxService;
+import com.example.messenger.service.MessageCursor;
 import com.example.messenger.service.MessageService;
+import com.example.messenger.service.MessageTailCache;
+import com.example.messenger.service.MessageWriteBatcher;
+import com.example.messenger.service.SendDeduplicator;
+import com.example.messenger.service.SyncService;
+import com.example.messenger.service.UnreadCounterService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.PageRequest;
 
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
@@ -31,7 +43,30 @@ class MessageServiceTest {
     @Mock
     private MessageRepository messageRepository;
 
-    @InjectMocks
+    @Mock
+    private MessageTailCache tailCache;
+
+    @Mock
+    private MessageWriteBatcher writeBatcher;
+
+    @Mock
+    private UnreadCounterService unreadCounters;
+
+    @Mock
+    private InboxService inboxService;
+
+    @Mock
+    private SearchIndex searchIndex;
+
+    @Mock
+    private MessageArchive archive;
+
+    @Mock
+    private SyncService syncService;
+
+    @Mock
+    private SendDeduplicator deduplicator;
+
     private MessageService messageService;
 
     @Captor
@@ -43,6 +78,7 @@ class MessageServiceTest {
 
     @BeforeEach
     void setUp() {
+        messageService = new MessageService(messageRepository, tailCache, writeBatcher, unreadCounters, inboxService, searchIndex, archive, syncService, deduplicator, false, new SimpleMeterRegistry());
         conversationId = UUID.randomUUID();
         senderId = UUID.randomUUID();
         content = "Test message content";
@@ -92,6 +128,82 @@ class MessageServiceTest {
         assertEquals(content, capturedMessage.getContent());
     }
 
+    @Test
+    @DisplayName("Should route sends through the write batcher when batching is enabled")
+    void testSend_Batched() {
+        // Arrange
+        when(writeBatcher.isEnabled()).thenReturn(true);
+        when(writeBatcher.write(any(Message.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Message result = messageService.send(conversationId, senderId, content);
+
+        // Assert
+        assertEquals(content, result.getContent());
+        verify(writeBatcher, times(1)).write(any(Message.class));
+        verify(messageRepository, never()).save(any(Message.class));
+        verify(tailCache, times(1)).append(any());
+    }
+
+    @Test
+    @DisplayName("Should answer a retry remembered in memory without writing or indexing it again")
+    void testSend_DuplicateFromMemory() {
+        // Arrange
+        UUID clientMessageId = UUID.randomUUID();
+        MessageDtos.MessageResponse original = new MessageDtos.MessageResponse(UUID.randomUUID(), conversationId, senderId,
+                content, Instant.now());
+        when(deduplicator.recent(conversationId, senderId, clientMessageId)).thenReturn(original);
+
+        // Act
+        MessageService.Sent sent = messageService.send(conversationId, senderId, content, clientMessageId);
+
+        // Assert
+        assertTrue(sent.duplicate());
+        assertEquals(original, sent.message());
+        verify(deduplicator, never()).save(any(), any());
+        verifyNoInteractions(messageRepository, tailCache, unreadCounters, inboxService, searchIndex, syncService);
+    }
+
+    @Test
+    @DisplayName("Should answer a retry that lost on the unique index with the stored original")
+    void testSend_DuplicateFromDatabase() {
+        // Arrange
+        UUID clientMessageId = UUID.randomUUID();
+        MessageDtos.MessageResponse original = new MessageDtos.MessageResponse(UUID.randomUUID(), conversationId, senderId,
+                content, Instant.now());
+        when(deduplicator.save(any(Message.class), eq(clientMessageId))).thenThrow(new DuplicateKeyException("claimed"));
+        when(deduplicator.stored(conversationId, senderId, clientMessageId)).thenReturn(original);
+
+        // Act
+        MessageService.Sent sent = messageService.send(conversationId, senderId, content, clientMessageId);
+
+        // Assert
+        assertTrue(sent.duplicate());
+        assertEquals(original, sent.message());
+        verifyNoInteractions(tailCache, unreadCounters, inboxService, searchIndex, syncService);
+    }
+
+    @Test
+    @DisplayName("Should claim the client id on a first send and remember the response")
+    void testSend_FirstWithClientId() {
+        // Arrange
+        UUID clientMessageId = UUID.randomUUID();
+        when(deduplicator.save(any(Message.class), eq(clientMessageId))).thenAnswer(invocation -> {
+            Message m = invocation.getArgument(0);
+            m.pre();
+            return m;
+        });
+
+        // Act
+        MessageService.Sent sent = messageService.send(conversationId, senderId, content, clientMessageId);
+
+        // Assert
+        assertFalse(sent.duplicate());
+        verify(deduplicator).remember(clientMessageId, sent.message());
+        verify(messageRepository, never()).save(any(Message.class));
+        verify(tailCache, times(1)).append(sent.message());
+    }
+
     @Test
     @DisplayName("Should send message with empty content")
     void testSend_EmptyContent() {
@@ -123,21 +235,25 @@ class MessageServiceTest {
         Message message3 = createMessage(conversationId, senderId, "Message 3");
         List<Message> expectedMessages = Arrays.asList(message1, message2, message3);
 
-        when(messageRepository.findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
+        when(messageRepository.findNewest(
+                eq(conversationId),
+                any(Instant.class),
                 any(PageRequest.class)
         )).thenReturn(expectedMessages);
 
         // Act
-        List<Message> result = messageService.history(conversationId, limit);
+        MessageDtos.MessagePage result = messageService.history(conversationId, null, null, limit);
 
         // Assert
         assertNotNull(result);
-        assertEquals(3, result.size());
-        assertEquals(expectedMessages, result);
-        verify(messageRepository, times(1)).findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
-                eq(PageRequest.of(0, limit))
+        assertEquals(3, result.messages().size());
+        assertEquals(message1.getId(), result.messages().get(0).id());
+        assertNull(result.nextCursor());
+        assertEquals(MessageCursor.of(message1).encode(), result.prevCursor());
+        verify(messageRepository, times(1)).findNewest(
+                eq(conversationId),
+                any(Instant.class),
+                eq(PageRequest.of(0, limit + 1))
         );
     }
 
@@ -148,99 +264,247 @@ class MessageServiceTest {
         int limit = 10;
         List<Message> emptyList = List.of();
 
-        when(messageRepository.findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
+        when(messageRepository.findNewest(
+                eq(conversationId),
+                any(Instant.class),
                 any(PageRequest.class)
         )).thenReturn(emptyList);
 
         // Act
-        List<Message> result = messageService.history(conversationId, limit);
+        MessageDtos.MessagePage result = messageService.history(conversationId, null, null, limit);
 
         // Assert
         assertNotNull(result);
-        assertTrue(result.isEmpty());
-        verify(messageRepository, times(1)).findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
-                eq(PageRequest.of(0, limit))
-        );
+        assertTrue(result.messages().isEmpty());
+        assertNull(result.nextCursor());
+        assertNull(result.prevCursor());
     }
 
     @Test
-    @DisplayName("Should retrieve history with custom limit")
-    void testHistory_CustomLimit() {
+    @DisplayName("Should expose an older-page cursor when more rows exist than the limit")
+    void testHistory_HasOlderPage() {
+        // Arrange
+        int limit = 2;
+        Message newest = createMessage(conversationId, senderId, "Message 3");
+        Message middle = createMessage(conversationId, senderId, "Message 2");
+        Message oldest = createMessage(conversationId, senderId, "Message 1");
+
+        when(messageRepository.findNewest(
+                eq(conversationId),
+                any(Instant.class),
+                any(PageRequest.class)
+        )).thenReturn(Arrays.asList(newest, middle, oldest));
+
+        // Act
+        MessageDtos.MessagePage result = messageService.history(conversationId, null, null, limit);
+
+        // Assert
+        assertEquals(2, result.messages().size());
+        assertEquals(MessageCursor.of(middle).encode(), result.nextCursor());
+        assertEquals(MessageCursor.of(newest).encode(), result.prevCursor());
+    }
+
+    @Test
+    @DisplayName("Should page back from a before cursor")
+    void testHistory_BeforeCursor() {
         // Arrange
         int limit = 5;
-        List<Message> expectedMessages = Arrays.asList(
-                createMessage(conversationId, senderId, "Message 1"),
-                createMessage(conversationId, senderId, "Message 2")
-        );
+        Message anchor = createMessage(conversationId, senderId, "Anchor");
+        Message older = createMessage(conversationId, senderId, "Older");
+        String before = MessageCursor.of(anchor).encode();
 
-        when(messageRepository.findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
-                any(PageRequest.class)
-        )).thenReturn(expectedMessages);
+        when(messageRepository.findPageBefore(
+                eq(conversationId), any(Instant.class), eq(anchor.getCreatedAt()), eq(anchor.getId()), any(PageRequest.class)
+        )).thenReturn(List.of(older));
 
         // Act
-        List<Message> result = messageService.history(conversationId, limit);
+        MessageDtos.MessagePage result = messageService.history(conversationId, before, null, limit);
 
         // Assert
-        assertNotNull(result);
-        assertEquals(2, result.size());
-        verify(messageRepository, times(1)).findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
-                eq(PageRequest.of(0, limit))
-        );
+        assertEquals(1, result.messages().size());
+        assertEquals("Older", result.messages().get(0).content());
+        assertNull(result.nextCursor());
+        verify(messageRepository, never()).findNewest(any(), any(), any());
     }
 
     @Test
-    @DisplayName("Should handle limit of 1")
-    void testHistory_LimitOne() {
+    @DisplayName("Should fill the page from below the recent window when the window comes up short")
+    void testHistory_FallsBackBelowWindow() {
         // Arrange
-        int limit = 1;
-        Message message = createMessage(conversationId, senderId, "Single message");
-        List<Message> expectedMessages = List.of(message);
+        int limit = 2;
+        Message recent = createMessage(conversationId, senderId, "Recent");
+        Message old = createMessage(conversationId, senderId, "Old");
+        Message older = createMessage(conversationId, senderId, "Older");
 
-        when(messageRepository.findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
-                any(PageRequest.class)
-        )).thenReturn(expectedMessages);
+        when(messageRepository.findNewest(eq(conversationId), any(Instant.class), any(PageRequest.class)))
+                .thenReturn(List.of(recent));
+        when(messageRepository.findPageUntil(eq(conversationId), any(Instant.class), any(PageRequest.class)))
+                .thenReturn(List.of(old, older));
 
         // Act
-        List<Message> result = messageService.history(conversationId, limit);
+        MessageDtos.MessagePage result = messageService.history(conversationId, null, null, limit);
 
         // Assert
-        assertNotNull(result);
-        assertEquals(1, result.size());
-        assertEquals("Single message", result.get(0).getContent());
-        verify(messageRepository, times(1)).findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
-                eq(PageRequest.of(0, 1))
-        );
+        assertEquals(List.of("Recent", "Old"), result.messages().stream().map(MessageDtos.MessageResponse::content).toList());
+        assertEquals(MessageCursor.of(old).encode(), result.nextCursor());
+        ArgumentCaptor<Instant> from = ArgumentCaptor.forClass(Instant.class);
+        ArgumentCaptor<Instant> until = ArgumentCaptor.forClass(Instant.class);
+        verify(messageRepository).findNewest(eq(conversationId), from.capture(), eq(PageRequest.of(0, limit + 1)));
+        verify(messageRepository).findPageUntil(eq(conversationId), until.capture(), eq(PageRequest.of(0, limit)));
+        assertEquals(from.getValue(), until.getValue());
+    }
+
+    @Test
+    @DisplayName("Should read a sparse conversation in two queries, with or without a cursor")
+    void testHistory_SparseConversationQueryCount() {
+        // Arrange
+        Message anchor = createMessage(conversationId, senderId, "Anchor");
+        when(messageRepository.findNewest(any(), any(), any())).thenReturn(List.of());
+        when(messageRepository.findPageBefore(any(), any(), any(), any(), any())).thenReturn(List.of());
+        when(messageRepository.findPageUntil(any(), any(), any())).thenReturn(List.of());
+
+        // Act
+        messageService.history(conversationId, null, null, 50);
+        messageService.history(conversationId, MessageCursor.of(anchor).encode(), null, 50);
+
+        // Assert
+        verify(messageRepository, times(1)).findNewest(any(), any(), any());
+        verify(messageRepository, times(1)).findPageBefore(any(), any(), any(), any(), any());
+        verify(messageRepository, times(2)).findPageUntil(any(), any(), any());
+        verifyNoMoreInteractions(messageRepository);
+    }
+
+    @Test
+    @DisplayName("Should continue into the archive below the oldest row in the table")
+    void testHistory_ContinuesIntoArchive() {
+        // Arrange
+        int limit = 3;
+        Message oldestInTable = createMessage(conversationId, senderId, "Oldest in table");
+        Message archived = createMessage(conversationId, senderId, "Archived");
+
+        when(messageRepository.findNewest(eq(conversationId), any(Instant.class), any(PageRequest.class)))
+                .thenReturn(List.of(oldestInTable));
+        when(archive.before(conversationId, MessageCursor.of(oldestInTable), 3)).thenReturn(List.of(archived));
+
+        // Act
+        MessageDtos.MessagePage result = messageService.history(conversationId, null, null, limit);
+
+        // Assert
+        assertEquals(List.of("Oldest in table", "Archived"),
+                result.messages().stream().map(MessageDtos.MessageResponse::content).toList());
+        assertNull(result.nextCursor());
+    }
+
+    @Test
+    @DisplayName("Should read only the archive for a cursor inside the archived range")
+    void testHistory_CursorInArchive() {
+        // Arrange
+        Message anchor = createMessage(conversationId, senderId, "Anchor");
+        Message archived = createMessage(conversationId, senderId, "Archived");
+        MessageCursor cursor = MessageCursor.of(anchor);
+
+        when(archive.covers(conversationId, cursor)).thenReturn(true);
+        when(archive.before(conversationId, cursor, 6)).thenReturn(List.of(archived));
+
+        // Act
+        MessageDtos.MessagePage result = messageService.history(conversationId, cursor.encode(), null, 5);
+
+        // Assert
+        assertEquals("Archived", result.messages().get(0).content());
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    @DisplayName("Should return newer messages newest-first for an after cursor")
+    void testHistory_AfterCursor() {
+        // Arrange
+        int limit = 5;
+        Message anchor = createMessage(conversationId, senderId, "Anchor");
+        Message newer1 = createMessage(conversationId, senderId, "Newer 1");
+        Message newer2 = createMessage(conversationId, senderId, "Newer 2");
+
+        when(messageRepository.findPageAfter(
+                eq(conversationId), eq(anchor.getCreatedAt()), eq(anchor.getId()), any(PageRequest.class)
+        )).thenReturn(Arrays.asList(newer1, newer2));
+
+        // Act
+        MessageDtos.MessagePage result = messageService.history(conversationId, null, MessageCursor.of(anchor).encode(), limit);
+
+        // Assert
+        assertEquals(List.of("Newer 2", "Newer 1"), result.messages().stream().map(MessageDtos.MessageResponse::content).toList());
+        assertEquals(MessageCursor.of(newer2).encode(), result.prevCursor());
+        assertEquals(MessageCursor.of(newer1).encode(), result.nextCursor());
+    }
+
+    @Test
+    @DisplayName("Should reject both cursors at once")
+    void testHistory_BothCursors() {
+        String cursor = MessageCursor.of(createMessage(conversationId, senderId, "x")).encode();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> messageService.history(conversationId, cursor, cursor, 10));
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    @DisplayName("Should reject a malformed cursor")
+    void testHistory_MalformedCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> messageService.history(conversationId, "not-a-cursor", null, 10));
+    }
+
+    @Test
+    @DisplayName("Should page by id alone when time-ordered ids are enabled")
+    void testHistory_OrderById() {
+        // Arrange
+        MessageService idOrdered = new MessageService(messageRepository, tailCache, writeBatcher, unreadCounters, inboxService, searchIndex, archive, syncService, deduplicator, true, new SimpleMeterRegistry());
+        Message anchor = createMessage(conversationId, senderId, "Anchor");
+
+        when(messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(
+                eq(conversationId), eq(anchor.getId()), any(PageRequest.class)
+        )).thenReturn(List.of());
+
+        // Act
+        MessageDtos.MessagePage result = idOrdered.history(conversationId, MessageCursor.of(anchor).encode(), null, 10);
+
+        // Assert
+        assertTrue(result.messages().isEmpty());
+        verify(messageRepository, never()).findPageBefore(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should round-trip cursors including sub-second precision")
+    void testCursor_RoundTrip() {
+        MessageCursor cursor = new MessageCursor(Instant.parse("2024-05-01T10:15:30.123456Z"), UUID.randomUUID());
+
+        assertEquals(cursor, MessageCursor.decode(cursor.encode()));
     }
 
     @Test
-    @DisplayName("Should use correct PageRequest parameters")
+    @DisplayName("Should request one extra row to detect further pages")
     void testHistory_VerifyPageRequestParameters() {
         // Arrange
         int limit = 20;
         ArgumentCaptor<PageRequest> pageRequestCaptor = ArgumentCaptor.forClass(PageRequest.class);
 
-        when(messageRepository.findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
+        when(messageRepository.findNewest(
+                eq(conversationId),
+                any(Instant.class),
                 any(PageRequest.class)
         )).thenReturn(List.of());
 
         // Act
-        messageService.history(conversationId, limit);
+        messageService.history(conversationId, null, null, limit);
 
         // Assert
-        verify(messageRepository).findByConversationIdOrderByCreatedAtDesc(
-                eq(conversationId), 
+        verify(messageRepository).findNewest(
+                eq(conversationId),
+                any(Instant.class),
                 pageRequestCaptor.capture()
         );
         PageRequest capturedPageRequest = pageRequestCaptor.getValue();
         assertEquals(0, capturedPageRequest.getPageNumber());
-        assertEquals(limit, capturedPageRequest.getPageSize());
+        assertEquals(limit + 1, capturedPageRequest.getPageSize());
     }
 
     // Helper method
@@ -249,6 +513,8 @@ class MessageServiceTest {
         message.setConversationId(conversationId);
         message.setSenderId(senderId);
         message.setContent(content);
+        message.setId(UUID.randomUUID());
+        message.setCreatedAt(Instant.now());
         return message;
     }
 }
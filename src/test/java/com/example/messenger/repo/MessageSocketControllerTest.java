@@ -0,0 +1,133 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.api.dto.MessageDtos;
+import com.example.messenger.domain.Message;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.ConversationMembersCache;
+import com.example.messenger.service.MessageService;
+import com.example.messenger.ws.BrokerBridge;
+import com.example.messenger.ws.MessageSocketController;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.messaging.handler.annotation.support.AnnotationExceptionHandlerMethodResolver;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MessageSocketController Tests")
+class MessageSocketControllerTest {
+
+    @Mock
+    private MessageService messageService;
+
+    @Mock
+    private ConversationMembersCache membersCache;
+
+    @Mock
+    private BrokerBridge brokerBridge;
+
+    private MessageSocketController controller;
+    private UUID conversationId;
+    private AuthUser me;
+    private Principal principal;
+
+    @BeforeEach
+    void setUp() {
+        controller = new MessageSocketController(messageService, membersCache, brokerBridge, new SimpleMeterRegistry());
+        conversationId = UUID.randomUUID();
+        me = new AuthUser(UUID.randomUUID(), "me");
+        principal = new UsernamePasswordAuthenticationToken(me, null, AuthUser.AUTHORITIES);
+    }
+
+    @Test
+    @DisplayName("Should persist, fan out and answer with the stored id and timestamp")
+    void testSend_ReturnsReceipt() {
+        // Given
+        Message saved = new Message();
+        saved.setId(UUID.randomUUID());
+        saved.setConversationId(conversationId);
+        saved.setSenderId(me.id());
+        saved.setContent("hi");
+        saved.setCreatedAt(Instant.now());
+        when(membersCache.members(conversationId)).thenReturn(List.of(me.id()));
+        when(messageService.send(conversationId, me.id(), "hi", null))
+                .thenReturn(new MessageService.Sent(MessageDtos.MessageResponse.of(saved), false));
+
+        // When
+        MessageDtos.SendReceipt receipt = controller.send(conversationId, new MessageDtos.SendMessageRequest("hi", null), "r-1", principal);
+
+        // Then
+        assertThat(receipt).isEqualTo(new MessageDtos.SendReceipt("r-1", saved.getId(), saved.getCreatedAt()));
+        verify(brokerBridge).publish(eq("/topic/chat." + conversationId), eq(MessageDtos.MessageResponse.of(saved)));
+    }
+
+    @Test
+    @DisplayName("Should answer a retried send with the original receipt without fanning it out again")
+    void testSend_DuplicateNotPublished() {
+        // Given
+        UUID clientMessageId = UUID.randomUUID();
+        MessageDtos.MessageResponse original = new MessageDtos.MessageResponse(UUID.randomUUID(), conversationId, me.id(),
+                "hi", Instant.now());
+        when(membersCache.members(conversationId)).thenReturn(List.of(me.id()));
+        when(messageService.send(conversationId, me.id(), "hi", clientMessageId))
+                .thenReturn(new MessageService.Sent(original, true));
+
+        // When
+        MessageDtos.SendReceipt receipt = controller.send(conversationId,
+                new MessageDtos.SendMessageRequest("hi", clientMessageId), "r-2", principal);
+
+        // Then
+        assertThat(receipt).isEqualTo(new MessageDtos.SendReceipt("r-2", original.id(), original.createdAt()));
+        verify(brokerBridge, never()).publish(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("Should reject senders who are not members")
+    void testSend_RejectsNonMember() {
+        // Given
+        when(membersCache.members(conversationId)).thenReturn(List.of(UUID.randomUUID()));
+
+        // When / Then
+        assertThatThrownBy(() -> controller.send(conversationId, new MessageDtos.SendMessageRequest("hi", null), null, principal))
+                .isInstanceOf(AccessDeniedException.class);
+        verifyNoInteractions(messageService);
+        verify(brokerBridge, never()).publish(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("Should answer unexpected failures on the errors queue with the frame's receipt")
+    void testFailures_ResolveToGenericError() {
+        // Given
+        AnnotationExceptionHandlerMethodResolver resolver = new AnnotationExceptionHandlerMethodResolver(MessageSocketController.class);
+
+        // When / Then
+        for (Exception e : List.of(new RejectedExecutionException("full"), new DataAccessResourceFailureException("down"),
+                new DuplicateKeyException("dup"))) {
+            assertThat(resolver.resolveMethod(e)).extracting(Method::getName).isEqualTo("failed");
+        }
+        assertThat(resolver.resolveMethod(new AccessDeniedException("no"))).extracting(Method::getName).isEqualTo("rejected");
+        assertThat(controller.failed(new RejectedExecutionException("full"), "r-3"))
+                .isEqualTo(new MessageDtos.SendError("r-3", "message could not be sent"));
+    }
+}
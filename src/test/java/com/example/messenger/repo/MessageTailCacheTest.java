@@ -0,0 +1,125 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.api.dto.MessageDtos.MessageResponse;
+import com.example.messenger.service.MessageCursor;
+import com.example.messenger.service.MessageTailCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("MessageTailCache Tests")
+class MessageTailCacheTest {
+
+    private SimpleMeterRegistry registry;
+    private MessageTailCache cache;
+    private UUID conversationId;
+    private Instant base;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new MessageTailCache(3, 2, DataSize.ofMegabytes(1), false, registry);
+        conversationId = UUID.randomUUID();
+        base = Instant.parse("2024-01-01T00:00:00Z");
+    }
+
+    @Test
+    @DisplayName("Should miss until filled, then serve the newest page")
+    void testRead_MissThenHit() {
+        assertThat(cache.read(conversationId, null, 2)).isNull();
+
+        cache.fill(conversationId, newestFirst(message(3), message(2), message(1)), true);
+        MessageTailCache.Slice slice = cache.read(conversationId, null, 2);
+
+        assertThat(slice).isNotNull();
+        assertThat(slice.messages()).extracting(MessageResponse::content).containsExactly("m3", "m2");
+        assertThat(slice.hasOlder()).isTrue();
+        assertThat(registry.get("messenger.history.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("messenger.history.cache.requests").tag("result", "miss").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Should keep write-through appends made while the tail was loading")
+    void testAppend_DuringLoad() {
+        cache.read(conversationId, null, 3);
+        cache.append(message(4));
+
+        cache.fill(conversationId, newestFirst(message(3), message(2)), true);
+        MessageTailCache.Slice slice = cache.read(conversationId, null, 3);
+
+        assertThat(slice.messages()).extracting(MessageResponse::content).containsExactly("m4", "m3", "m2");
+        assertThat(slice.hasOlder()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should not answer past the window of a partial tail")
+    void testRead_PartialTailBeyondWindow() {
+        cache.read(conversationId, null, 3);
+        cache.fill(conversationId, newestFirst(message(8), message(7), message(6), message(5)), false);
+
+        MessageCursor before = MessageCursor.of(message(7));
+
+        assertThat(cache.read(conversationId, before, 1)).isNotNull();
+        assertThat(cache.read(conversationId, before, 2)).isNull();
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently used conversation")
+    void testEviction_Lru() {
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        cache.read(conversationId, null, 1);
+        cache.read(second, null, 1);
+        cache.read(conversationId, null, 1);
+        cache.read(third, null, 1);
+
+        assertThat(cache.conversations()).isEqualTo(2);
+        assertThat(registry.get("messenger.history.cache.evictions").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Should drop an invalidated conversation")
+    void testInvalidate() {
+        cache.read(conversationId, null, 1);
+        cache.fill(conversationId, newestFirst(message(1)), true);
+
+        cache.invalidate(conversationId);
+
+        assertThat(cache.conversations()).isZero();
+        assertThat(registry.get("messenger.history.cache.bytes").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should drop every tail and its bytes on clear, so later appends are not kept with a hole")
+    void testClear() {
+        UUID second = UUID.randomUUID();
+        cache.read(conversationId, null, 1);
+        cache.fill(conversationId, newestFirst(message(1)), true);
+        cache.read(second, null, 1);
+
+        cache.clear();
+        cache.append(message(2));
+
+        assertThat(cache.conversations()).isZero();
+        assertThat(cache.read(conversationId, null, 1)).isNull();
+        assertThat(registry.get("messenger.history.cache.bytes").gauge().value()).isZero();
+    }
+
+    private MessageResponse message(int n) {
+        UUID id = new UUID(0, n);
+        return new MessageResponse(id, conversationId, UUID.randomUUID(), "m" + n, base.plusSeconds(n));
+    }
+
+    private static List<MessageResponse> newestFirst(MessageResponse... messages) {
+        return new ArrayList<>(List.of(messages));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.MessageWriteBatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MessageWriteBatcher Tests")
+class MessageWriteBatcherTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry registry;
+    private MessageWriteBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        batcher = new MessageWriteBatcher(true, 2, Duration.ofMillis(200), 100,
+                jdbcTemplate, new TransactionTemplate(transactionManager), registry);
+        batcher.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        batcher.stop();
+    }
+
+    @Test
+    @DisplayName("Should insert messages in one batch and complete every caller")
+    void testSubmit_GroupsIntoOneBatch() throws Exception {
+        // Given
+        // The batcher reuses its list, so record sizes when called rather than verifying the argument later.
+        List<Integer> sizes = new CopyOnWriteArrayList<>();
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    sizes.add(invocation.<Collection<?>>getArgument(1).size());
+                    return new int[0][];
+                });
+
+        // When
+        CompletableFuture<Message> first = batcher.submit(message());
+        CompletableFuture<Message> second = batcher.submit(message());
+
+        // Then
+        assertThat(first.get(5, TimeUnit.SECONDS).getId()).isNotNull();
+        assertThat(second.get(5, TimeUnit.SECONDS).getCreatedAt()).isNotNull();
+        assertThat(sizes).containsExactly(2);
+        assertThat(registry.get("messenger.send.batch.size").summary().totalAmount()).isEqualTo(2.0);
+    }
+
+    @Test
+    @DisplayName("Should fail only the offending message when a batch is rejected")
+    void testSubmit_IsolatesFailures() {
+        // Given
+        Message bad = message();
+        bad.setContent("bad");
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    Collection<Object> rows = invocation.getArgument(1);
+                    ParameterizedPreparedStatementSetter<Object> setter = invocation.getArgument(3);
+                    for (Object row : rows) {
+                        PreparedStatement ps = mock(PreparedStatement.class);
+                        setter.setValues(ps, row);
+                        ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+                        verify(ps).setString(eq(4), content.capture());
+                        if ("bad".equals(content.getValue())) throw new DataIntegrityViolationException("fk");
+                    }
+                    return new int[][] {{rows.size()}};
+                });
+
+        // When
+        CompletableFuture<Message> good = batcher.submit(message());
+        CompletableFuture<Message> failed = batcher.submit(bad);
+
+        // Then
+        assertThat(good.join()).isNotNull();
+        assertThatThrownBy(failed::join).hasCauseInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    private static Message message() {
+        Message m = new Message();
+        m.setConversationId(UUID.randomUUID());
+        m.setSenderId(UUID.randomUUID());
+        m.setContent("hello");
+        return m;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.ws.NotificationPacker;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("NotificationPacker Tests")
+class NotificationPackerTest {
+
+    private static final int MAX_BYTES = 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final NotificationPacker packer = new NotificationPacker(objectMapper, MAX_BYTES);
+
+    @Test
+    @DisplayName("Should pack envelopes in order into arrays within the byte limit")
+    void testPack_SplitsAtLimit() throws Exception {
+        // Given
+        List<ObjectNode> envelopes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) envelopes.add(envelope("e" + i, "x".repeat(20)));
+
+        // When
+        List<String> payloads = packer.pack(envelopes, (e, json) -> { throw new AssertionError("nothing to spill"); });
+
+        // Then
+        assertThat(payloads).hasSizeGreaterThan(1);
+        List<String> ids = new ArrayList<>();
+        for (String payload : payloads) {
+            assertThat(payload.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(MAX_BYTES);
+            for (JsonNode e : objectMapper.readTree(payload)) ids.add(e.get("id").asText());
+        }
+        assertThat(ids).hasSize(20).startsWith("e0", "e1").endsWith("e19");
+    }
+
+    @Test
+    @DisplayName("Should measure the limit in UTF-8 bytes, not characters")
+    void testPack_CountsMultiByteCharacters() throws Exception {
+        // Given
+        List<ObjectNode> envelopes = List.of(envelope("a", "é".repeat(15)), envelope("b", "é".repeat(15)));
+
+        // When
+        List<String> payloads = packer.pack(envelopes, (e, json) -> { throw new AssertionError("nothing to spill"); });
+
+        // Then
+        assertThat(payloads).hasSize(2);
+        payloads.forEach(p -> assertThat(p.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(MAX_BYTES));
+    }
+
+    @Test
+    @DisplayName("Should spill an envelope too large for a notification and send its reference instead")
+    void testPack_SpillsOversizeEnvelope() throws Exception {
+        // Given
+        List<String> spilled = new ArrayList<>();
+        List<ObjectNode> envelopes = List.of(envelope("small", "hi"), envelope("big", "x".repeat(500)));
+
+        // When
+        List<String> payloads = packer.pack(envelopes, (e, json) -> {
+            spilled.add(e.get("id").asText());
+            return objectMapper.writeValueAsString(objectMapper.createObjectNode()
+                    .put("id", e.get("id").asText()).put("spill", true));
+        });
+
+        // Then
+        assertThat(spilled).containsExactly("big");
+        assertThat(payloads).singleElement().satisfies(p -> {
+            JsonNode array = objectMapper.readTree(p);
+            assertThat(array).hasSize(2);
+            assertThat(array.get(1).get("spill").asBoolean()).isTrue();
+        });
+    }
+
+    @Test
+    @DisplayName("Should produce no payload for no envelopes")
+    void testPack_Empty() throws Exception {
+        assertThat(packer.pack(List.of(), (e, json) -> json)).isEmpty();
+    }
+
+    private ObjectNode envelope(String id, String content) {
+        ObjectNode envelope = objectMapper.createObjectNode()
+                .put("id", id)
+                .put("origin", "node")
+                .put("destination", "/topic/chat.1");
+        envelope.putObject("payload").put("content", content);
+        return envelope;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.ws.OutboundFlowControl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("OutboundFlowControl Tests")
+class OutboundFlowControlTest {
+
+    @Mock
+    private WebSocketSession raw;
+
+    @Mock
+    private WebSocketHandler handler;
+
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private OutboundFlowControl flowControl;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        flowControl = new OutboundFlowControl(DataSize.ofBytes(100), Duration.ofMillis(200),
+                List.of("/topic/ticker"), List.of(), new SimpleMeterRegistry());
+        when(raw.getId()).thenReturn("s1");
+        // The client stalls on the first frame until the test lets it go.
+        doAnswer(inv -> {
+            unblock.await();
+            return null;
+        }).when(raw).sendMessage(any());
+        flowControl.decorate(handler).afterConnectionEstablished(raw);
+        ArgumentCaptor<WebSocketSession> decorated = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(handler).afterConnectionEstablished(decorated.capture());
+        session = decorated.getValue();
+    }
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        flowControl.stop();
+    }
+
+    private static TextMessage frame(String destination, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:1\n\n" + body + "\0");
+    }
+
+    @Test
+    @DisplayName("Should keep only the latest queued frame of a conflated destination on overflow")
+    void testSend_ConflatesOnOverflow() throws Exception {
+        // Given
+        TextMessage first = frame("/topic/ticker", "a".repeat(10));
+        TextMessage stale = frame("/topic/ticker", "b".repeat(10));
+        TextMessage latest = frame("/topic/ticker", "c".repeat(10));
+        session.sendMessage(first);
+        verify(raw, timeout(1000)).sendMessage(first);
+
+        // When
+        session.sendMessage(stale);
+        session.sendMessage(latest);
+        unblock.countDown();
+
+        // Then
+        verify(raw, timeout(1000)).sendMessage(latest);
+        verify(raw, never()).sendMessage(stale);
+        verify(raw, never()).close(any());
+    }
+
+    @Test
+    @DisplayName("Should never drop a presence delta: overflow disconnects so the client reloads presence")
+    void testSend_PresenceDeltasAreNotConflated() throws Exception {
+        // Given: each frame names only the users that changed in its batch
+        TextMessage first = frame("/user/queue/presence", "[{\"userId\":\"a\",\"online\":true}]");
+        TextMessage second = frame("/user/queue/presence", "[{\"userId\":\"b\",\"online\":true}]");
+        TextMessage third = frame("/user/queue/presence", "[{\"userId\":\"c\",\"online\":true}]");
+        session.sendMessage(first);
+        verify(raw, timeout(1000)).sendMessage(first);
+
+        // When
+        session.sendMessage(second);
+        session.sendMessage(third);
+        unblock.countDown();
+
+        // Then: the client either gets every delta or is told to resync; it is never left missing "b"
+        ArgumentCaptor<CloseStatus> status = ArgumentCaptor.forClass(CloseStatus.class);
+        verify(raw, timeout(1000)).close(status.capture());
+        assertThat(status.getValue().getCode()).isEqualTo(CloseStatus.SESSION_NOT_RELIABLE.getCode());
+        verify(raw, never()).sendMessage(third);
+    }
+
+    @Test
+    @DisplayName("Should disconnect a session whose chat frames overflow the buffer")
+    void testSend_DisconnectsOnOverflow() throws Exception {
+        // Given
+        TextMessage first = frame("/topic/chat.1", "a".repeat(10));
+        session.sendMessage(first);
+        verify(raw, timeout(1000)).sendMessage(first);
+
+        // When
+        session.sendMessage(frame("/topic/chat.1", "b".repeat(10)));
+        session.sendMessage(frame("/topic/chat.1", "c".repeat(10)));
+
+        // Then
+        ArgumentCaptor<CloseStatus> status = ArgumentCaptor.forClass(CloseStatus.class);
+        verify(raw).close(status.capture());
+        assertThat(status.getValue().getCode()).isEqualTo(CloseStatus.SESSION_NOT_RELIABLE.getCode());
+        unblock.countDown();
+    }
+
+    @Test
+    @DisplayName("Should disconnect a stalled session even when nothing more is sent to it")
+    void testWatchdog_DisconnectsStalledIdleSession() throws Exception {
+        // Given
+        flowControl.start();
+        TextMessage first = frame("/topic/chat.1", "a".repeat(10));
+
+        // When
+        session.sendMessage(first);
+
+        // Then
+        ArgumentCaptor<CloseStatus> status = ArgumentCaptor.forClass(CloseStatus.class);
+        verify(raw, timeout(2000)).close(status.capture());
+        assertThat(status.getValue().getCode()).isEqualTo(CloseStatus.SESSION_NOT_RELIABLE.getCode());
+    }
+}
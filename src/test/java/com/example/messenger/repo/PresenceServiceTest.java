@@ -0,0 +1,162 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.api.dto.PresenceDtos.PresenceBatch;
+import com.example.messenger.api.dto.PresenceDtos.PresenceChange;
+import com.example.messenger.api.dto.PresenceDtos.UserPresence;
+import com.example.messenger.domain.ConversationMember;
+import com.example.messenger.service.ConversationMembersCache;
+import com.example.messenger.service.PresenceService;
+import com.example.messenger.ws.SessionRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("PresenceService Tests")
+class PresenceServiceTest {
+
+    @Mock
+    private ConversationMemberRepository memberRepository;
+
+    @Mock
+    private ConversationMembersCache membersCache;
+
+    @Mock
+    private SessionRegistry sessionRegistry;
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    private UUID conversationId;
+    private UUID alice;
+    private UUID bob;
+    private UUID carol;
+    private UUID watcher;
+
+    @BeforeEach
+    void setUp() {
+        conversationId = UUID.randomUUID();
+        alice = UUID.randomUUID();
+        bob = UUID.randomUUID();
+        carol = UUID.randomUUID();
+        watcher = UUID.randomUUID();
+        when(membersCache.members(conversationId)).thenReturn(List.of(alice, bob, carol, watcher));
+        when(memberRepository.findByUserIdIn(anyCollection())).thenAnswer(inv -> inv.<Collection<UUID>>getArgument(0)
+                .stream().map(this::member).toList());
+        when(sessionRegistry.isOnline(watcher)).thenReturn(true);
+        when(messagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+    }
+
+    private ConversationMember member(UUID userId) {
+        ConversationMember m = new ConversationMember();
+        m.setConversationId(conversationId);
+        m.setUserId(userId);
+        return m;
+    }
+
+    private PresenceService service(Duration nodeLease) {
+        return new PresenceService(memberRepository, membersCache, sessionRegistry, messagingTemplate, 500, nodeLease,
+                new SimpleMeterRegistry());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<UserPresence> sentToWatcher() {
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate).convertAndSend(eq("/user/" + watcher + "/queue/presence"), payload.capture());
+        return (List<UserPresence>) payload.getValue();
+    }
+
+    @Test
+    @DisplayName("Should send one message per online co-member with every change of the batch")
+    void testApply_CoalescesPerRecipient() {
+        // Given
+        PresenceService presence = service(Duration.ofSeconds(30));
+        Instant now = Instant.now();
+
+        // When
+        presence.apply(new PresenceBatch("node-1", List.of(
+                new PresenceChange(alice, true, now), new PresenceChange(bob, true, now))));
+
+        // Then
+        assertThat(sentToWatcher()).extracting(UserPresence::userId).containsExactlyInAnyOrder(alice, bob);
+        verify(messagingTemplate, times(1)).convertAndSend(anyString(), any(Object.class));
+        assertThat(presence.presence(alice).online()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should stay silent while a user remains online on another node")
+    void testApply_OnlyOverallFlipsAreBroadcast() {
+        // Given
+        PresenceService presence = service(Duration.ofSeconds(30));
+        Instant now = Instant.now();
+        presence.apply(new PresenceBatch("node-1", List.of(new PresenceChange(alice, true, now))));
+        presence.apply(new PresenceBatch("node-2", List.of(new PresenceChange(alice, true, now))));
+        clearInvocations(messagingTemplate);
+
+        // When
+        presence.apply(new PresenceBatch("node-1", List.of(new PresenceChange(alice, false, now))));
+
+        // Then
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+        assertThat(presence.presence(alice).online()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should take users of a silent node offline once its lease runs out")
+    void testExpireNodes_TakesUsersOffline() {
+        // Given
+        PresenceService presence = service(Duration.ZERO);
+        presence.apply(new PresenceBatch("node-1", List.of(new PresenceChange(carol, true, Instant.now()))));
+        clearInvocations(messagingTemplate);
+
+        // When
+        presence.expireNodes();
+
+        // Then
+        assertThat(sentToWatcher()).containsExactly(presence.presence(carol));
+        assertThat(presence.presence(carol).online()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should look up memberships of a large batch in bounded chunks")
+    @SuppressWarnings("unchecked")
+    void testApply_ChunksMembershipLookup() {
+        // Given
+        PresenceService presence = service(Duration.ofSeconds(30));
+        Instant now = Instant.now();
+        List<PresenceChange> changes = IntStream.range(0, 1200)
+                .mapToObj(i -> new PresenceChange(UUID.randomUUID(), true, now)).toList();
+
+        // When
+        presence.apply(new PresenceBatch("node-1", changes));
+
+        // Then
+        ArgumentCaptor<Collection<UUID>> lookups = ArgumentCaptor.forClass(Collection.class);
+        verify(memberRepository, times(3)).findByUserIdIn(lookups.capture());
+        assertThat(lookups.getAllValues()).extracting(Collection::size).containsExactly(500, 500, 200);
+        assertThat(sentToWatcher()).hasSize(1200);
+    }
+}
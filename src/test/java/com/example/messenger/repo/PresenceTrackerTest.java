@@ -0,0 +1,143 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.api.dto.PresenceDtos.PresenceBatch;
+import com.example.messenger.api.dto.PresenceDtos.PresenceChange;
+import com.example.messenger.security.AuthUser;
+import com.example.messenger.service.PresenceService;
+import com.example.messenger.ws.BrokerBridge;
+import com.example.messenger.ws.LocalDelivery;
+import com.example.messenger.ws.PresenceTracker;
+import com.example.messenger.ws.SessionRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PresenceTracker Tests")
+class PresenceTrackerTest {
+
+    @Mock
+    private SessionRegistry sessionRegistry;
+
+    @Mock
+    private BrokerBridge brokerBridge;
+
+    @Mock
+    private PresenceService presenceService;
+
+    private UUID alice;
+
+    @BeforeEach
+    void setUp() {
+        alice = UUID.randomUUID();
+    }
+
+    @Test
+    @DisplayName("Should announce only changes between keep-alives")
+    void testFlush_AnnouncesDeltas() {
+        // Given
+        PresenceTracker tracker = new PresenceTracker(sessionRegistry, brokerBridge, presenceService,
+                Duration.ofSeconds(1), Duration.ofHours(1));
+        tracker.flush();
+        clearInvocations(brokerBridge);
+        when(sessionRegistry.isOnline(alice)).thenReturn(true);
+
+        // When
+        tracker.onConnected(connected(alice));
+        tracker.flush();
+        tracker.flush();
+
+        // Then
+        List<PresenceBatch> batches = published(1);
+        assertThat(batches.get(0).changes()).extracting(PresenceChange::userId, PresenceChange::online)
+                .containsExactly(tuple(alice, true));
+    }
+
+    @Test
+    @DisplayName("Should restate every online user at each keep-alive, so restarted nodes catch up")
+    void testFlush_KeepAliveCarriesFullState() {
+        // Given
+        PresenceTracker tracker = new PresenceTracker(sessionRegistry, brokerBridge, presenceService,
+                Duration.ofSeconds(1), Duration.ZERO);
+        when(sessionRegistry.isOnline(alice)).thenReturn(true);
+        tracker.onConnected(connected(alice));
+        tracker.flush();
+        clearInvocations(brokerBridge);
+
+        // When
+        tracker.flush();
+
+        // Then
+        assertThat(published(1).get(0).changes()).singleElement().satisfies(c -> {
+            assertThat(c.userId()).isEqualTo(alice);
+            assertThat(c.online()).isTrue();
+        });
+    }
+
+    @Test
+    @DisplayName("Should split a large full state into several batches")
+    void testFlush_ChunksFullState() {
+        // Given
+        PresenceTracker tracker = new PresenceTracker(sessionRegistry, brokerBridge, presenceService,
+                Duration.ofSeconds(1), Duration.ZERO);
+        when(sessionRegistry.isOnline(any())).thenReturn(true);
+        IntStream.range(0, 1200).forEach(i -> tracker.onConnected(connected(UUID.randomUUID())));
+
+        // When
+        tracker.flush();
+
+        // Then
+        assertThat(published(3)).extracting(b -> b.changes().size()).containsExactly(500, 500, 200);
+    }
+
+    @Test
+    @DisplayName("Should split a large delta between keep-alives into several batches")
+    void testFlush_ChunksDeltas() {
+        // Given
+        PresenceTracker tracker = new PresenceTracker(sessionRegistry, brokerBridge, presenceService,
+                Duration.ofSeconds(1), Duration.ofHours(1));
+        tracker.flush();
+        clearInvocations(brokerBridge);
+        when(sessionRegistry.isOnline(any())).thenReturn(true);
+        IntStream.range(0, 1200).forEach(i -> tracker.onConnected(connected(UUID.randomUUID())));
+
+        // When
+        tracker.flush();
+
+        // Then
+        assertThat(published(3)).extracting(b -> b.changes().size()).containsExactly(500, 500, 200);
+    }
+
+    private List<PresenceBatch> published(int times) {
+        ArgumentCaptor<PresenceBatch> batches = ArgumentCaptor.forClass(PresenceBatch.class);
+        verify(brokerBridge, times(times)).publish(eq(LocalDelivery.PRESENCE_DESTINATION), batches.capture());
+        return batches.getAllValues();
+    }
+
+    private SessionConnectedEvent connected(UUID userId) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.CONNECTED);
+        headers.setSessionId(UUID.randomUUID().toString());
+        return new SessionConnectedEvent(this, MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()),
+                new UsernamePasswordAuthenticationToken(new AuthUser(userId, "u"), null, AuthUser.AUTHORITIES));
+    }
+}
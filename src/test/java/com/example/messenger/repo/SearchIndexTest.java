@@ -0,0 +1,116 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.search.SearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("SearchIndex Tests")
+class SearchIndexTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path dir;
+
+    private final List<SearchIndex> opened = new ArrayList<>();
+    private final UUID conversationId = UUID.randomUUID();
+    private final Instant now = Instant.parse("2024-05-01T12:00:00Z");
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (SearchIndex index : opened) index.stop();
+    }
+
+    private SearchIndex open(int mergeFactor) throws Exception {
+        SearchIndex index = new SearchIndex(dir, 10000, Duration.ofHours(1), mergeFactor, 5000000,
+                jdbcTemplate, new SimpleMeterRegistry());
+        index.start();
+        opened.add(index);
+        return index;
+    }
+
+    private List<UUID> ids(List<SearchIndex.Hit> hits) {
+        return hits.stream().map(SearchIndex.Hit::messageId).toList();
+    }
+
+    @Test
+    @DisplayName("Should match every query term within the given conversations only")
+    void testSearch_AndSemanticsAndScope() throws Exception {
+        // Given
+        SearchIndex index = open(10);
+        UUID both = UUID.randomUUID();
+        UUID onlyLunch = UUID.randomUUID();
+        UUID otherConversation = UUID.randomUUID();
+        index.add(both, conversationId, "Lunch on Friday?", now);
+        index.add(onlyLunch, conversationId, "lunch was great", now.plusSeconds(1));
+        index.add(otherConversation, UUID.randomUUID(), "lunch friday", now.plusSeconds(2));
+
+        // When
+        List<SearchIndex.Hit> hits = index.search("friday LUNCH", Set.of(conversationId), 10);
+
+        // Then
+        assertThat(ids(hits)).containsExactly(both);
+        assertThat(hits.get(0).createdAt()).isEqualTo(now);
+    }
+
+    @Test
+    @DisplayName("Should keep results across flushes and merges")
+    void testFlush_MergesSegments() throws Exception {
+        // Given
+        SearchIndex index = open(2);
+        List<UUID> expected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            UUID id = UUID.randomUUID();
+            expected.add(id);
+            index.add(id, conversationId, "release notes " + i, now.plusSeconds(i));
+            index.flush();
+        }
+
+        // When
+        List<SearchIndex.Hit> hits = index.search("release", Set.of(conversationId), 10);
+
+        // Then
+        assertThat(index.segmentCount()).isEqualTo(2);
+        assertThat(index.bufferedDocs()).isZero();
+        assertThat(ids(hits)).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(index.search("notes 2", Set.of(conversationId), 10)).extracting(SearchIndex.Hit::messageId)
+                .containsExactly(expected.get(2));
+    }
+
+    @Test
+    @DisplayName("Should reopen flushed segments after a restart")
+    void testStart_ReopensSegments() throws Exception {
+        // Given
+        SearchIndex first = open(10);
+        UUID id = UUID.randomUUID();
+        first.add(id, conversationId, "Deployment finished", now);
+        first.stop();
+        opened.remove(first);
+
+        // When
+        SearchIndex second = open(10);
+
+        // Then
+        assertThat(second.segmentCount()).isEqualTo(1);
+        assertThat(ids(second.search("deployment", Set.of(conversationId), 10))).containsExactly(id);
+    }
+}
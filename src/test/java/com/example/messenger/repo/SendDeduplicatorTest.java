@@ -0,0 +1,113 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.api.dto.MessageDtos;
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.SendDeduplicator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@DisplayName("SendDeduplicator Tests")
+class SendDeduplicatorTest {
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry registry;
+    private SendDeduplicator deduplicator;
+    private UUID conversationId;
+    private UUID senderId;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        deduplicator = new SendDeduplicator(messageRepository, new JdbcTemplate(dataSource),
+                new TransactionTemplate(transactionManager), 2, Duration.ofDays(1), Duration.ofHours(1), registry);
+        conversationId = UUID.randomUUID();
+        senderId = UUID.randomUUID();
+    }
+
+    private Message message(String content) {
+        Message m = new Message();
+        m.setConversationId(conversationId);
+        m.setSenderId(senderId);
+        m.setContent(content);
+        return m;
+    }
+
+    @Test
+    @DisplayName("Should refuse a second claim on the same client id and find the original instead")
+    void testSave_RejectsDuplicateClaim() {
+        // Given
+        UUID clientMessageId = UUID.randomUUID();
+        Message original = deduplicator.save(message("hello"), clientMessageId);
+
+        // When / Then
+        assertThatThrownBy(() -> deduplicator.save(message("hello"), clientMessageId))
+                .isInstanceOf(DuplicateKeyException.class);
+        MessageDtos.MessageResponse stored = deduplicator.stored(conversationId, senderId, clientMessageId);
+        assertThat(stored).isEqualTo(MessageDtos.MessageResponse.of(original));
+        assertThat(registry.get("messenger.send.duplicates").tag("source", "database").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Should scope client ids to the sender and conversation")
+    void testSave_ScopesClaims() {
+        // Given
+        UUID clientMessageId = UUID.randomUUID();
+        deduplicator.save(message("hello"), clientMessageId);
+        Message other = message("hello");
+        other.setSenderId(UUID.randomUUID());
+
+        // When
+        Message saved = deduplicator.save(other, clientMessageId);
+
+        // Then
+        assertThat(saved.getId()).isNotNull();
+        assertThat(deduplicator.stored(conversationId, UUID.randomUUID(), clientMessageId)).isNull();
+    }
+
+    @Test
+    @DisplayName("Should remember only the most recent responses")
+    void testRecent_BoundedLru() {
+        // Given
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        deduplicator.remember(first, MessageDtos.MessageResponse.of(deduplicator.save(message("1"), first)));
+        deduplicator.remember(second, MessageDtos.MessageResponse.of(deduplicator.save(message("2"), second)));
+        deduplicator.recent(conversationId, senderId, first);
+
+        // When
+        deduplicator.remember(third, MessageDtos.MessageResponse.of(deduplicator.save(message("3"), third)));
+
+        // Then
+        assertThat(deduplicator.size()).isEqualTo(2);
+        assertThat(deduplicator.recent(conversationId, senderId, first)).isNotNull();
+        assertThat(deduplicator.recent(conversationId, senderId, second)).isNull();
+        assertThat(deduplicator.recent(conversationId, senderId, third)).isNotNull();
+    }
+}
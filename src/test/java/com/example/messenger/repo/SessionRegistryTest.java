@@ -0,0 +1,83 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.ws.SessionRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("SessionRegistry Tests")
+class SessionRegistryTest {
+
+    private SimpleMeterRegistry registry;
+    private SessionRegistry sessionRegistry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        sessionRegistry = new SessionRegistry(registry);
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String sessionId, String subscriptionId, String destination) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(command);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        if (destination != null) headers.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination) {
+        sessionRegistry.onSubscribe(new SessionSubscribeEvent(this,
+                frame(StompCommand.SUBSCRIBE, sessionId, subscriptionId, destination)));
+    }
+
+    @Test
+    @DisplayName("Should count subscriptions per destination prefix until they end")
+    void testSubscriptions_CountedPerPrefix() {
+        // Given
+        subscribe("s1", "0", "/topic/chat.1");
+        subscribe("s1", "1", "/topic/chat.2");
+        subscribe("s1", "2", "/user/queue/presence");
+        subscribe("s2", "0", "/topic/chat.1");
+
+        // When
+        sessionRegistry.onUnsubscribe(new SessionUnsubscribeEvent(this,
+                frame(StompCommand.UNSUBSCRIBE, "s1", "1", null)));
+
+        // Then
+        assertThat(sessionRegistry.subscriptions())
+                .isEqualTo(Map.of("/topic/chat", 2, "/user/queue/presence", 1));
+        assertThat(registry.get("messenger.ws.subscriptions").tag("prefix", "/topic/chat").gauge().value())
+                .isEqualTo(2.0);
+
+        // When
+        sessionRegistry.onDisconnect(new SessionDisconnectEvent(this,
+                frame(StompCommand.DISCONNECT, "s1", null, null), "s1", CloseStatus.NORMAL));
+
+        // Then
+        assertThat(sessionRegistry.subscriptions()).isEqualTo(Map.of("/topic/chat", 1));
+    }
+
+    @Test
+    @DisplayName("Should fold prefixes beyond the limit into one tag")
+    void testSubscriptions_BoundsPrefixes() {
+        // When
+        for (int i = 0; i < 40; i++) subscribe("s1", "sub-" + i, "/topic/custom" + i);
+
+        // Then
+        assertThat(sessionRegistry.subscriptions()).hasSize(33).containsEntry("other", 8);
+        assertThat(registry.find("messenger.ws.subscriptions").gauges()).hasSize(33);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.api.dto.SyncDtos;
+import com.example.messenger.domain.ConversationMember;
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.SyncService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@DisplayName("SyncService Tests")
+class SyncServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+    private SyncService syncService;
+    private UUID alice;
+    private UUID bob;
+    private UUID shared;
+    private UUID bobOnly;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        // A negative settle time makes rows readable as soon as they are flushed.
+        syncService = new SyncService(jdbcTemplate, messageRepository, Duration.ofHours(1), Duration.ofSeconds(-1),
+                Duration.ofDays(7), Duration.ofHours(1), new SimpleMeterRegistry());
+        // Seeded by V14 in the real schema.
+        jdbcTemplate.update("INSERT INTO change_log_floor (id, seq) VALUES (1, 0)");
+        alice = UUID.randomUUID();
+        bob = UUID.randomUUID();
+        shared = UUID.randomUUID();
+        bobOnly = UUID.randomUUID();
+        member(shared, alice);
+        member(shared, bob);
+        member(bobOnly, bob);
+    }
+
+    private void member(UUID conversationId, UUID userId) {
+        ConversationMember m = new ConversationMember();
+        m.setConversationId(conversationId);
+        m.setUserId(userId);
+        entityManager.persist(m);
+    }
+
+    private Message message(UUID conversationId, UUID senderId, String content) {
+        Message m = new Message();
+        m.setConversationId(conversationId);
+        m.setSenderId(senderId);
+        m.setContent(content);
+        entityManager.persist(m);
+        syncService.recordMessage(m);
+        return m;
+    }
+
+    @Test
+    @DisplayName("Should return messages of the user's conversations and their own membership changes, in order")
+    void testSync_ReturnsVisibleChangesInOrder() {
+        // Given
+        syncService.recordMemberAdded(shared, alice);
+        Message hello = message(shared, bob, "hello");
+        message(bobOnly, bob, "not for alice");
+        syncService.recordMemberAdded(bobOnly, bob);
+        entityManager.flush();
+        syncService.flush();
+
+        // When
+        SyncDtos.SyncPage page = syncService.sync(alice, 0L, 100);
+
+        // Then
+        assertThat(page.resyncRequired()).isFalse();
+        assertThat(page.hasMore()).isFalse();
+        assertThat(page.changes()).extracting(SyncDtos.Change::kind).containsExactly("MEMBER_ADDED", "MESSAGE");
+        assertThat(page.changes().get(1).message().content()).isEqualTo("hello");
+        assertThat(page.changes().get(1).message().id()).isEqualTo(hello.getId());
+        assertThat(page.next()).isEqualTo(page.changes().get(1).seq());
+        assertThat(syncService.sync(alice, page.next(), 100).changes()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should bound a page by the limit and continue from next")
+    void testSync_Pages() {
+        // Given
+        for (int i = 0; i < 5; i++) message(shared, bob, "m" + i);
+        entityManager.flush();
+        syncService.flush();
+
+        // When
+        SyncDtos.SyncPage first = syncService.sync(alice, 0L, 3);
+        SyncDtos.SyncPage second = syncService.sync(alice, first.next(), 3);
+
+        // Then
+        assertThat(first.changes()).hasSize(3);
+        assertThat(first.hasMore()).isTrue();
+        assertThat(second.changes()).hasSize(2);
+        assertThat(second.hasMore()).isFalse();
+        assertThat(second.changes()).extracting(c -> c.message().content()).containsExactly("m3", "m4");
+    }
+
+    @Test
+    @DisplayName("Should report a deleted conversation to its former members")
+    void testSync_ReportsDeletion() {
+        // Given
+        syncService.recordDeleted(bobOnly, List.of(bob));
+        syncService.flush();
+
+        // When
+        SyncDtos.SyncPage page = syncService.sync(bob, 0L, 100);
+
+        // Then
+        assertThat(page.changes()).singleElement().satisfies(c -> {
+            assertThat(c.kind()).isEqualTo("CONVERSATION_DELETED");
+            assertThat(c.conversationId()).isEqualTo(bobOnly);
+        });
+    }
+
+    @Test
+    @DisplayName("Should require a full resync without a position or once the position has been trimmed")
+    void testSync_RequiresResyncOutsideRetainedWindow() {
+        // Given
+        Instant old = Instant.now().minus(Duration.ofDays(30));
+        for (int i = 0; i < 3; i++) {
+            jdbcTemplate.update("INSERT INTO change_log (kind, conversation_id, created_at) VALUES ('MESSAGE', ?, ?)",
+                    shared, old.atOffset(ZoneOffset.UTC));
+        }
+        message(shared, bob, "recent");
+        entityManager.flush();
+        syncService.flush();
+        long first = jdbcTemplate.queryForObject("SELECT min(seq) FROM change_log", Long.class);
+
+        // When
+        int trimmed = syncService.trim();
+        SyncDtos.SyncPage stale = syncService.sync(alice, first, 100);
+        SyncDtos.SyncPage fresh = syncService.sync(alice, null, 100);
+        SyncDtos.SyncPage atFloor = syncService.sync(alice, first + 2, 100);
+
+        // Then
+        assertThat(trimmed).isEqualTo(3);
+        assertThat(stale.resyncRequired()).isTrue();
+        assertThat(stale.changes()).isEmpty();
+        assertThat(fresh.resyncRequired()).isTrue();
+        assertThat(fresh.next()).isEqualTo(first + 3);
+        assertThat(atFloor.resyncRequired()).isFalse();
+        assertThat(atFloor.changes()).extracting(c -> c.message().content()).containsExactly("recent");
+    }
+
+    @Test
+    @DisplayName("Should hand out the floor as the resync position once everything has been trimmed")
+    void testSync_ResyncPositionIsTheFloorWhenFeedIsEmpty() {
+        // Given
+        jdbcTemplate.update("INSERT INTO change_log (kind, conversation_id, created_at) VALUES ('MESSAGE', ?, ?)",
+                shared, Instant.now().minus(Duration.ofDays(30)).atOffset(ZoneOffset.UTC));
+        long last = jdbcTemplate.queryForObject("SELECT max(seq) FROM change_log", Long.class);
+        syncService.trim();
+
+        // When
+        SyncDtos.SyncPage fresh = syncService.sync(alice, null, 100);
+        SyncDtos.SyncPage resumed = syncService.sync(alice, fresh.next(), 100);
+
+        // Then
+        assertThat(fresh.resyncRequired()).isTrue();
+        assertThat(fresh.next()).isEqualTo(last);
+        assertThat(resumed.resyncRequired()).isFalse();
+        assertThat(resumed.changes()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should stamp rows and take the settle cutoff from the database clock")
+    void testSync_SettlesOnDatabaseClock() {
+        // Given
+        SyncService settling = new SyncService(jdbcTemplate, messageRepository, Duration.ofHours(1), Duration.ofMinutes(1),
+                Duration.ofDays(7), Duration.ofHours(1), new SimpleMeterRegistry());
+        jdbcTemplate.update("INSERT INTO change_log (kind, conversation_id, created_at) VALUES ('MESSAGE', ?, ?)",
+                shared, Instant.now().minus(Duration.ofMinutes(5)).atOffset(ZoneOffset.UTC));
+        settling.recordMemberAdded(shared, alice);
+        entityManager.flush();
+        settling.flush();
+
+        // When
+        SyncDtos.SyncPage page = settling.sync(alice, 0L, 100);
+
+        // Then
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM change_log WHERE created_at IS NOT NULL", Long.class))
+                .isEqualTo(2);
+        assertThat(page.changes()).extracting(SyncDtos.Change::kind).containsExactly("MESSAGE");
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.ws.TypingThrottle;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("TypingThrottle Tests")
+class TypingThrottleTest {
+
+    private final TypingThrottle throttle = new TypingThrottle(1024, Duration.ofSeconds(3));
+
+    @Test
+    @DisplayName("Should admit one event per user and conversation per interval")
+    void testTryAcquire_ThrottlesPerPair() {
+        // Given
+        UUID user = UUID.randomUUID();
+        UUID conversation = UUID.randomUUID();
+
+        // When / Then
+        assertThat(throttle.tryAcquire(user, conversation, 0)).isTrue();
+        assertThat(throttle.tryAcquire(user, conversation, 1_000)).isFalse();
+        assertThat(throttle.tryAcquire(user, conversation, 2_999)).isFalse();
+        assertThat(throttle.tryAcquire(user, conversation, 3_000)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should not throttle other users or other conversations")
+    void testTryAcquire_IndependentPairs() {
+        // Given
+        UUID user = UUID.randomUUID();
+        UUID conversation = UUID.randomUUID();
+        throttle.tryAcquire(user, conversation, 0);
+
+        // When / Then
+        assertThat(throttle.tryAcquire(UUID.randomUUID(), conversation, 10)).isTrue();
+        assertThat(throttle.tryAcquire(user, UUID.randomUUID(), 10)).isTrue();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.domain.ConversationMember;
+import com.example.messenger.domain.Message;
+import com.example.messenger.service.InboxService;
+import com.example.messenger.service.UnreadCounterService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@DisplayName("UnreadCounterService Tests")
+class UnreadCounterServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+    private InboxService inboxService;
+    private SimpleMeterRegistry registry;
+    private UnreadCounterService unreadCounters;
+    private UUID conversationId;
+    private UUID alice;
+    private UUID bob;
+    private UUID carol;
+    private Instant clock;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        inboxService = mock(InboxService.class);
+        registry = new SimpleMeterRegistry();
+        unreadCounters = new UnreadCounterService(messageRepository, jdbcTemplate, inboxService, Duration.ofHours(1), registry);
+        conversationId = UUID.randomUUID();
+        alice = UUID.randomUUID();
+        bob = UUID.randomUUID();
+        carol = UUID.randomUUID();
+        clock = Instant.parse("2024-01-01T00:00:00Z");
+        for (UUID userId : new UUID[]{alice, bob, carol}) {
+            ConversationMember m = new ConversationMember();
+            m.setConversationId(conversationId);
+            m.setUserId(userId);
+            entityManager.persist(m);
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    @DisplayName("Should coalesce sends into one increment per conversation and sender")
+    void testFlush_CoalescesPerSender() {
+        // Given
+        unreadCounters.record(send(alice));
+        unreadCounters.record(send(alice));
+        unreadCounters.record(send(bob));
+        assertThat(registry.get("messenger.unread.pending").gauge().value()).isEqualTo(2.0);
+
+        // When
+        unreadCounters.flush();
+
+        // Then
+        assertThat(unread(alice)).isEqualTo(1);
+        assertThat(unread(bob)).isEqualTo(2);
+        assertThat(unread(carol)).isEqualTo(3);
+        assertThat(registry.get("messenger.unread.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should not count a message both in the read recount and in a later increment")
+    void testMarkRead_IncrementLandingAfterRecount() {
+        // Given: both messages are committed but their increments are still pending
+        Message first = send(alice);
+        unreadCounters.record(first);
+        unreadCounters.record(send(alice));
+
+        // When
+        int unread = unreadCounters.markRead(conversationId, bob, first.getId());
+        unreadCounters.flush();
+
+        // Then
+        assertThat(unread).isEqualTo(1);
+        assertThat(unread(bob)).isEqualTo(1);
+        assertThat(unread(carol)).isEqualTo(2);
+        verify(inboxService).onRead(bob, conversationId, 1);
+    }
+
+    @Test
+    @DisplayName("Should count messages sent after the read")
+    void testMarkRead_ThenNewMessages() {
+        // Given
+        Message read = send(alice);
+        unreadCounters.markRead(conversationId, bob, read.getId());
+
+        // When
+        unreadCounters.record(send(alice));
+        unreadCounters.record(send(carol));
+        unreadCounters.flush();
+
+        // Then
+        assertThat(unread(bob)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should keep the read position when asked to move it backwards")
+    void testMarkRead_NeverMovesBackwards() {
+        // Given
+        Message older = send(alice);
+        Message newer = send(alice);
+        unreadCounters.markRead(conversationId, bob, newer.getId());
+
+        // When
+        int unread = unreadCounters.markRead(conversationId, bob, older.getId());
+
+        // Then
+        assertThat(unread).isZero();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT last_read_message_id FROM conversation_members WHERE conversation_id = ? AND user_id = ?",
+                UUID.class, conversationId, bob)).isEqualTo(newer.getId());
+    }
+
+    @Test
+    @DisplayName("Should reject a read position outside the conversation")
+    void testMarkRead_ForeignMessage() {
+        // Given
+        Message other = new Message();
+        other.setConversationId(UUID.randomUUID());
+        other.setSenderId(alice);
+        other.setContent("elsewhere");
+        entityManager.persist(other);
+
+        // When / Then
+        assertThatThrownBy(() -> unreadCounters.markRead(conversationId, bob, other.getId()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should refuse to mark read for a non-member")
+    void testMarkRead_NotMember() {
+        // Given
+        Message read = send(alice);
+
+        // When / Then
+        assertThatThrownBy(() -> unreadCounters.markRead(conversationId, UUID.randomUUID(), read.getId()))
+                .isInstanceOf(AccessDeniedException.class);
+    }
+
+    private Message send(UUID senderId) {
+        Message m = new Message();
+        m.setConversationId(conversationId);
+        m.setSenderId(senderId);
+        m.setContent("hi");
+        clock = clock.plusSeconds(1);
+        m.setCreatedAt(clock);
+        entityManager.persist(m);
+        entityManager.flush();
+        return m;
+    }
+
+    private int unread(UUID userId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT unread_count FROM conversation_members WHERE conversation_id = ? AND user_id = ?",
+                Integer.class, conversationId, userId);
+    }
+}
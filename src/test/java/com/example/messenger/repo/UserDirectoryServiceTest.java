@@ -0,0 +1,106 @@
+package com.example.messenger.repo;
+
+import com.example.messenger.api.dto.UserDtos;
+import com.example.messenger.domain.User;
+import com.example.messenger.service.UserDirectoryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@DisplayName("UserDirectoryService Tests")
+class UserDirectoryServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private UserDirectoryService directoryService;
+
+    @BeforeEach
+    void setUp() {
+        directoryService = new UserDirectoryService(userRepository);
+        user("alice", "Alice Smith");
+        user("bob", "Bob Alison");
+        user("carol", "Carol");
+        user("dave_1", "Dave");
+        user("davex", "Dave X");
+        entityManager.flush();
+    }
+
+    private void user(String username, String displayName) {
+        User u = new User();
+        u.setUsername(username);
+        u.setDisplayName(displayName);
+        u.setPasswordHash("x");
+        entityManager.persist(u);
+    }
+
+    private static List<String> usernames(UserDtos.UserPage page) {
+        return page.users().stream().map(UserDtos.userResponse::username).toList();
+    }
+
+    @Test
+    @DisplayName("Should page through every user in username order")
+    void testPage_WalksDirectory() {
+        // When
+        List<String> seen = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        do {
+            UserDtos.UserPage page = directoryService.page(null, after, 2);
+            seen.addAll(usernames(page));
+            after = page.nextCursor();
+            pages++;
+        } while (after != null);
+
+        // Then
+        assertThat(seen).containsExactly("alice", "bob", "carol", "dave_1", "davex");
+        assertThat(pages).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should match prefixes of the whole username or display name, case-insensitively and literally")
+    void testPage_PrefixSearch() {
+        // When / Then
+        assertThat(usernames(directoryService.page("ALI", null, 10))).containsExactly("alice");
+        assertThat(usernames(directoryService.page("bob a", null, 10))).containsExactly("bob");
+        assertThat(usernames(directoryService.page("dave_", null, 10))).containsExactly("dave_1");
+        assertThat(usernames(directoryService.page("ice", null, 10))).isEmpty();
+        assertThatThrownBy(() -> directoryService.page(null, "***", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should merge username and display name matches into one paged, duplicate-free sequence")
+    void testPage_MergesBothNames() {
+        // Given: "dave_1" and "davex" match on both names, "erin" only on her display name
+        user("erin", "Davina");
+        entityManager.flush();
+
+        // When
+        List<String> seen = new ArrayList<>();
+        String after = null;
+        do {
+            UserDtos.UserPage page = directoryService.page("da", after, 1);
+            seen.addAll(usernames(page));
+            after = page.nextCursor();
+        } while (after != null);
+
+        // Then
+        assertThat(seen).containsExactly("dave_1", "davex", "erin");
+    }
+}